@@ -0,0 +1,438 @@
+package org.itmo.lab1;
+
+import org.itmo.lab1.util.CallGraph;
+import org.itmo.lab1.util.ClassBudget;
+import org.itmo.lab1.util.ClassCohesion;
+import org.itmo.lab1.util.CohesionMetrics;
+import org.itmo.lab1.util.EntryPoints;
+import org.itmo.lab1.util.JitReport;
+import org.itmo.lab1.util.MethodFilter;
+import org.itmo.lab1.util.MetricCollector;
+import org.itmo.lab1.util.MetricDistributions;
+import org.itmo.lab1.util.OpcodeHistogram;
+import org.itmo.lab1.util.OpcodeProfile;
+import org.itmo.lab1.util.PackageFilter;
+import org.itmo.lab1.util.PackageRollup;
+import org.itmo.lab1.util.QuantileSketch;
+import org.itmo.lab1.util.ReceiverTypes;
+import org.itmo.lab1.util.ThresholdGate;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Command line entry point.
+ * <pre>
+ * jar-metrics [options] &lt;jar&gt;...
+ *   --format=json|text      output format, json by default
+ *   --output=FILE           file for json output, metrics.json by default, - for stdout only
+ *   --sample=RATE[,SEED]    sampling mode
+ *   --bounded               bounded-memory mode
+ *   --skip-duplicates       don't count copies of a class with identical bytes in the totals
+ *   --packages              metrics of every package including its subpackages
+ *   --distributions         p50/p95/p99 of method ABC, method size and fields per class
+ *   --opcodes[=jar|class|method]
+ *                           instructions by opcode, class and method histograms go to the opcode report
+ *   --opcode-report=FILE    JSON lines file for class and method histograms, opcodes.jsonl by default
+ *   --jit[=INLINE,FREQ,HUGE]
+ *                           methods over the JIT limits MaxInlineSize, FreqInlineSize and HugeMethodLimit,
+ *                           35,325,8000 by default
+ *   --jit-report=FILE       JSON lines file with the size, max stack and max locals of every method and class
+ *   --receiver-types[=N]    virtual call sites whose owner type has more than N concrete classes, 2 by default
+ *   --receiver-report=FILE  JSON lines file with every call site over the receiver limit
+ *   --cohesion              LCOM1-4 and TCC of classes from the fields their methods access
+ *   --cohesion-report=FILE  JSON lines file with the cohesion of every class
+ *   --accurate-assignments  leave constant declarations, aliases and compiler temporaries out of A
+ *   --collector=CLASS       custom {@link MetricCollector} with a public no-arg constructor, repeatable
+ *   --call-graph[=ENTRIES]  method call graph and dead code, ENTRIES is a comma-separated list of main,
+ *                           public and handler annotations, e.g. main,javax.ws.rs.GET, main by default
+ *   --include=GLOB, --exclude=GLOB
+ *                           analyze only classes of matching packages, e.g. com/ourco/**, repeatable
+ *   --skip-synthetic, --skip-bridge
+ *                           leave synthetic or bridge methods out
+ *   --skip-generated        leave out synthetic and bridge methods, lambda bodies and Kotlin stubs
+ *   --skip-methods=REGEX    leave out methods with a matching name
+ *   --max-class-size=BYTES, --max-method-size=BYTES, --max-class-time=MS
+ *                           analyze bigger or slower classes partially, they are listed in the output
+ *   --max-class-abc=N, --max-method-abc=N, --max-depth=N, --max-fields=N, --max-violations=K
+ *                           threshold gate budgets
+ * </pre>
+ * A jar given as {@code -} is read from stdin as it arrives, it can't be combined with other jars or sampled.
+ * Exit code is 0 on success, 1 if a budget is violated and 2 on bad usage.
+ * Classes of org.json are only loaded for json output or custom collectors.
+ */
+public class Cli {
+    private static final String USAGE = "Usage: jar-metrics [--format=json|text] [--output=FILE] "
+            + "[--sample=RATE[,SEED]] [--bounded] [--packages] [--distributions] [--opcodes[=jar|class|method]] "
+            + "[--opcode-report=FILE] [--jit[=INLINE,FREQ,HUGE]] [--jit-report=FILE] [--receiver-types[=N]] "
+            + "[--receiver-report=FILE] [--cohesion] [--cohesion-report=FILE] [--accurate-assignments] "
+            + "[--collector=CLASS] [--call-graph[=ENTRIES]] [--include=GLOB] [--exclude=GLOB] [--skip-synthetic] "
+            + "[--skip-bridge] [--skip-generated] [--skip-methods=REGEX] [--max-class-size=BYTES] "
+            + "[--max-method-size=BYTES] [--max-class-time=MS] [--max-class-abc=N] [--max-method-abc=N] "
+            + "[--max-depth=N] [--max-fields=N] [--max-violations=K] [--skip-duplicates] <jar>...";
+
+    public static void main(String[] args) throws IOException {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    static int run(String[] args, PrintStream out, PrintStream err) throws IOException {
+        List<String> jars = new ArrayList<>();
+        String format = "json";
+        String output = "metrics.json";
+        ThresholdGate gate = null;
+        ClassBudget budget = null;
+        PackageFilter packages = null;
+        MethodFilter filter = null;
+        JarMetrics metrics = null;
+        double sampleRate = 1.0;
+        long sampleSeed = 42;
+        boolean bounded = false;
+        boolean packageRollups = false;
+        boolean countDuplicates = true;
+        boolean distributions = false;
+        OpcodeProfile.Level opcodes = null;
+        String opcodeReport = "opcodes.jsonl";
+        JitReport.Limits jitLimits = null;
+        String jitReport = null;
+        int receiverLimit = -1;
+        String receiverReport = null;
+        EntryPoints entryPoints = null;
+        boolean cohesion = false;
+        String cohesionReport = null;
+        boolean accurateAssignments = false;
+        List<Supplier<MetricCollector<?>>> collectors = new ArrayList<>();
+
+        try {
+            //Malformed -D values are bad usage as well
+            gate = ThresholdGate.fromSystemProperties();
+            if (gate == null)
+                gate = new ThresholdGate();
+            budget = ClassBudget.fromSystemProperties();
+            if (budget == null)
+                budget = new ClassBudget();
+            packages = PackageFilter.fromSystemProperties();
+            if (packages == null)
+                packages = new PackageFilter();
+            filter = MethodFilter.fromSystemProperties();
+            if (filter == null)
+                filter = new MethodFilter();
+
+            for (String arg : args) {
+                String value = arg.contains("=") ? arg.substring(arg.indexOf('=') + 1) : "";
+
+                if (arg.equals("--help") || arg.equals("-h")) {
+                    out.println(USAGE);
+                    return 0;
+                } else if (arg.startsWith("--format=")) {
+                    format = value;
+                } else if (arg.startsWith("--output=")) {
+                    output = value;
+                } else if (arg.startsWith("--sample=")) {
+                    String[] parts = value.split(",");
+                    sampleRate = Double.parseDouble(parts[0]);
+                    if (parts.length > 1)
+                        sampleSeed = Long.parseLong(parts[1]);
+                } else if (arg.equals("--bounded")) {
+                    bounded = true;
+                } else if (arg.equals("--packages")) {
+                    packageRollups = true;
+                } else if (arg.equals("--distributions")) {
+                    distributions = true;
+                } else if (arg.equals("--opcodes")) {
+                    opcodes = OpcodeProfile.Level.JAR;
+                } else if (arg.startsWith("--opcodes=")) {
+                    opcodes = OpcodeProfile.Level.valueOf(value.toUpperCase(Locale.ROOT));
+                } else if (arg.startsWith("--opcode-report=")) {
+                    opcodeReport = value;
+                } else if (arg.equals("--jit")) {
+                    jitLimits = JitReport.Limits.HOTSPOT;
+                } else if (arg.startsWith("--jit=")) {
+                    jitLimits = JitReport.Limits.parse(value);
+                } else if (arg.startsWith("--jit-report=")) {
+                    jitReport = value;
+                } else if (arg.equals("--receiver-types")) {
+                    receiverLimit = ReceiverTypes.DEFAULT_LIMIT;
+                } else if (arg.startsWith("--receiver-types=")) {
+                    receiverLimit = Integer.parseInt(value);
+                    if (receiverLimit < 1)
+                        throw new IllegalArgumentException("Receiver limit must be positive: " + value);
+                } else if (arg.startsWith("--receiver-report=")) {
+                    receiverReport = value;
+                } else if (arg.equals("--cohesion")) {
+                    cohesion = true;
+                } else if (arg.startsWith("--cohesion-report=")) {
+                    cohesionReport = value;
+                } else if (arg.equals("--accurate-assignments")) {
+                    accurateAssignments = true;
+                } else if (arg.startsWith("--collector=")) {
+                    collectors.add(collectorFactory(value));
+                } else if (arg.equals("--call-graph")) {
+                    entryPoints = new EntryPoints();
+                } else if (arg.startsWith("--call-graph=")) {
+                    entryPoints = EntryPoints.parse(value);
+                } else if (arg.startsWith("--include=")) {
+                    packages.include(value);
+                } else if (arg.startsWith("--exclude=")) {
+                    packages.exclude(value);
+                } else if (arg.equals("--skip-synthetic")) {
+                    filter.setSkipSynthetic(true);
+                } else if (arg.equals("--skip-bridge")) {
+                    filter.setSkipBridge(true);
+                } else if (arg.equals("--skip-generated")) {
+                    filter.skipGenerated();
+                } else if (arg.startsWith("--skip-methods=")) {
+                    filter.setMethodPattern(value);
+                } else if (arg.startsWith("--max-class-size=")) {
+                    budget.setMaxClassSize(Long.parseLong(value));
+                } else if (arg.startsWith("--max-method-size=")) {
+                    budget.setMaxMethodSize(Integer.parseInt(value));
+                } else if (arg.startsWith("--max-class-time=")) {
+                    budget.setMaxClassMillis(Long.parseLong(value));
+                } else if (arg.startsWith("--max-class-abc=")) {
+                    gate.setMaxClassAbc(Double.parseDouble(value));
+                } else if (arg.startsWith("--max-method-abc=")) {
+                    gate.setMaxMethodAbc(Double.parseDouble(value));
+                } else if (arg.startsWith("--max-depth=")) {
+                    gate.setMaxInheritanceDepth(Integer.parseInt(value));
+                } else if (arg.startsWith("--max-fields=")) {
+                    gate.setMaxFields(Integer.parseInt(value));
+                } else if (arg.startsWith("--max-violations=")) {
+                    gate.setMaxViolations(Integer.parseInt(value));
+                } else if (arg.equals("--skip-duplicates")) {
+                    countDuplicates = false;
+                } else if (arg.startsWith("-") && !arg.equals("-")) {
+                    throw new IllegalArgumentException("Unexpected argument: " + arg);
+                } else {
+                    jars.add(arg);
+                }
+            }
+
+            if (jars.isEmpty())
+                throw new IllegalArgumentException("No jar given");
+            if (!format.equals("json") && !format.equals("text"))
+                throw new IllegalArgumentException("Unknown format: " + format);
+            if (entryPoints != null && sampleRate < 1)
+                throw new IllegalArgumentException("Call graph needs every class parsed, it can't be sampled");
+            if ((receiverLimit != -1 || receiverReport != null) && sampleRate < 1)
+                throw new IllegalArgumentException("Receiver types need every class parsed, they can't be sampled");
+
+            if (jars.contains("-")) {
+                if (jars.size() > 1)
+                    throw new IllegalArgumentException("A jar from stdin can't be analyzed with other jars");
+                if (sampleRate < 1)
+                    throw new IllegalArgumentException("A jar from stdin can't be sampled");
+                metrics = new JarMetrics(System.in, "stdin");
+            } else {
+                metrics = new JarMetrics(jars);
+            }
+            metrics.setSampling(sampleRate, sampleSeed);
+            for (Supplier<MetricCollector<?>> collector : collectors)
+                metrics.addCollector(collector);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 2;
+        }
+
+        metrics.setBoundedMemory(bounded);
+        metrics.setPackageRollups(packageRollups);
+        metrics.setDistributions(distributions);
+        metrics.setCountDuplicates(countDuplicates);
+        metrics.setCallGraph(entryPoints);
+        metrics.setAccurateAssignments(accurateAssignments);
+        metrics.setThresholdGate(gate.isEnabled() ? gate : null);
+        metrics.setClassBudget(budget.isEnabled() ? budget : null);
+        metrics.setMethodFilter(filter.isEnabled() ? filter : null);
+        metrics.setPackageFilter(packages.isEnabled() ? packages : null);
+
+        if (jitReport != null && jitLimits == null)
+            jitLimits = JitReport.Limits.HOTSPOT;
+        if (receiverReport != null && receiverLimit == -1)
+            receiverLimit = ReceiverTypes.DEFAULT_LIMIT;
+        if (cohesionReport != null)
+            cohesion = true;
+
+        MetricsResult result;
+        try (BufferedWriter opcodeWriter = opcodes != null && opcodes != OpcodeProfile.Level.JAR
+                ? new BufferedWriter(new FileWriter(opcodeReport)) : null;
+             BufferedWriter jitWriter = jitReport != null ? new BufferedWriter(new FileWriter(jitReport)) : null;
+             BufferedWriter receiverWriter = receiverReport != null
+                     ? new BufferedWriter(new FileWriter(receiverReport)) : null;
+             BufferedWriter cohesionWriter = cohesionReport != null
+                     ? new BufferedWriter(new FileWriter(cohesionReport)) : null) {
+            metrics.setOpcodeProfile(opcodes, opcodeWriter);
+            metrics.setJitReport(jitLimits, jitWriter);
+            metrics.setReceiverTypes(receiverLimit, receiverWriter);
+            metrics.setCohesion(cohesion, cohesionWriter);
+            result = metrics.analyze();
+        }
+
+        for (String violation : result.getViolations())
+            err.println("Budget violation: " + violation);
+
+        if (!result.isStopped()) {
+            if (format.equals("json"))
+                printJson(result, output, out);
+            else
+                printText(result, out);
+        }
+
+        return result.getViolations().isEmpty() ? 0 : 1;
+    }
+
+    private static void printJson(MetricsResult result, String output, PrintStream out) throws IOException {
+        String json = result.toJson().toString(4);
+        out.println(json);
+
+        if (!output.equals("-")) {
+            try (FileWriter fileWriter = new FileWriter(output)) {
+                fileWriter.write(json);
+            }
+        }
+    }
+
+    private static void printText(MetricsResult result, PrintStream out) {
+        out.println("jar                        " + result.getJarName());
+        out.println("classes                    " + result.getClasses());
+        if (result.getExcludedClasses() > 0)
+            out.println("excludedClasses            " + result.getExcludedClasses());
+        out.println("A                          " + result.getA());
+        out.println("B                          " + result.getB());
+        out.println("C                          " + result.getC());
+        out.println("ABC                        " + result.getAbc());
+        out.println("fieldsAverage              " + result.getFieldsAverage());
+        out.println("maxInheritanceDepth        " + result.getMaxInheritanceDepth());
+        out.println("averageInheritanceDepth    " + result.getAverageInheritanceDepth());
+        out.println("methods                    " + result.getMethods());
+        out.println("overridenMethods           " + result.getOverridenMethods());
+        if (result.getDuplicates().getDuplicates() > 0)
+            out.println("duplicates                 " + result.getDuplicates().getDuplicates());
+        if (result.getSkippedMethods() > 0)
+            out.println("skippedMethods             " + result.getSkippedMethods());
+        out.println("averageOverridenMethods    " + result.getAverageOverridenMethods());
+        if (result.isPartial()) {
+            out.println("partialClasses             " + result.getPartialClasses().size());
+            for (Map.Entry<String, String> partial : result.getPartialClasses().entrySet())
+                out.println("  " + partial.getKey() + ": " + partial.getValue());
+        }
+
+        if (result.isSampled()) {
+            out.println("sampledClasses             " + result.getSampledClasses());
+            out.printf("A 95%% interval             [%.1f, %.1f]%n", result.getAEstimate().getLow(), result.getAEstimate().getHigh());
+            out.printf("B 95%% interval             [%.1f, %.1f]%n", result.getBEstimate().getLow(), result.getBEstimate().getHigh());
+            out.printf("C 95%% interval             [%.1f, %.1f]%n", result.getCEstimate().getLow(), result.getCEstimate().getHigh());
+        }
+
+        MetricDistributions sketches = result.getDistributions();
+        if (sketches != null) {
+            printQuantiles("method ABC", sketches.getMethodAbc(), out);
+            printQuantiles("method size", sketches.getMethodSize(), out);
+            printQuantiles("class fields", sketches.getClassFields(), out);
+        }
+
+        OpcodeHistogram histogram = result.getOpcodes();
+        if (histogram != null) {
+            out.println("instructions               " + histogram.total());
+            out.printf("invokeinterface share      %.4f%n", histogram.getInvokeInterfaceShare());
+            out.printf("checkcast share            %.4f%n", histogram.getCheckcastShare());
+            out.printf("allocation share           %.4f%n", histogram.getAllocationShare());
+            out.printf("monitor share              %.4f%n", histogram.getMonitorShare());
+        }
+
+        JitReport jit = result.getJit();
+        if (jit != null) {
+            JitReport.Totals totals = jit.getTotals();
+            out.println("methodBytes                " + totals.getBytes());
+            out.println("over MaxInlineSize         " + totals.getOverMaxInlineSize());
+            out.println("over FreqInlineSize        " + totals.getOverFreqInlineSize());
+            out.println("over HugeMethodLimit       " + totals.getHuge());
+            out.println("maxStack / maxLocals       " + totals.getMaxStack() + " / " + totals.getMaxLocals());
+            for (JitReport.Method method : jit.getLargest())
+                out.printf("  %-6d %s.%s%n", method.getSize(), method.getClassName(), method.getSignature());
+        }
+
+        ReceiverTypes receivers = result.getReceiverTypes();
+        if (receivers != null) {
+            out.println("virtualCallSites           " + receivers.getVirtualSites());
+            out.println("polymorphicSites           " + receivers.getPolymorphicSites());
+            out.println("sites over " + receivers.getLimit() + " receivers   " + receivers.getMegamorphicSites());
+            for (ReceiverTypes.Type type : receivers.getMegamorphicTypes())
+                out.printf("  %-6d %-6d %s%n", type.getSites(), type.getReceivers(), type.getName());
+        }
+
+        CallGraph callGraph = result.getCallGraph();
+        if (callGraph != null) {
+            out.println("calls                      " + callGraph.getCalls());
+            out.println("entryPoints                " + callGraph.getEntryPoints());
+            out.println("reachableMethods           " + callGraph.getReachableMethods());
+            out.printf("deadMethods                %d (%.1f%%, %d bytes)%n", callGraph.getDeadMethodCount(),
+                    100 * callGraph.getDeadMethodShare(), callGraph.getDeadBytes());
+            out.println("maxCallDepth               " + callGraph.getMaxCallDepth());
+            out.println("averageCallDepth           " + callGraph.getAverageCallDepth());
+            out.println("maxFanOut                  " + callGraph.getMaxFanOut() + " " + callGraph.getMaxFanOutMethod());
+            out.println("averageFanOut              " + callGraph.getAverageFanOut());
+        }
+
+        CohesionMetrics cohesion = result.getCohesion();
+        if (cohesion != null) {
+            out.printf("LCOM1/2/3/4                %.2f / %.2f / %.3f / %.2f%n", cohesion.getAverageLcom1(),
+                    cohesion.getAverageLcom2(), cohesion.getAverageLcom3(), cohesion.getAverageLcom4());
+            out.printf("TCC                        %.3f%n", cohesion.getAverageTcc());
+            out.println("splittableClasses          " + cohesion.getSplittableClasses() + " of " + cohesion.getClasses());
+            for (ClassCohesion least : cohesion.getLeastCohesive())
+                out.printf("  LCOM4 %-4d %s%n", least.getLcom4(), least.getClassName());
+        }
+
+        for (Map.Entry<String, MetricCollector<?>> collector : result.getCollectors().entrySet())
+            out.printf("%-27s%s%n", collector.getKey(), collector.getValue().toJson());
+
+        PackageRollup rollup = result.getPackageRollup();
+        if (rollup != null) {
+            out.println();
+            out.printf("%-60s %8s %10s %10s %10s %6s %8s %10s%n", "package", "classes", "A", "B", "C", "depth",
+                    "avgDepth", "overrides");
+            for (String name : rollup.packageNames()) {
+                PackageRollup.Accumulator pkg = rollup.get(name);
+                out.printf("%-60s %8d %10d %10d %10d %6d %8.2f %10d%n", name, pkg.getClasses(), pkg.getA(), pkg.getB(),
+                        pkg.getC(), pkg.getMaxInheritanceDepth(), pkg.getAverageInheritanceDepth(),
+                        pkg.getOverridenMethods());
+            }
+        }
+    }
+
+    private static Supplier<MetricCollector<?>> collectorFactory(String className) {
+        Constructor<?> constructor;
+        try {
+            Class<?> type = Class.forName(className);
+            if (!MetricCollector.class.isAssignableFrom(type))
+                throw new IllegalArgumentException(className + " is not a " + MetricCollector.class.getSimpleName());
+            constructor = type.getConstructor();
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            throw new IllegalArgumentException("Can't load collector " + className + ": " + e);
+        }
+
+        return () -> {
+            try {
+                return (MetricCollector<?>) constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Can't create collector " + className, e);
+            }
+        };
+    }
+
+    private static void printQuantiles(String name, QuantileSketch sketch, PrintStream out) {
+        if (sketch.getCount() == 0)
+            return;
+
+        out.printf("%-27s%.1f / %.1f / %.1f%n", name + " p50/p95/p99", sketch.quantile(0.5), sketch.quantile(0.95),
+                sketch.quantile(0.99));
+    }
+}
@@ -0,0 +1,154 @@
+package org.itmo.lab1;
+
+import org.itmo.lab1.util.ClassSummary;
+import org.itmo.lab1.visitor.ClassAnalyzer;
+import org.objectweb.asm.ClassReader;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Incremental analysis of compiled classes, used by the classMetrics Gradle task.
+ * Summaries of all classes are kept in a state file, so only changed class files are parsed again;
+ * the hierarchy metrics are recomputed from the summaries, which is cheap.
+ */
+public class IncrementalAnalysis {
+    private static final int STATE_VERSION = 1;
+
+    private final Path stateFile;
+    private final Map<String, ClassSummary> summaries;
+    private final boolean restored;
+
+    /**
+     * @param stateFile file with the summaries of the previous run, it is ignored if missing or outdated
+     */
+    public IncrementalAnalysis(Path stateFile) {
+        this.stateFile = stateFile;
+        this.summaries = new TreeMap<>();
+        this.restored = load();
+    }
+
+    /**
+     * @return false if the state file was missing, outdated or broken, then every class has to be added again
+     */
+    public boolean isRestored() {
+        return restored;
+    }
+
+    /**
+     * Parse a new or changed class file.
+     *
+     * @param path      path of the class file relative to its classes directory
+     * @param classFile the class file
+     */
+    public void update(String path, Path classFile) throws IOException {
+        ClassAnalyzer analyzer = new ClassAnalyzer();
+        new ClassReader(Files.readAllBytes(classFile)).accept(analyzer, 0);
+
+        summaries.put(path, new ClassSummary(analyzer.getClassName(), analyzer.getSuperName(),
+                analyzer.getInterfaces(), analyzer.getMethodSignatures(), analyzer.getMethodsCount(),
+                analyzer.getMetrics()));
+    }
+
+    public void remove(String path) {
+        summaries.remove(path);
+    }
+
+    /**
+     * Parse every class file of the classes directory, a missing directory has no classes.
+     */
+    public void updateAll(Path classesDir) throws IOException {
+        if (!Files.isDirectory(classesDir))
+            return;
+
+        List<Path> classFiles;
+        try (Stream<Path> files = Files.walk(classesDir)) {
+            classFiles = files.filter(file -> file.toString().endsWith(".class") && Files.isRegularFile(file))
+                    .toList();
+        }
+        for (Path classFile : classFiles)
+            update(classesDir.relativize(classFile).toString().replace(File.separatorChar, '/'), classFile);
+    }
+
+    public MetricsResult analyze(String name) throws IOException {
+        return new JarMetrics(name).analyzeClasses(summaries.values());
+    }
+
+    public void save() throws IOException {
+        Files.createDirectories(stateFile.toAbsolutePath().getParent());
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(stateFile)))) {
+            out.writeInt(STATE_VERSION);
+            out.writeInt(summaries.size());
+            for (Map.Entry<String, ClassSummary> entry : summaries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().write(out);
+            }
+        }
+    }
+
+    /**
+     * @return true if the summaries of the previous run are loaded
+     */
+    private boolean load() {
+        if (!Files.exists(stateFile))
+            return false;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateFile)))) {
+            if (in.readInt() != STATE_VERSION)
+                return false;
+
+            for (int i = in.readInt(); i > 0; i--)
+                summaries.put(in.readUTF(), ClassSummary.read(in));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            //Broken state, the changes alone would leave out the unchanged classes
+            summaries.clear();
+            return false;
+        }
+    }
+
+    /**
+     * Apply the changes, write the metrics and save the state for the next run.
+     * Every line of the changes file is either {@code M<tab>relative path<tab>class file} for a new
+     * or modified class or {@code R<tab>relative path} for a removed one. If the state can't be restored,
+     * the changes are ignored and every class of the classes directories is parsed instead.
+     */
+    public static MetricsResult run(Path stateFile, Path jsonFile, Path changesFile, List<Path> classesDirs)
+            throws IOException {
+        IncrementalAnalysis analysis = new IncrementalAnalysis(stateFile);
+        if (analysis.isRestored()) {
+            for (String line : Files.readAllLines(changesFile)) {
+                String[] change = line.split("\t");
+                if (change[0].equals("R"))
+                    analysis.remove(change[1]);
+                else if (change[0].equals("M"))
+                    analysis.update(change[1], Path.of(change[2]));
+            }
+        } else {
+            for (Path classesDir : classesDirs)
+                analysis.updateAll(classesDir);
+        }
+
+        MetricsResult result = analysis.analyze(jsonFile.toAbsolutePath().getParent().getFileName().toString());
+        analysis.save();
+        Files.writeString(jsonFile, result.toJson().toString(4));
+
+        return result;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: IncrementalAnalysis <state> <output json> <changes> <classes dir>...");
+            System.exit(2);
+        }
+
+        List<Path> classesDirs = new ArrayList<>();
+        for (int i = 3; i < args.length; i++)
+            classesDirs.add(Path.of(args[i]));
+        run(Path.of(args[0]), Path.of(args[1]), Path.of(args[2]), classesDirs);
+    }
+}
@@ -1,30 +1,170 @@
 package org.itmo.lab1;
 
+import org.itmo.lab1.util.CallGraph;
+import org.itmo.lab1.util.ClassBudget;
+import org.itmo.lab1.util.ClassSummary;
+import org.itmo.lab1.util.CohesionMetrics;
+import org.itmo.lab1.util.CompactHierarchy;
+import org.itmo.lab1.util.ContentIndex;
+import org.itmo.lab1.util.DuplicateClasses;
+import org.itmo.lab1.util.EntryPoints;
 import org.itmo.lab1.util.Graph;
+import org.itmo.lab1.util.HierarchyIndex;
+import org.itmo.lab1.util.JdkClassResolver;
+import org.itmo.lab1.util.JitReport;
+import org.itmo.lab1.util.MethodFilter;
+import org.itmo.lab1.util.MethodSizes;
+import org.itmo.lab1.util.MetricDistributions;
+import org.itmo.lab1.util.MetricCollector;
+import org.itmo.lab1.util.Metrics;
 import org.itmo.lab1.util.Node;
+import org.itmo.lab1.util.OpcodeHistogram;
+import org.itmo.lab1.util.OpcodeProfile;
+import org.itmo.lab1.util.PackageFilter;
+import org.itmo.lab1.util.PackageRollup;
+import org.itmo.lab1.util.ReceiverTypes;
+import org.itmo.lab1.util.SampleEstimator;
+import org.itmo.lab1.util.ThresholdGate;
 import org.itmo.lab1.visitor.ClassAnalyzer;
+import org.itmo.lab1.visitor.CollectorChain;
 import org.json.JSONObject;
 import org.objectweb.asm.ClassReader;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 public class JarMetrics {
     private int fields;
     private int classCount;
+    private int excludedClasses;
     private int methodsCount;
+    private int skippedMethods;
     private int aMetric, bMetric, cMetric;
-    private final Graph graph;
-    private final Map<String, Node> classMap;
-    private final Node root;
+    private Graph graph;
+    private Map<String, Node> classMap;
+    private Node root;
+    private static final int MAX_DEPTH = 10_000;
     private final String jarFileName;
+    private final List<String> jarFileNames;
+    private InputStream jarStream;
+    private double sampleRate = 1.0;
+    private long sampleSeed = 42;
+    private ThresholdGate gate;
+    private ClassBudget classBudget;
+    private MethodFilter methodFilter;
+    private PackageFilter packageFilter;
+    private boolean boundedMemory;
+    private CompactHierarchy compact;
+    private boolean indexHierarchy;
+    private HierarchyIndex hierarchyIndex;
+    private boolean packageRollups;
+    private PackageRollup rollup;
+    private boolean collectDistributions;
+    private MetricDistributions distributions;
+    private boolean countDuplicates = true;
+    private DuplicateClasses duplicates;
+    private OpcodeProfile.Level opcodeLevel;
+    private Writer opcodeReport;
+    private OpcodeProfile opcodeProfile;
+    private JitReport.Limits jitLimits;
+    private Writer jitReportWriter;
+    private JitReport jitReport;
+    private int receiverLimit = -1;
+    private Writer receiverReport;
+    private ReceiverTypes receiverTypes;
+    private EntryPoints entryPoints;
+    private CallGraph callGraph;
+    private boolean collectCohesion;
+    private boolean accurateAssignments;
+    private Writer cohesionReport;
+    private CohesionMetrics cohesion;
+    private final List<Supplier<? extends MetricCollector<?>>> collectorFactories = new ArrayList<>();
+    private final Set<String> collectorNames = new HashSet<>();
+    private List<MetricCollector<?>> collectors;
+    private CollectorChain chain;
 
     public JarMetrics(String jarFileName) {
-        this.jarFileName = jarFileName;
+        this(List.of(jarFileName));
+    }
+
+    /**
+     * Analyze several jars as one classpath, e.g. a fat jar with its dependencies.
+     */
+    public JarMetrics(List<String> jarFileNames) {
+        if (jarFileNames.isEmpty())
+            throw new IllegalArgumentException("No jars given");
+
+        this.jarFileNames = List.copyOf(jarFileNames);
+        this.jarFileName = String.join(File.pathSeparator, jarFileNames);
+        reset();
+    }
+
+    /**
+     * Analyze a jar read sequentially from a stream, e.g. stdin of a pipe. Classes are parsed as their entries
+     * arrive and only the current entry is held in memory. The stream can be analyzed once, sampling
+     * is not supported, and the stream is read to its end and closed by the analysis.
+     *
+     * @param jarName name of the jar in the results
+     */
+    public JarMetrics(InputStream jarStream, String jarName) {
+        this.jarFileNames = List.of();
+        this.jarFileName = jarName;
+        this.jarStream = jarStream;
+        reset();
+    }
+
+    /**
+     * Start every analysis from an empty hierarchy, so one instance can analyze the jar repeatedly.
+     */
+    private void reset() {
+        fields = 0;
+        classCount = 0;
+        excludedClasses = 0;
+        methodsCount = 0;
+        skippedMethods = 0;
+        aMetric = bMetric = cMetric = 0;
+        hierarchyIndex = null;
+        rollup = packageRollups ? new PackageRollup() : null;
+        distributions = collectDistributions ? new MetricDistributions() : null;
+        duplicates = new DuplicateClasses();
+        opcodeProfile = opcodeLevel == null ? null : new OpcodeProfile(opcodeLevel, opcodeReport);
+        jitReport = jitLimits == null ? null : new JitReport(jitLimits, jitReportWriter);
+        receiverTypes = receiverLimit < 0 ? null : new ReceiverTypes(receiverLimit, receiverReport);
+        callGraph = entryPoints == null ? null : new CallGraph(entryPoints);
+        cohesion = collectCohesion ? new CohesionMetrics(cohesionReport) : null;
+        collectors = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (Supplier<? extends MetricCollector<?>> factory : collectorFactories) {
+            MetricCollector<?> collector = factory.get();
+            //A factory may name its collectors differently from the one it made in addCollector
+            if (!names.add(collector.name()))
+                throw new IllegalArgumentException("Collector name is used twice: " + collector.name());
+            collectors.add(collector);
+        }
+        List<MetricCollector<?>> chained = new ArrayList<>(collectors);
+        if (receiverTypes != null)
+            chained.add(0, receiverTypes);
+        if (jitReport != null)
+            chained.add(0, jitReport);
+        if (opcodeProfile != null)
+            chained.add(0, opcodeProfile);
+        chain = new CollectorChain(chained);
+
         root = new Node("java/lang/Object", "", new HashSet<>(), Arrays.asList("hashCode()",
                 "equals(Ljava/lang/Object;)", "clone()", "toString()", "finalize()"));
 
@@ -33,43 +173,811 @@ public class JarMetrics {
         classMap.put(root.getClassName(), root);
     }
 
+    /**
+     * Enable sampling mode. Only the given share of classes, the largest ones and the rest chosen per package,
+     * is parsed fully, and A, B and C are extrapolated with approximate 95% confidence intervals, see
+     * {@link SampleEstimator} for their measured coverage. Other classes are read
+     * without method bodies, so hierarchy, fields and methods stay exact.
+     *
+     * @param sampleRate share of classes to be parsed fully, 1.0 disables sampling
+     * @param sampleSeed seed of the random choice, the same seed gives the same sample
+     */
+    public void setSampling(double sampleRate, long sampleSeed) {
+        if (sampleRate <= 0 || sampleRate > 1)
+            throw new IllegalArgumentException("Sample rate must be in (0, 1]: " + sampleRate);
+
+        this.sampleRate = sampleRate;
+        this.sampleSeed = sampleSeed;
+    }
+
+    /**
+     * Check the budgets of the gate while classes are parsed. Once the gate is exhausted
+     * the scan stops and the result is marked as stopped.
+     */
+    public void setThresholdGate(ThresholdGate gate) {
+        this.gate = gate;
+    }
+
+    public ThresholdGate getThresholdGate() {
+        return gate;
+    }
+
+    /**
+     * Limit the size and analysis time of single classes. Classes over a limit are analyzed partially
+     * and reported by {@link MetricsResult#getPartialClasses()}.
+     */
+    public void setClassBudget(ClassBudget classBudget) {
+        this.classBudget = classBudget;
+    }
+
+    public ClassBudget getClassBudget() {
+        return classBudget;
+    }
+
+    /**
+     * Leave methods out of the metrics, e.g. synthetic methods and Kotlin stubs.
+     * Skipped methods are not parsed at all.
+     */
+    public void setMethodFilter(MethodFilter methodFilter) {
+        this.methodFilter = methodFilter;
+    }
+
+    /**
+     * Compute the metrics only for classes of the included packages. Other classes are read
+     * without their methods and only keep the hierarchy of the included ones correct.
+     */
+    public void setPackageFilter(PackageFilter packageFilter) {
+        this.packageFilter = packageFilter;
+    }
+
+    /**
+     * Enable bounded-memory mode. Only compact hierarchy data is kept on the heap,
+     * method signatures are spilled to a temporary file and memory-mapped for the override phase.
+     */
+    public void setBoundedMemory(boolean boundedMemory) {
+        this.boundedMemory = boundedMemory;
+    }
+
+    /**
+     * Build a {@link HierarchyIndex} at the end of the analysis, for subtype queries.
+     */
+    public void setIndexHierarchy(boolean indexHierarchy) {
+        this.indexHierarchy = indexHierarchy;
+    }
+
+    /**
+     * Roll the metrics up along the package tree, see {@link MetricsResult#getPackageRollup()}.
+     * In sampling mode A, B and C of a package only cover its sampled classes.
+     */
+    public void setPackageRollups(boolean packageRollups) {
+        this.packageRollups = packageRollups;
+    }
+
+    /**
+     * Collect p50/p95/p99 of method ABC, method bytecode size and fields per class in quantile sketches,
+     * see {@link MetricsResult#getDistributions()}. In sampling mode only sampled classes are counted.
+     */
+    public void setDistributions(boolean collectDistributions) {
+        this.collectDistributions = collectDistributions;
+    }
+
+    /**
+     * Count instructions by opcode, see {@link MetricsResult#getOpcodes()}. In sampling mode only sampled
+     * classes are counted, and a duplicate class only once.
+     *
+     * @param level  {@link OpcodeProfile.Level#CLASS} or {@link OpcodeProfile.Level#METHOD} also write
+     *               a histogram per class or method to the report, {@literal null} disables counting
+     * @param report receives the histograms as JSON lines
+     */
+    public void setOpcodeProfile(OpcodeProfile.Level level, Writer report) {
+        if (level != null && level != OpcodeProfile.Level.JAR && report == null)
+            throw new IllegalArgumentException("No report for " + level + " histograms");
+
+        this.opcodeLevel = level;
+        this.opcodeReport = report;
+    }
+
+    /**
+     * Check the code length of every method against the JIT inlining and compilation limits,
+     * see {@link MetricsResult#getJit()}. In sampling mode only sampled classes are counted.
+     *
+     * @param limits {@literal null} disables the report
+     * @param report receives a JSON line per method and per class, may be {@literal null}
+     */
+    public void setJitReport(JitReport.Limits limits, Writer report) {
+        this.jitLimits = limits;
+        this.jitReportWriter = report;
+    }
+
+    /**
+     * Count the concrete classes that may receive every INVOKEVIRTUAL and INVOKEINTERFACE by class hierarchy
+     * analysis, see {@link MetricsResult#getReceiverTypes()}. In sampling mode only sampled classes are counted.
+     *
+     * @param limit  receivers a site may have before it is reported, negative disables the count
+     * @param report receives a JSON line per site over the limit, may be {@literal null}
+     */
+    public void setReceiverTypes(int limit, Writer report) {
+        this.receiverLimit = limit;
+        this.receiverReport = report;
+    }
+
+    /**
+     * Build a method-level call graph and estimate dead code by reachability from the entry points,
+     * see {@link MetricsResult#getCallGraph()}. Only fully parsed classes are part of the graph, so in
+     * sampling mode calls of the classes outside the sample are missing, as are the classes abandoned
+     * at the class time budget.
+     *
+     * @param entryPoints {@literal null} disables the call graph
+     */
+    public void setCallGraph(EntryPoints entryPoints) {
+        this.entryPoints = entryPoints;
+    }
+
+    /**
+     * Compute LCOM and TCC of every class, see {@link MetricsResult#getCohesion()}.
+     * In sampling mode only sampled classes are counted.
+     */
+    public void setCohesion(boolean collectCohesion) {
+        setCohesion(collectCohesion, null);
+    }
+
+    /**
+     * @param report receives a JSON line with the metrics of every class, may be {@literal null}
+     * @see #setCohesion(boolean)
+     */
+    public void setCohesion(boolean collectCohesion, Writer report) {
+        this.collectCohesion = collectCohesion;
+        this.cohesionReport = report;
+    }
+
+    /**
+     * Leave constant declarations, aliases and compiler temporaries out of A and count increments,
+     * tracking where stored values come from. In sampling mode it applies to the sampled classes.
+     */
+    public void setAccurateAssignments(boolean accurateAssignments) {
+        this.accurateAssignments = accurateAssignments;
+    }
+
+    /**
+     * Run a custom metric in the same pass as the built-in ones, see {@link MetricsResult#getCollectors()}.
+     * In sampling mode only sampled classes are visited.
+     *
+     * @param factory creates the collector of every analysis, it is called once here to check the name
+     * @throws IllegalArgumentException if a collector with the same name is added already
+     */
+    public void addCollector(Supplier<? extends MetricCollector<?>> factory) {
+        String name = factory.get().name();
+        if (!collectorNames.add(name))
+            throw new IllegalArgumentException("Collector name is used twice: " + name);
+        collectorFactories.add(factory);
+    }
+
+    /**
+     * Classes found again with identical bytes, e.g. in another jar or as a multi-release variant,
+     * are never parsed again and are reported by {@link MetricsResult#getDuplicates()}.
+     * A copy is counted in the totals and the package rollups from the stored metrics of the first one,
+     * but only the first one is seen by the gate, distributions, opcodes, cohesion, JIT report, receiver types,
+     * call graph and custom collectors; the gate would only repeat its violations for the same class name.
+     *
+     * @param countDuplicates count such copies in the totals as separate classes, true by default
+     */
+    public void setCountDuplicates(boolean countDuplicates) {
+        this.countDuplicates = countDuplicates;
+    }
+
+    /**
+     * @return index of the analyzed hierarchy or {@literal null} if it was not requested
+     */
+    public HierarchyIndex getHierarchyIndex() {
+        return hierarchyIndex;
+    }
+
+    /**
+     * Analyze the jar, print the metrics and write them to metrics.json.
+     */
     public void getMetrics() throws IOException {
-        try (JarFile sampleJar = new JarFile(jarFileName)) {
-            Enumeration<JarEntry> enumeration = sampleJar.entries();
+        MetricsResult result = analyze();
+
+        for (String violation : result.getViolations())
+            System.err.println("Budget violation: " + violation);
+
+        if (!result.isStopped())
+            writeToJson(result);
+    }
+
+    /**
+     * Analyze the jar without any output.
+     */
+    public MetricsResult analyze() throws IOException {
+        return analyze(null, () -> false);
+    }
+
+    /**
+     * Analyze the jar on the executor. Cancelling the future stops the scan at the next class.
+     *
+     * @param listener progress listener, may be {@literal null}
+     */
+    public CompletableFuture<MetricsResult> analyzeAsync(Executor executor, ProgressListener listener) {
+        CompletableFuture<MetricsResult> future = new CompletableFuture<>();
+
+        executor.execute(() -> {
+            try {
+                future.complete(analyze(listener, future::isDone));
+            } catch (CancellationException e) {
+                future.cancel(false);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Compute the metrics from classes parsed earlier, e.g. kept by {@link IncrementalAnalysis}.
+     * Sampling and the threshold gate don't apply here.
+     */
+    public MetricsResult analyzeClasses(Collection<ClassSummary> classes) throws IOException {
+        return analyze(() -> {
+            for (ClassSummary summary : classes) {
+                addClass(summary.getClassName(), summary.getSuperName(), summary.getInterfaces(),
+                        summary.getMethodSignatures(), summary.getMethodsCount(), summary.getFields(),
+                        summary.getA(), summary.getB(), summary.getC());
+            }
+            return finish(null);
+        });
+    }
+
+    private MetricsResult analyze(ProgressListener listener, BooleanSupplier cancelled) throws IOException {
+        return analyze(() -> collectMetrics(listener, cancelled));
+    }
+
+    private synchronized MetricsResult analyze(Analysis analysis) throws IOException {
+        reset();
+        if (gate != null)
+            gate.reset();
+        if (classBudget != null)
+            classBudget.reset();
+
+        if (!boundedMemory)
+            return analysis.run();
+
+        try (CompactHierarchy hierarchy = new CompactHierarchy(root)) {
+            compact = hierarchy;
+            return analysis.run();
+        } finally {
+            compact = null;
+        }
+    }
+
+    private interface Analysis {
+        MetricsResult run() throws IOException;
+    }
+
+    /**
+     * Class file in one of the analyzed jars or in the jar stream.
+     */
+    private static class ClassEntry {
+        private final JarFile jar;
+        private final ZipInputStream stream;
+        private final ZipEntry entry;
+        //Entry name, unique among all jars
+        private final String key;
+        private final String jarName;
 
-            while (enumeration.hasMoreElements()) {
-                JarEntry entry = enumeration.nextElement();
-                if (entry.getName().endsWith(".class")) {
+        private ClassEntry(JarFile jar, JarEntry entry, String key) {
+            this.jar = jar;
+            this.stream = null;
+            this.entry = entry;
+            this.key = key;
+            this.jarName = jar.getName();
+        }
+
+        /**
+         * Current entry of the stream, it can only be read before the stream moves to the next one.
+         */
+        private ClassEntry(ZipInputStream stream, ZipEntry entry, String jarName) {
+            this.jar = null;
+            this.stream = stream;
+            this.entry = entry;
+            this.key = entry.getName();
+            this.jarName = jarName;
+        }
+
+        private boolean isStreamed() {
+            return stream != null;
+        }
+
+        private byte[] read() throws IOException {
+            if (isStreamed())
+                return stream.readAllBytes();
+
+            try (InputStream in = jar.getInputStream(entry)) {
+                return in.readAllBytes();
+            }
+        }
+
+        private long size() {
+            return Math.max(entry.getSize(), 0);
+        }
+
+        private String location() {
+            return jarName + "!/" + entry.getName();
+        }
+    }
+
+    /**
+     * Move the stream to its next class file.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean readNextEntry(ZipInputStream stream, List<ClassEntry> entries) throws IOException {
+        for (ZipEntry entry = stream.getNextEntry(); entry != null; entry = stream.getNextEntry()) {
+            if (entry.getName().endsWith(".class")) {
+                entries.add(new ClassEntry(stream, entry, jarFileName));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private MetricsResult collectMetrics(ProgressListener listener, BooleanSupplier cancelled) throws IOException {
+        SampleEstimator estimator = null;
+        List<String> pendingDepths = new ArrayList<>();
+        Map<String, ClassEntry> excluded = new HashMap<>();
+        Set<String> supertypes = new HashSet<>();
+        ContentIndex parsed = new ContentIndex();
+        List<JarFile> jars = new ArrayList<>();
+        InputStream in = null;
+        ZipInputStream stream = null;
+        if (jarStream != null) {
+            if (sampleRate < 1.0)
+                throw new IllegalStateException("Sampling needs the sizes of all classes, a stream can't be sampled");
+            in = new BufferedInputStream(jarStream, 1 << 16);
+            stream = new ZipInputStream(in);
+            jarStream = null;
+        } else if (jarFileNames.isEmpty()) {
+            throw new IllegalStateException("The stream of " + jarFileName + " has already been analyzed");
+        }
+
+        try {
+            //Entries of a stream are added as they are read
+            List<ClassEntry> entries = new ArrayList<>();
+            for (String name : jarFileNames) {
+                JarFile jar = new JarFile(name);
+                //Entries of several jars may have the same name
+                String prefix = jarFileNames.size() == 1 ? "" : jars.size() + "!";
+                jars.add(jar);
+                jar.stream()
+                        .filter(entry -> entry.getName().endsWith(".class"))
+                        .forEach(entry -> entries.add(new ClassEntry(jar, entry, prefix + entry.getName())));
+            }
+
+            Set<String> sample = null;
+            if (sampleRate < 1.0) {
+                estimator = new SampleEstimator();
+                Map<String, Long> classSizes = new HashMap<>();
+                for (ClassEntry entry : entries)
+                    if (isIncluded(entry.entry))
+                        classSizes.put(entry.key, entry.size());
+                sample = estimator.chooseSample(classSizes, sampleRate, new Random(sampleSeed));
+            }
+
+            for (int i = 0; ; i++) {
+                if (stream != null && !readNextEntry(stream, entries) || i == entries.size())
+                    break;
+
+                ClassEntry entry = entries.get(i);
+                if (cancelled.getAsBoolean())
+                    throw new CancellationException("Analysis of " + jarFileName + " is cancelled");
+
+                //The size budget goes by the size the entry declares before it is inflated, the header
+                //of an oversized class is still read; a stream entry may only know its size afterwards
+                String oversized = classBudget == null ? null : classBudget.checkClassSize(entry.size());
+                byte[] bytes = entry.read();
+                if (oversized == null && classBudget != null)
+                    oversized = classBudget.checkClassSize(bytes.length);
+                ClassReader cr = new ClassReader(bytes);
+                if (!isIncluded(entry.entry)) {
+                    if (entry.isStreamed()) {
+                        //A streamed class can't be read again later, so its methods are read right away
+                        addExcludedClass(cr.getClassName(), cr.getSuperName(), cr.getInterfaces(),
+                                parse(cr, null, false).getMethodSignatures());
+                    } else {
+                        //Only the header is read, methods are loaded later if some included class extends it
+                        addExcludedClass(cr.getClassName(), cr.getSuperName(), cr.getInterfaces(), List.of());
+                        excluded.put(cr.getClassName(), entry);
+                    }
+                    excludedClasses++;
+                    continue;
+                }
+
+                boolean sampled = sample == null || sample.contains(entry.key);
+                long hash = ContentIndex.hash(bytes);
+                int checksum = ContentIndex.checksum(bytes);
+                int id = parsed.find(hash, checksum, cr.getClassName(), bytes.length);
+
+                if (id != -1) {
+                    //Same bytes as a class parsed before, the hierarchy already has it
+                    duplicates.add(cr.getClassName(), entries.get(parsed.getLocation(id)).location(), entry.location());
+                    if (countDuplicates) {
+                        if (sampled && !parsed.isFull(id)) {
+                            ClassAnalyzer analyzer = parse(cr, oversized, true);
+                            parsed.update(id, analyzer.getMetrics(), analyzer.getMethodsCount(),
+                                    analyzer.getSkippedMethods(), !analyzer.isPartial());
+                        }
+
+                        Metrics metrics = parsed.getMetrics(id);
+                        countClass(cr.getClassName(), parsed.getMethods(id), metrics.getFieldCount(), metrics.getA(),
+                                metrics.getB(), metrics.getC());
+                        skippedMethods += parsed.getSkippedMethods(id);
+                        if (estimator != null && sampled && parsed.isFull(id))
+                            estimator.addSample(entry.key, entry.size(), metrics);
+                    } else if (estimator != null) {
+                        estimator.removeFromPopulation(entry.key, entry.size());
+                    }
+                } else {
+                    ClassAnalyzer analyzer = parse(cr, oversized, sampled);
+                    parsed.add(hash, checksum, analyzer.getClassName(), bytes.length, i, analyzer.getMetrics(),
+                            analyzer.getMethodsCount(), analyzer.getSkippedMethods(), sampled && !analyzer.isPartial());
+
+                    addClass(analyzer.getClassName(), analyzer.getSuperName(), analyzer.getInterfaces(),
+                            analyzer.getMethodSignatures(), analyzer.getMethodsCount(),
+                            analyzer.getMetrics().getFieldCount(), analyzer.getMetrics().getA(),
+                            analyzer.getMetrics().getB(), analyzer.getMetrics().getC());
+                    skippedMethods += analyzer.getSkippedMethods();
+                    if (packageFilter != null) {
+                        if (analyzer.getSuperName() != null)
+                            supertypes.add(analyzer.getSuperName());
+                        supertypes.addAll(analyzer.getInterfaces());
+                    }
+
+                    //A partial class is not a sample, it is estimated from the rest of its stratum
+                    if (estimator != null && sampled && !analyzer.isPartial())
+                        estimator.addSample(entry.key, entry.size(), analyzer.getMetrics());
+
+                    if (gate != null) {
+                        checkGate(analyzer, pendingDepths);
+                        if (gate.isExhausted())
+                            return stoppedResult(estimator);
+                    }
+                }
+
+                if (listener != null)
+                    listener.onProgress(classCount + excludedClasses, stream == null ? entries.size() : -1);
+            }
+
+            //Let the writer of a pipe finish, the central directory is not needed
+            if (in != null)
+                in.transferTo(OutputStream.nullOutputStream());
+            loadExcludedMethods(excluded, supertypes);
+        } finally {
+            for (JarFile jar : jars)
+                jar.close();
+            if (stream != null)
+                stream.close();
+        }
+
+        if (gate != null) {
+            //Superclasses of these classes came later in the jar
+            for (String className : pendingDepths) {
+                gate.checkDepth(className, superclassDepth(className));
+                if (gate.isExhausted())
+                    return stoppedResult(estimator);
+            }
+        }
+
+        return finish(estimator);
+    }
+
+    /**
+     * @param oversized reason the class file exceeds the size budget, {@literal null} if it fits
+     * @param full      parse method bodies too, otherwise only the hierarchy, methods and fields are read
+     */
+    private ClassAnalyzer parse(ClassReader cr, String oversized, boolean full) {
+        if (full && oversized != null) {
+            classBudget.addPartialClass(cr.getClassName(), oversized);
+            ClassAnalyzer analyzer = parse(cr, null, false);
+            analyzer.markPartial();
+            return analyzer;
+        }
+
+        ClassAnalyzer analyzer = new ClassAnalyzer(methodFilter);
+        boolean budgeted = full && classBudget != null;
+        if (budgeted) {
+            analyzer.setMaxMethodSize(classBudget.getMaxMethodSize());
+            analyzer.setDeadline(classBudget.deadline());
+        }
+        if (full && (distributions != null || callGraph != null || chain.needsCodeSizes()
+                || budgeted && classBudget.checksMethodSize()))
+            analyzer.setMethodSizes(MethodSizes.read(cr));
+        if (distributions != null && full)
+            analyzer.setDistributions(distributions);
+        if (callGraph != null && full)
+            analyzer.setCallGraph(callGraph);
+        if (cohesion != null && full)
+            analyzer.setCohesion(cohesion);
+        if (!chain.isEmpty() && full)
+            analyzer.setCollectors(chain);
+        if (accurateAssignments && full)
+            analyzer.setAccurateAssignments(true);
+
+        try {
+            cr.accept(analyzer, full ? 0 : ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        } catch (ClassAnalyzer.DeadlineExceededException e) {
+            //The methods analyzed before the deadline are dropped from the collectors and the call graph,
+            //the distributions only get whole classes; the class itself is read again without method bodies
+            chain.discardClass();
+            if (callGraph != null)
+                callGraph.discardClass();
+            classBudget.addPartialClass(cr.getClassName(), classBudget.timeExceeded());
+            ClassAnalyzer header = parse(cr, null, false);
+            header.markPartial();
+            return header;
+        }
+
+        if (analyzer.getOversizedMethods() > 0)
+            classBudget.addPartialClass(cr.getClassName(), classBudget.methodsExceeded(analyzer.getOversizedMethods()));
+        return analyzer;
+    }
+
+    private boolean isIncluded(ZipEntry entry) {
+        if (packageFilter == null)
+            return true;
+
+        //Multi-release classes are filtered by their own name
+        String name = entry.getName().replaceFirst("^META-INF/versions/\\d+/", "");
+        return packageFilter.includes(name.substring(0, name.length() - ".class".length()));
+    }
+
+    private void addExcludedClass(String className, String superName, String[] interfaces, List<String> methods)
+            throws IOException {
+        Set<String> faces = new HashSet<>(Arrays.asList(interfaces));
+        if (compact != null) {
+            compact.addClass(className, superName, faces, methods, true);
+        } else {
+            Node node = new Node(className, superName, faces, methods);
+            node.setExternal(true);
+            classMap.put(className, node);
+        }
+    }
+
+    /**
+     * Read the methods of excluded classes that included classes extend or implement, transitively,
+     * so that overrides of their methods are still counted. Method bodies are skipped.
+     */
+    private void loadExcludedMethods(Map<String, ClassEntry> excluded, Set<String> supertypes) throws IOException {
+        Deque<String> queue = new ArrayDeque<>(supertypes);
+        Set<String> loaded = new HashSet<>();
+
+        while (!queue.isEmpty()) {
+            String name = queue.poll();
+            ClassEntry entry = excluded.get(name);
+            if (entry == null || !loaded.add(name))
+                continue;
+
+            ClassAnalyzer analyzer = parse(new ClassReader(entry.read()), null, false);
+            addExcludedClass(name, analyzer.getSuperName(), analyzer.getInterfaces().toArray(new String[0]),
+                    analyzer.getMethodSignatures());
+
+            if (analyzer.getSuperName() != null)
+                queue.add(analyzer.getSuperName());
+            queue.addAll(analyzer.getInterfaces());
+        }
+    }
+
+    private void addClass(String className, String superName, Set<String> interfaces, List<String> methodSignatures,
+                          int methods, int fieldCount, int a, int b, int c) throws IOException {
+        countClass(className, methods, fieldCount, a, b, c);
+
+        if (compact != null) {
+            compact.addClass(className, superName, interfaces, methodSignatures, false);
+        } else {
+            Node node = new Node(className, superName, interfaces, methodSignatures);
+            classMap.put(node.getClassName(), node);
+        }
+    }
+
+    private void countClass(String className, int methods, int fieldCount, int a, int b, int c) {
+        classCount++;
+        fields += fieldCount;
+        aMetric += a;
+        bMetric += b;
+        cMetric += c;
+        methodsCount += methods;
+        if (rollup != null)
+            rollup.of(className).addClass(fieldCount, a, b, c, methods);
+    }
+
+    /**
+     * Hierarchy metrics, computed once all classes have been added.
+     */
+    private MetricsResult finish(SampleEstimator estimator) throws IOException {
+        int maxDepth;
+        double averageDepth;
+        int overridenMethods;
+        HierarchyIndex index = null;
 
-                    ClassAnalyzer analyzer = new ClassAnalyzer();
-                    ClassReader cr = new ClassReader(sampleJar.getInputStream(entry));
-                    cr.accept(analyzer, 0);
+        if (compact != null) {
+            resolveExternalClasses(compact);
+            compact.computeDepths(rollup == null ? null : (className, depth) -> rollup.of(className).addDepth(depth));
 
-                    classCount++;
-                    fields += analyzer.getMetrics().getFieldCount();
-                    aMetric += analyzer.getMetrics().getA();
-                    bMetric += analyzer.getMetrics().getB();
-                    cMetric += analyzer.getMetrics().getC();
-                    methodsCount += analyzer.getMethodsCount();
+            maxDepth = compact.getMaxDepth();
+            averageDepth = compact.getAverageDepth();
+            overridenMethods = compact.overridenMethods(rollup == null ? null
+                    : (className, overrides) -> rollup.of(className).addOverrides(overrides));
+            if (indexHierarchy || receiverTypes != null)
+                index = compact.toIndex();
+        } else {
+            resolveExternalClasses();
+            createGraph();
+            graph.depthFirstTraversal(root, 1,
+                    rollup == null ? null : (className, depth) -> rollup.of(className).addDepth(depth));
+
+            maxDepth = maxDepth();
+            averageDepth = averageDepth();
+            overridenMethods = overridenMethods();
+            if (indexHierarchy || receiverTypes != null)
+                index = HierarchyIndex.of(classMap);
+        }
+        if (indexHierarchy)
+            hierarchyIndex = index;
+        if (receiverTypes != null)
+            receiverTypes.resolve(index);
+        JdkClassResolver.getInstance().persist();
+        if (rollup != null)
+            rollup.reduce();
+        if (callGraph != null)
+            callGraph.build();
+
+        return result(estimator, maxDepth, averageDepth, overridenMethods, false);
+    }
+
+    private MetricsResult stoppedResult(SampleEstimator estimator) {
+        return result(estimator, -1, Double.NaN, 0, true);
+    }
+
+    private MetricsResult result(SampleEstimator estimator, int maxDepth, double averageDepth, int overridenMethods,
+                                 boolean stopped) {
+        List<String> violations = gate == null ? List.of() : gate.getViolations();
+        PackageRollup packages = stopped ? null : rollup;
+        OpcodeHistogram opcodes = opcodeProfile == null ? null : opcodeProfile.getHistogram();
+        CallGraph calls = stopped ? null : callGraph;
+        ReceiverTypes receivers = stopped ? null : receiverTypes;
+        Map<String, MetricCollector<?>> collected = new LinkedHashMap<>();
+        for (MetricCollector<?> collector : collectors)
+            collected.put(collector.name(), collector);
+        Map<String, String> partialClasses = classBudget == null ? Map.of() : classBudget.getPartialClasses();
+
+        MetricsResult.Builder builder = new MetricsResult.Builder(jarFileName)
+                .classes(classCount, excludedClasses, classCount == 0 ? 0 : (double) fields / classCount)
+                .abc(aMetric, bMetric, cMetric)
+                .methods(methodsCount, skippedMethods)
+                .inheritance(maxDepth, averageDepth, overridenMethods)
+                .gate(violations, stopped)
+                .hierarchyIndex(hierarchyIndex)
+                .packageRollup(packages)
+                .distributions(distributions)
+                .duplicates(duplicates)
+                .opcodes(opcodes)
+                .callGraph(calls)
+                .cohesion(cohesion)
+                .partialClasses(partialClasses)
+                .jit(jitReport)
+                .receiverTypes(receivers)
+                .collectors(collected);
+        if (estimator != null)
+            builder.sampling(estimator.sampledClasses(), estimator.estimateA(), estimator.estimateB(),
+                    estimator.estimateC());
+        return builder.build();
+    }
+
+    private void checkGate(ClassAnalyzer analyzer, List<String> pendingDepths) throws IOException {
+        gate.checkClass(analyzer.getClassName(), analyzer.getMetrics(), analyzer.getMaxMethodAbc(),
+                analyzer.getMaxAbcMethod());
+
+        if (gate.checksDepth()) {
+            int depth = superclassDepth(analyzer.getClassName());
+            if (depth == -1)
+                pendingDepths.add(analyzer.getClassName());
+            else
+                gate.checkDepth(analyzer.getClassName(), depth);
+        }
+    }
+
+    /**
+     * Depth of the class along its superclass chain, java/lang/Object has depth 1.
+     * Superclasses missing from the jar are resolved from the JDK.
+     *
+     * @return depth or -1 if some superclass is not known (yet)
+     */
+    private int superclassDepth(String className) throws IOException {
+        int depth = 1;
+        String name = className;
 
-                    Node node = new Node(analyzer.getClassName(), analyzer.getSuperName(),
-                            analyzer.getInterfaces(), analyzer.getMethodSignatures());
+        while (!name.equals(root.getClassName())) {
+            name = superclassOf(name);
+            if (name == null)
+                return -1;
 
-                    classMap.put(node.getClassName(), node);
+            //Missing superclass or a cyclic hierarchy of a broken jar
+            if (name.isEmpty() || depth > MAX_DEPTH)
+                return depth;
+            depth++;
+        }
+
+        return depth;
+    }
+
+    /**
+     * @return name of the superclass, empty if there is none, or {@literal null} if the class is not known
+     */
+    private String superclassOf(String className) throws IOException {
+        String superName = compact != null ? compact.getSuperclassName(className)
+                : classMap.containsKey(className) ? classMap.get(className).getSuperclassName() : null;
+        if (superName != null)
+            return superName;
+
+        Node node = JdkClassResolver.getInstance().resolve(className);
+        if (node == null)
+            return null;
+
+        if (compact != null)
+            compact.addClass(className, node.getSuperclassName(), node.getInterfaces(), node.getMethods(), true);
+        else
+            classMap.put(className, node);
+
+        return node.getSuperclassName() == null ? "" : node.getSuperclassName();
+    }
+
+    /**
+     * Resolve superclasses and interfaces which are not in the jar from the running JDK.
+     * Only classes that are actually referenced get resolved, transitively.
+     */
+    private void resolveExternalClasses() {
+        JdkClassResolver resolver = JdkClassResolver.getInstance();
+        Deque<Node> queue = new ArrayDeque<>(classMap.values());
+
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            List<String> supertypes = new ArrayList<>(node.getInterfaces());
+            supertypes.add(node.getSuperclassName());
+
+            for (String name : supertypes) {
+                if (name == null || classMap.containsKey(name))
+                    continue;
+
+                Node external = resolver.resolve(name);
+                if (external != null) {
+                    classMap.put(name, external);
+                    queue.add(external);
                 }
             }
         }
+    }
 
-        createGraph();
-        graph.depthFirstTraversal(root, 1);
+    /**
+     * Same as {@link #resolveExternalClasses()} for the bounded-memory mode.
+     */
+    private void resolveExternalClasses(CompactHierarchy hierarchy) throws IOException {
+        JdkClassResolver resolver = JdkClassResolver.getInstance();
+        Set<String> attempted = new HashSet<>();
+        boolean resolved = true;
 
-        int maxDepth = maxDepth();
-        double averageDepth = averageDepth();
-        int overridenMethods = overridenMethods();
-        double averageOverridenMethods = (double) overridenMethods / (double) methodsCount;
+        while (resolved) {
+            resolved = false;
+            for (String name : hierarchy.undefinedClasses()) {
+                if (!attempted.add(name))
+                    continue;
 
-        writeToJson(jarFileName, aMetric, bMetric, cMetric, (double) fields / classCount,
-                maxDepth, averageDepth, averageOverridenMethods, methodsCount, overridenMethods);
+                Node external = resolver.resolve(name);
+                if (external != null) {
+                    hierarchy.addClass(name, external.getSuperclassName(), external.getInterfaces(),
+                            external.getMethods(), true);
+                    resolved = true;
+                }
+            }
+        }
     }
 
     private void createGraph() {
@@ -114,16 +1022,21 @@ public class JarMetrics {
         int result = 0;
 
         for (Node node : classMap.values()) {                                //For every node
-            if (node.getClassName().equals(root.getClassName()))             //skip Object class
+            if (node.getClassName().equals(root.getClassName()) || node.isExternal()) //skip Object and JDK classes
                 continue;
 
+            int overrides = 0;
             for (String method : node.getMethods()) {                        //For every method in the node
                 for (String face : node.getInterfaces()) {                   //For every parent-interface
                     Node parent = classMap.get(face);
                     if (parent != null && parent.getMethods().contains(method))
-                        result++;
+                        overrides++;
                 }
             }
+
+            result += overrides;
+            if (rollup != null)
+                rollup.of(node.getClassName()).addOverrides(overrides);
         }
 
         return result;
@@ -136,15 +1049,20 @@ public class JarMetrics {
     public int getOverridesForSuperclasses() {
         int result = 0;
         for (Node node : classMap.values()) {                                //For every node
-            if (node.getClassName().equals(root.getClassName()))             //skip Object class
+            if (node.getClassName().equals(root.getClassName()) || node.isExternal()) //skip Object and JDK classes
                 continue;
 
+            int overrides = 0;
             for (String method : node.getMethods()) {                        //For every method in the node
                 for (Node parent : node.getSuperClasses()) {                 //For every parent
                     if (parent != null && parent.getMethods().contains(method))
-                        result++;
+                        overrides++;
                 }
             }
+
+            result += overrides;
+            if (rollup != null)
+                rollup.of(node.getClassName()).addOverrides(overrides);
         }
 
         return result;
@@ -176,46 +1094,31 @@ public class JarMetrics {
      */
     private void visitInterfaces() {
         for (Node node : classMap.values()) {
-            appendInterfaces(node, node);
+            Set<String> interfaces = new HashSet<>();
+            appendInterfaces(interfaces, node);
+            node.setInterfaces(interfaces);
         }
     }
 
-
-    private final Set<String> interfaces = new HashSet<>();
-
     /**
-     * Retrieve all parent-interfaces for node
+     * Retrieve all parent-interfaces for node.
+     * Interfaces resolved from the JDK form deep and shared hierarchies, so every
+     * interface is visited once.
      */
-    private void appendInterfaces(Node node, Node currNode) {
+    private void appendInterfaces(Set<String> interfaces, Node currNode) {
         for (String face : currNode.getInterfaces()) {
+            if (!interfaces.add(face))
+                continue;
+
             Node faceNode = classMap.get(face);
             if (faceNode != null) {
-                interfaces.addAll(faceNode.getInterfaces());
-                appendInterfaces(node, faceNode);
+                appendInterfaces(interfaces, faceNode);
             }
         }
+    }
 
-        if (!interfaces.isEmpty()) {
-            node.setInterfaces(interfaces);
-        }
-        interfaces.clear();
-    }
-
-    private static JSONObject writeToJson(String jarFileName, double aMetric, double bMetric, double cMetric,
-                                          double fieldsAverage, double maxDepth, double averageDepth, double averageOverridenMethods,
-                                          int methods, int overridenMethods) {
-        JSONObject metricJson = new JSONObject();
-        metricJson.put("jarName", jarFileName);
-        metricJson.put("fieldsAverage", fieldsAverage);
-        metricJson.put("A", aMetric);
-        metricJson.put("B", bMetric);
-        metricJson.put("C", cMetric);
-        metricJson.put("ABC", Math.sqrt(aMetric * aMetric + bMetric * bMetric + cMetric * cMetric));
-        metricJson.put("maxInheritanceDepth", maxDepth);
-        metricJson.put("averageInheritanceDepth", averageDepth);
-        metricJson.put("averageOverridenMethods", averageOverridenMethods);
-        metricJson.put("methods", methods);
-        metricJson.put("overridenMethods", overridenMethods);
+    private static JSONObject writeToJson(MetricsResult result) {
+        JSONObject metricJson = result.toJson();
 
         try {
             File file = new File("metrics.json");
@@ -235,7 +1138,6 @@ public class JarMetrics {
     }
 
     public static void main(String[] args) throws IOException {
-        JarMetrics metrics = new JarMetrics("/Users/axothy/.gradle/caches/modules-2/files-2.1/org.springframework/spring-web/5.3.8/daa288e67b0f2e09a033500d5ce8406677c5045c/spring-web-5.3.8.jar");
-        metrics.getMetrics();
+        Cli.main(args);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,481 @@
+package org.itmo.lab1;
+
+import org.itmo.lab1.util.CallGraph;
+import org.itmo.lab1.util.CohesionMetrics;
+import org.itmo.lab1.util.DuplicateClasses;
+import org.itmo.lab1.util.HierarchyIndex;
+import org.itmo.lab1.util.JitReport;
+import org.itmo.lab1.util.MetricCollector;
+import org.itmo.lab1.util.MetricDistributions;
+import org.itmo.lab1.util.OpcodeHistogram;
+import org.itmo.lab1.util.PackageRollup;
+import org.itmo.lab1.util.ReceiverTypes;
+import org.itmo.lab1.util.SampleEstimator.Estimate;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Result of a jar analysis. The totals are fixed once the result is built, the hierarchy index, call graph,
+ * collectors and other detailed results are the live objects of the analysis and are shared, not copied.
+ */
+public class MetricsResult {
+    private final String jarName;
+    private final int classes;
+    private final int excludedClasses;
+    private final double fieldsAverage;
+    private final double a, b, c;
+    private final int maxInheritanceDepth;
+    private final double averageInheritanceDepth;
+    private final int methods;
+    private final int skippedMethods;
+    private final int overridenMethods;
+    private final int sampledClasses;
+    private final Estimate aEstimate, bEstimate, cEstimate;
+    private final List<String> violations;
+    private final boolean stopped;
+    private final HierarchyIndex hierarchyIndex;
+    private final PackageRollup packageRollup;
+    private final MetricDistributions distributions;
+    private final DuplicateClasses duplicates;
+    private final OpcodeHistogram opcodes;
+    private final CallGraph callGraph;
+    private final CohesionMetrics cohesion;
+    private final Map<String, String> partialClasses;
+    private final JitReport jit;
+    private final ReceiverTypes receiverTypes;
+    private final Map<String, MetricCollector<?>> collectors;
+
+    private MetricsResult(Builder builder) {
+        this.jarName = builder.jarName;
+        this.classes = builder.classes;
+        this.excludedClasses = builder.excludedClasses;
+        this.fieldsAverage = builder.fieldsAverage;
+        this.a = builder.a;
+        this.b = builder.b;
+        this.c = builder.c;
+        this.maxInheritanceDepth = builder.maxInheritanceDepth;
+        this.averageInheritanceDepth = builder.averageInheritanceDepth;
+        this.methods = builder.methods;
+        this.skippedMethods = builder.skippedMethods;
+        this.overridenMethods = builder.overridenMethods;
+        this.sampledClasses = builder.sampledClasses;
+        this.aEstimate = builder.aEstimate;
+        this.bEstimate = builder.bEstimate;
+        this.cEstimate = builder.cEstimate;
+        this.violations = List.copyOf(builder.violations);
+        this.stopped = builder.stopped;
+        this.hierarchyIndex = builder.hierarchyIndex;
+        this.packageRollup = builder.packageRollup;
+        this.distributions = builder.distributions;
+        this.duplicates = builder.duplicates;
+        this.opcodes = builder.opcodes;
+        this.callGraph = builder.callGraph;
+        this.cohesion = builder.cohesion;
+        this.partialClasses = Collections.unmodifiableMap(new TreeMap<>(builder.partialClasses));
+        this.jit = builder.jit;
+        this.receiverTypes = builder.receiverTypes;
+        this.collectors = Collections.unmodifiableMap(new LinkedHashMap<>(builder.collectors));
+    }
+
+    /**
+     * Results are only built by {@link JarMetrics}, every value is set by name.
+     */
+    static class Builder {
+        private final String jarName;
+        private int classes;
+        private int excludedClasses;
+        private double fieldsAverage;
+        private double a, b, c;
+        private int maxInheritanceDepth;
+        private double averageInheritanceDepth;
+        private int methods;
+        private int skippedMethods;
+        private int overridenMethods;
+        private int sampledClasses;
+        private Estimate aEstimate, bEstimate, cEstimate;
+        private List<String> violations = List.of();
+        private boolean stopped;
+        private HierarchyIndex hierarchyIndex;
+        private PackageRollup packageRollup;
+        private MetricDistributions distributions;
+        private DuplicateClasses duplicates;
+        private OpcodeHistogram opcodes;
+        private CallGraph callGraph;
+        private CohesionMetrics cohesion;
+        private Map<String, String> partialClasses = Map.of();
+        private JitReport jit;
+        private ReceiverTypes receiverTypes;
+        private Map<String, MetricCollector<?>> collectors = Map.of();
+
+        Builder(String jarName) {
+            this.jarName = jarName;
+        }
+
+        /**
+         * @param excludedClasses number of classes left out by the package filter
+         */
+        Builder classes(int classes, int excludedClasses, double fieldsAverage) {
+            this.classes = classes;
+            this.excludedClasses = excludedClasses;
+            this.fieldsAverage = fieldsAverage;
+            return this;
+        }
+
+        Builder abc(double a, double b, double c) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            return this;
+        }
+
+        /**
+         * @param skippedMethods number of methods left out by the method filter
+         */
+        Builder methods(int methods, int skippedMethods) {
+            this.methods = methods;
+            this.skippedMethods = skippedMethods;
+            return this;
+        }
+
+        /**
+         * Hierarchy metrics, not computed if the threshold gate stopped the scan.
+         */
+        Builder inheritance(int maxDepth, double averageDepth, int overridenMethods) {
+            this.maxInheritanceDepth = maxDepth;
+            this.averageInheritanceDepth = averageDepth;
+            this.overridenMethods = overridenMethods;
+            return this;
+        }
+
+        /**
+         * Estimates of sampling mode, A, B and C are set to their values.
+         *
+         * @param sampledClasses number of classes parsed fully
+         */
+        Builder sampling(int sampledClasses, Estimate a, Estimate b, Estimate c) {
+            this.sampledClasses = sampledClasses;
+            this.aEstimate = a;
+            this.bEstimate = b;
+            this.cEstimate = c;
+            return abc(a.getValue(), b.getValue(), c.getValue());
+        }
+
+        /**
+         * @param stopped true if the threshold gate stopped the scan
+         */
+        Builder gate(List<String> violations, boolean stopped) {
+            this.violations = violations;
+            this.stopped = stopped;
+            return this;
+        }
+
+        Builder hierarchyIndex(HierarchyIndex hierarchyIndex) {
+            this.hierarchyIndex = hierarchyIndex;
+            return this;
+        }
+
+        Builder packageRollup(PackageRollup packageRollup) {
+            this.packageRollup = packageRollup;
+            return this;
+        }
+
+        Builder distributions(MetricDistributions distributions) {
+            this.distributions = distributions;
+            return this;
+        }
+
+        Builder duplicates(DuplicateClasses duplicates) {
+            this.duplicates = duplicates;
+            return this;
+        }
+
+        Builder opcodes(OpcodeHistogram opcodes) {
+            this.opcodes = opcodes;
+            return this;
+        }
+
+        Builder callGraph(CallGraph callGraph) {
+            this.callGraph = callGraph;
+            return this;
+        }
+
+        Builder cohesion(CohesionMetrics cohesion) {
+            this.cohesion = cohesion;
+            return this;
+        }
+
+        /**
+         * @param partialClasses classes analyzed partially because of the class budget, with the reasons
+         */
+        Builder partialClasses(Map<String, String> partialClasses) {
+            this.partialClasses = partialClasses;
+            return this;
+        }
+
+        Builder jit(JitReport jit) {
+            this.jit = jit;
+            return this;
+        }
+
+        Builder receiverTypes(ReceiverTypes receiverTypes) {
+            this.receiverTypes = receiverTypes;
+            return this;
+        }
+
+        /**
+         * @param collectors custom collectors by name
+         */
+        Builder collectors(Map<String, MetricCollector<?>> collectors) {
+            this.collectors = collectors;
+            return this;
+        }
+
+        MetricsResult build() {
+            return new MetricsResult(this);
+        }
+    }
+
+    public String getJarName() {
+        return jarName;
+    }
+
+    public int getClasses() {
+        return classes;
+    }
+
+    public int getExcludedClasses() {
+        return excludedClasses;
+    }
+
+    public double getFieldsAverage() {
+        return fieldsAverage;
+    }
+
+    public double getA() {
+        return a;
+    }
+
+    public double getB() {
+        return b;
+    }
+
+    public double getC() {
+        return c;
+    }
+
+    public double getAbc() {
+        return Math.sqrt(a * a + b * b + c * c);
+    }
+
+    public int getMaxInheritanceDepth() {
+        return maxInheritanceDepth;
+    }
+
+    /**
+     * @return average depth or NaN if no class was analyzed
+     */
+    public double getAverageInheritanceDepth() {
+        return averageInheritanceDepth;
+    }
+
+    public int getMethods() {
+        return methods;
+    }
+
+    public int getSkippedMethods() {
+        return skippedMethods;
+    }
+
+    public int getOverridenMethods() {
+        return overridenMethods;
+    }
+
+    public double getAverageOverridenMethods() {
+        return methods == 0 ? 0 : (double) overridenMethods / (double) methods;
+    }
+
+    public boolean isSampled() {
+        return aEstimate != null;
+    }
+
+    public int getSampledClasses() {
+        return sampledClasses;
+    }
+
+    /**
+     * @return estimates with confidence intervals in sampling mode, {@literal null} otherwise
+     */
+    public Estimate getAEstimate() {
+        return aEstimate;
+    }
+
+    public Estimate getBEstimate() {
+        return bEstimate;
+    }
+
+    public Estimate getCEstimate() {
+        return cEstimate;
+    }
+
+    public List<String> getViolations() {
+        return violations;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * @return index of the hierarchy if it was requested, {@literal null} otherwise
+     */
+    public HierarchyIndex getHierarchyIndex() {
+        return hierarchyIndex;
+    }
+
+    /**
+     * @return metrics of every package including its subpackages if they were requested,
+     * {@literal null} otherwise
+     */
+    public PackageRollup getPackageRollup() {
+        return packageRollup;
+    }
+
+    /**
+     * @return distributions of method and class metrics if they were requested, {@literal null} otherwise
+     */
+    public MetricDistributions getDistributions() {
+        return distributions;
+    }
+
+    /**
+     * @return classes found more than once with identical bytes
+     */
+    public DuplicateClasses getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return instructions of the parsed classes by opcode if they were requested, {@literal null} otherwise
+     */
+    public OpcodeHistogram getOpcodes() {
+        return opcodes;
+    }
+
+    /**
+     * @return call graph with reachability if it was requested, {@literal null} otherwise
+     */
+    public CallGraph getCallGraph() {
+        return callGraph;
+    }
+
+    /**
+     * @return cohesion of the classes if it was requested, {@literal null} otherwise
+     */
+    public CohesionMetrics getCohesion() {
+        return cohesion;
+    }
+
+    /**
+     * @return true if some classes were analyzed partially, their A, B and C only cover the analyzed part
+     */
+    public boolean isPartial() {
+        return !partialClasses.isEmpty();
+    }
+
+    /**
+     * @return reasons by internal name of the classes analyzed partially
+     */
+    public Map<String, String> getPartialClasses() {
+        return partialClasses;
+    }
+
+    /**
+     * @return method sizes against the JIT limits if they were requested, {@literal null} otherwise
+     */
+    public JitReport getJit() {
+        return jit;
+    }
+
+    /**
+     * @return receiver types of the virtual call sites if they were requested and the scan was not stopped,
+     * {@literal null} otherwise
+     */
+    public ReceiverTypes getReceiverTypes() {
+        return receiverTypes;
+    }
+
+    /**
+     * @return custom collectors added with {@link JarMetrics#addCollector} by name, in the order they were added
+     */
+    public Map<String, MetricCollector<?>> getCollectors() {
+        return collectors;
+    }
+
+    public JSONObject toJson() {
+        JSONObject metricJson = new JSONObject();
+        metricJson.put("jarName", jarName);
+        metricJson.put("fieldsAverage", fieldsAverage);
+        metricJson.put("A", a);
+        metricJson.put("B", b);
+        metricJson.put("C", c);
+        metricJson.put("ABC", getAbc());
+        metricJson.put("maxInheritanceDepth", (double) maxInheritanceDepth);
+        //JSON has no NaN, the average is left out if no class was analyzed, as in the package rollups
+        if (!Double.isNaN(averageInheritanceDepth))
+            metricJson.put("averageInheritanceDepth", averageInheritanceDepth);
+        metricJson.put("averageOverridenMethods", getAverageOverridenMethods());
+        metricJson.put("methods", methods);
+        metricJson.put("overridenMethods", overridenMethods);
+        if (excludedClasses > 0)
+            metricJson.put("excludedClasses", excludedClasses);
+        if (skippedMethods > 0)
+            metricJson.put("skippedMethods", skippedMethods);
+        if (isPartial()) {
+            metricJson.put("partial", true);
+            JSONObject reasons = new JSONObject();
+            for (Map.Entry<String, String> entry : partialClasses.entrySet())
+                reasons.put(entry.getKey(), entry.getValue());
+            metricJson.put("partialClasses", reasons);
+        }
+
+        if (isSampled()) {
+            JSONObject sampling = new JSONObject();
+            sampling.put("sampledClasses", sampledClasses);
+            sampling.put("confidence", 0.95);
+            sampling.put("A", aEstimate.toJson());
+            sampling.put("B", bEstimate.toJson());
+            sampling.put("C", cEstimate.toJson());
+            metricJson.put("sampling", sampling);
+        }
+
+        if (packageRollup != null)
+            metricJson.put("packages", packageRollup.toJson());
+        if (distributions != null)
+            metricJson.put("distributions", distributions.toJson());
+        if (duplicates != null && duplicates.getDuplicates() > 0)
+            metricJson.put("duplicates", duplicates.toJson());
+        if (opcodes != null)
+            metricJson.put("opcodes", opcodes.toJson());
+        if (callGraph != null)
+            metricJson.put("callGraph", callGraph.toJson());
+        if (cohesion != null)
+            metricJson.put("cohesion", cohesion.toJson());
+        if (jit != null)
+            metricJson.put("jit", jit.toJson());
+        if (receiverTypes != null)
+            metricJson.put("receiverTypes", receiverTypes.toJson());
+        if (!collectors.isEmpty()) {
+            JSONObject collected = new JSONObject();
+            for (Map.Entry<String, MetricCollector<?>> entry : collectors.entrySet())
+                collected.put(entry.getKey(), entry.getValue().toJson());
+            metricJson.put("collectors", collected);
+        }
+
+        return metricJson;
+    }
+}
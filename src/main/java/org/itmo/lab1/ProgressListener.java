@@ -0,0 +1,12 @@
+package org.itmo.lab1;
+
+/**
+ * Progress of an analysis, called from the thread running it after every class.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+    /**
+     * @param totalClasses classes in the jars or -1 if not known, e.g. for a jar read from a stream
+     */
+    void onProgress(int processedClasses, int totalClasses);
+}
@@ -0,0 +1,598 @@
+package org.itmo.lab1.util;
+
+import org.json.JSONObject;
+
+import java.util.*;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Method-level call graph with reachability from {@link EntryPoints}.
+ * <p>
+ * Methods are interned to int ids by owner, name and descriptor, calls are collected as pairs of ids
+ * and compressed by {@link #build()} into CSR form: the callees of method m are
+ * {@code callTargets[callOffsets[m]..callOffsets[m + 1])}, sorted and without repeats.
+ * Virtual calls are resolved with the hierarchy of the graph into dispatch edges: a call to an
+ * inherited method leads to its declaration and a declaration leads to every method overriding it.
+ * Methods overriding JDK methods, or methods of classes the graph doesn't know, count as entry points
+ * since they may be called back by library code, as well as serialization methods and the methods
+ * enums get from the compiler.
+ * <p>
+ * Reachability is a level-synchronous breadth-first search over bitsets, a call adds one level of
+ * depth and dispatch adds none. Reaching a method of a class or its static fields also reaches its
+ * static initializer. Calls through reflection are not seen, so dead code is an estimate.
+ */
+public class CallGraph {
+    private static final Set<String> SERIALIZATION_METHODS = Set.of("writeObject(Ljava/io/ObjectOutputStream;)V",
+            "readObject(Ljava/io/ObjectInputStream;)V", "readObjectNoData()V", "writeReplace()Ljava/lang/Object;",
+            "readResolve()Ljava/lang/Object;");
+
+    private final EntryPoints entryPoints;
+
+    private final Map<String, Integer> classIds = new HashMap<>();
+    private final List<String> classNames = new ArrayList<>();
+    private int[] superIds = new int[1024];
+    private int[][] interfaceIds = new int[1024][];
+    private int[] classAccess = new int[1024];
+    private int[] staticInits = new int[1024];
+    private final BitSet definedClasses = new BitSet();
+    private final BitSet handlerClasses = new BitSet();
+
+    //Methods are keyed by owner.name descriptor, names keep name and descriptor only
+    private final Map<String, Integer> methodIds = new HashMap<>();
+    private final List<String> methodNames = new ArrayList<>();
+    private int[] ownerIds = new int[4096];
+    private int[] codeSizes = new int[4096];
+    private final BitSet definedMethods = new BitSet();
+    private final BitSet withCode = new BitSet();
+    private final BitSet virtualMethods = new BitSet();
+    private final BitSet entries = new BitSet();
+
+    private EdgeList calls = new EdgeList();
+    private EdgeList dispatch = new EdgeList();
+
+    //Class added last with its first edges and its methods, so that it can be discarded
+    private int lastClass = -1;
+    private int lastClassCalls;
+    private int lastClassDispatch;
+    private int[] lastClassMethods = new int[64];
+    private int lastClassMethodCount;
+    private int[] callOffsets;
+    private int[] callTargets;
+    private int[] dispatchOffsets;
+    private int[] dispatchTargets;
+    private long[] reachable;
+
+    private int methods;
+    private int reachableMethods;
+    private long deadBytes;
+    private int maxCallDepth;
+    private double averageCallDepth;
+    private int maxFanOut;
+    private String maxFanOutMethod;
+    private double averageFanOut;
+
+    public CallGraph(EntryPoints entryPoints) {
+        this.entryPoints = entryPoints;
+    }
+
+    public void addClass(String className, String superName, String[] interfaces, int access) {
+        int id = internClass(className);
+        superIds[id] = superName == null ? -1 : internClass(superName);
+        int[] faces = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++)
+            faces[i] = internClass(interfaces[i]);
+        interfaceIds[id] = faces;
+        classAccess[id] = access;
+        definedClasses.set(id);
+
+        lastClass = id;
+        lastClassCalls = calls.size;
+        lastClassDispatch = dispatch.size;
+        lastClassMethodCount = 0;
+    }
+
+    /**
+     * Remove the class added last with its methods and their calls, e.g. when its analysis is abandoned.
+     * Calls to its methods are kept, they become calls to a class the graph doesn't know.
+     */
+    public void discardClass() {
+        if (lastClass == -1)
+            return;
+
+        calls.size = lastClassCalls;
+        dispatch.size = lastClassDispatch;
+        for (int i = 0; i < lastClassMethodCount; i++) {
+            int method = lastClassMethods[i];
+            definedMethods.clear(method);
+            withCode.clear(method);
+            virtualMethods.clear(method);
+            entries.clear(method);
+            codeSizes[method] = 0;
+        }
+        staticInits[lastClass] = -1;
+        definedClasses.clear(lastClass);
+        handlerClasses.clear(lastClass);
+        lastClass = -1;
+    }
+
+    /**
+     * Mark the class as a handler if the annotation is one of the entry point annotations.
+     * Must be called before the methods of the class are added.
+     */
+    public void addClassAnnotation(String className, String descriptor) {
+        if (entryPoints.isHandlerAnnotation(descriptor))
+            handlerClasses.set(internClass(className));
+    }
+
+    /**
+     * @param codeSize length of the bytecode of the method, 0 if unknown
+     * @return id of the method, the caller of the calls made in its body
+     */
+    public int addMethod(String className, int access, String name, String descriptor, int codeSize) {
+        int id = internMethod(className, name, descriptor);
+        int classId = ownerIds[id];
+        definedMethods.set(id);
+        if (classId == lastClass) {
+            if (lastClassMethodCount == lastClassMethods.length)
+                lastClassMethods = Arrays.copyOf(lastClassMethods, lastClassMethodCount * 2);
+            lastClassMethods[lastClassMethodCount++] = id;
+        }
+
+        if ((access & (ACC_ABSTRACT | ACC_NATIVE)) == 0) {
+            withCode.set(id);
+            codeSizes[id] = codeSize;
+        }
+        if ((access & (ACC_STATIC | ACC_PRIVATE)) == 0 && name.charAt(0) != '<')
+            virtualMethods.set(id);
+        if (name.equals("<clinit>"))
+            staticInits[classId] = id;
+
+        if (entryPoints.isEntryPoint(classAccess[classId], access, name, descriptor)
+                || handlerClasses.get(classId) && (access & ACC_PRIVATE) == 0
+                || SERIALIZATION_METHODS.contains(methodNames.get(id))
+                || (classAccess[classId] & ACC_ENUM) != 0 && (name.equals("values") || name.equals("valueOf")))
+            entries.set(id);
+
+        return id;
+    }
+
+    public void addMethodAnnotation(int method, String descriptor) {
+        if (entryPoints.isHandlerAnnotation(descriptor))
+            entries.set(method);
+    }
+
+    public void addCall(int caller, String owner, String name, String descriptor) {
+        calls.add(caller, internMethod(owner, name, descriptor));
+    }
+
+    /**
+     * Record an access to a static field, which initializes the class of the field.
+     */
+    public void addStaticAccess(int caller, String owner) {
+        dispatch.add(caller, internMethod(owner, "<clinit>", "()V"));
+    }
+
+    /**
+     * Compress the edges, resolve virtual calls and compute reachability. No calls may be added afterwards.
+     */
+    public void build() {
+        int size = methodNames.size();
+        Ancestry[] ancestries = new Ancestry[classNames.size()];
+        Map<String, Set<String>> jdkMethods = new HashMap<>();
+
+        for (int method = 0; method < size; method++) {
+            int owner = ownerIds[method];
+            if (!definedClasses.get(owner))
+                continue;
+
+            if (ancestries[owner] == null)
+                ancestries[owner] = ancestry(owner, jdkMethods);
+            Ancestry ancestry = ancestries[owner];
+            String name = methodNames.get(method);
+
+            if (!definedMethods.get(method)) {
+                //Inherited method called through a subclass, the first declaration wins as in JVM resolution
+                for (int ancestor : ancestry.ids) {
+                    Integer declaration = methodIds.get(classNames.get(ancestor) + '.' + name);
+                    if (declaration != null && definedMethods.get(declaration)) {
+                        dispatch.add(method, declaration);
+                        break;
+                    }
+                }
+            } else if (virtualMethods.get(method)) {
+                for (int ancestor : ancestry.ids) {
+                    Integer overridden = methodIds.get(classNames.get(ancestor) + '.' + name);
+                    if (overridden != null)
+                        dispatch.add(overridden, method);
+                }
+
+                if (ancestry.unknown || ancestry.overridesJdk(name))
+                    entries.set(method);
+            }
+        }
+
+        int[][] callCsr = compress(size, calls);
+        callOffsets = callCsr[0];
+        callTargets = callCsr[1];
+        int[][] dispatchCsr = compress(size, dispatch);
+        dispatchOffsets = dispatchCsr[0];
+        dispatchTargets = dispatchCsr[1];
+        calls = null;
+        dispatch = null;
+
+        traverse(size);
+        fanOut();
+    }
+
+    private void traverse(int size) {
+        int words = (size + 63) >>> 6;
+        reachable = new long[words];
+        long[] frontier = new long[words];
+        for (int method = entries.nextSetBit(0); method >= 0; method = entries.nextSetBit(method + 1)) {
+            reachable[method >>> 6] |= 1L << method;
+            frontier[method >>> 6] |= 1L << method;
+        }
+
+        long depthSum = 0;
+        for (int depth = 0; !isEmpty(frontier); depth++) {
+            //Dispatch doesn't add depth, so the level is closed over dispatch edges first
+            long[] pending = frontier;
+            while (!isEmpty(pending)) {
+                long[] added = new long[words];
+                for (int w = 0; w < words; w++) {
+                    for (long bits = pending[w]; bits != 0; bits &= bits - 1) {
+                        int method = w << 6 | Long.numberOfTrailingZeros(bits);
+                        for (int i = dispatchOffsets[method]; i < dispatchOffsets[method + 1]; i++)
+                            if (mark(dispatchTargets[i], added)) {
+                                int target = dispatchTargets[i];
+                                frontier[target >>> 6] |= 1L << target;
+                            }
+                    }
+                }
+                pending = added;
+            }
+
+            long[] next = new long[words];
+            for (int w = 0; w < words; w++) {
+                for (long bits = frontier[w]; bits != 0; bits &= bits - 1) {
+                    int method = w << 6 | Long.numberOfTrailingZeros(bits);
+                    if (withCode.get(method)) {
+                        reachableMethods++;
+                        depthSum += depth;
+                        maxCallDepth = depth;
+                    }
+
+                    for (int i = callOffsets[method]; i < callOffsets[method + 1]; i++)
+                        mark(callTargets[i], next);
+                    int staticInit = staticInits[ownerIds[method]];
+                    if (staticInit != -1)
+                        mark(staticInit, next);
+                }
+            }
+            frontier = next;
+        }
+
+        methods = withCode.cardinality();
+        averageCallDepth = reachableMethods == 0 ? 0 : (double) depthSum / reachableMethods;
+        for (int method = withCode.nextSetBit(0); method >= 0; method = withCode.nextSetBit(method + 1))
+            if (!isReachable(method))
+                deadBytes += codeSizes[method];
+    }
+
+    private void fanOut() {
+        long total = 0;
+        for (int method = withCode.nextSetBit(0); method >= 0; method = withCode.nextSetBit(method + 1)) {
+            int fanOut = callOffsets[method + 1] - callOffsets[method];
+            total += fanOut;
+            if (fanOut > maxFanOut || maxFanOutMethod == null) {
+                maxFanOut = fanOut;
+                maxFanOutMethod = methodName(method);
+            }
+        }
+        averageFanOut = methods == 0 ? 0 : (double) total / methods;
+    }
+
+    /**
+     * Set the bit of the method in the given set unless it is already reachable.
+     *
+     * @return true if the method was not reachable before
+     */
+    private boolean mark(int method, long[] set) {
+        long bit = 1L << method;
+        if ((reachable[method >>> 6] & bit) != 0)
+            return false;
+
+        reachable[method >>> 6] |= bit;
+        set[method >>> 6] |= bit;
+        return true;
+    }
+
+    private static boolean isEmpty(long[] set) {
+        for (long word : set)
+            if (word != 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Counting sort of the edges by source, then sorting and deduplication of every row in place.
+     *
+     * @return offsets and targets
+     */
+    private static int[][] compress(int size, EdgeList edges) {
+        int[] offsets = new int[size + 1];
+        for (int i = 0; i < edges.size; i++)
+            offsets[edges.from[i] + 1]++;
+        for (int i = 0; i < size; i++)
+            offsets[i + 1] += offsets[i];
+
+        int[] targets = new int[edges.size];
+        int[] fill = Arrays.copyOf(offsets, size);
+        for (int i = 0; i < edges.size; i++)
+            targets[fill[edges.from[i]]++] = edges.to[i];
+
+        int write = 0;
+        for (int i = 0; i < size; i++) {
+            int start = offsets[i];
+            int end = offsets[i + 1];
+            Arrays.sort(targets, start, end);
+            offsets[i] = write;
+            for (int j = start; j < end; j++)
+                if (j == start || targets[j] != targets[j - 1])
+                    targets[write++] = targets[j];
+        }
+        offsets[size] = write;
+
+        return new int[][]{offsets, Arrays.copyOf(targets, write)};
+    }
+
+    /**
+     * Supertypes of a class of the graph, superclasses first as in method resolution,
+     * with the methods of the JDK supertypes.
+     */
+    private Ancestry ancestry(int classId, Map<String, Set<String>> jdkMethods) {
+        Ancestry ancestry = new Ancestry();
+        int[] ids = new int[8];
+        int count = 0;
+        BitSet seen = new BitSet();
+
+        for (int id = superIds[classId]; id != -1 && !seen.get(id); id = superIds[id]) {
+            seen.set(id);
+            ids = count == ids.length ? Arrays.copyOf(ids, count * 2) : ids;
+            ids[count++] = id;
+        }
+        for (int i = -1; i < count; i++) {
+            int[] faces = interfaceIds[i == -1 ? classId : ids[i]];
+            if (faces == null)
+                continue;
+            for (int face : faces) {
+                if (seen.get(face))
+                    continue;
+                seen.set(face);
+                ids = count == ids.length ? Arrays.copyOf(ids, count * 2) : ids;
+                ids[count++] = face;
+            }
+        }
+
+        ancestry.ids = Arrays.copyOf(ids, count);
+        for (int id : ancestry.ids) {
+            if (definedClasses.get(id))
+                continue;
+            Set<String> methods = jdkMethods(classNames.get(id), jdkMethods);
+            if (methods == null)
+                ancestry.unknown = true;
+            else
+                ancestry.jdk.add(methods);
+        }
+        return ancestry;
+    }
+
+    /**
+     * @return signatures of the methods of a JDK type and its supertypes, {@literal null} if it is not a JDK type
+     */
+    private static Set<String> jdkMethods(String className, Map<String, Set<String>> cache) {
+        if (cache.containsKey(className))
+            return cache.get(className);
+
+        Node node = JdkClassResolver.getInstance().resolve(className);
+        Set<String> methods = null;
+        if (node != null) {
+            methods = new HashSet<>(node.getMethods());
+            List<String> supertypes = new ArrayList<>(node.getInterfaces());
+            if (node.getSuperclassName() != null && !node.getSuperclassName().isEmpty())
+                supertypes.add(node.getSuperclassName());
+            for (String supertype : supertypes) {
+                Set<String> inherited = jdkMethods(supertype, cache);
+                if (inherited != null)
+                    methods.addAll(inherited);
+            }
+        }
+
+        cache.put(className, methods);
+        return methods;
+    }
+
+    private int internClass(String className) {
+        Integer id = classIds.get(className);
+        if (id != null)
+            return id;
+
+        id = classNames.size();
+        if (id == superIds.length) {
+            superIds = Arrays.copyOf(superIds, id * 2);
+            interfaceIds = Arrays.copyOf(interfaceIds, id * 2);
+            classAccess = Arrays.copyOf(classAccess, id * 2);
+            staticInits = Arrays.copyOf(staticInits, id * 2);
+        }
+        superIds[id] = -1;
+        staticInits[id] = -1;
+        classIds.put(className, id);
+        classNames.add(className);
+        return id;
+    }
+
+    private int internMethod(String owner, String name, String descriptor) {
+        String key = owner + '.' + name + descriptor;
+        Integer id = methodIds.get(key);
+        if (id != null)
+            return id;
+
+        id = methodNames.size();
+        if (id == ownerIds.length) {
+            ownerIds = Arrays.copyOf(ownerIds, id * 2);
+            codeSizes = Arrays.copyOf(codeSizes, id * 2);
+        }
+        ownerIds[id] = internClass(owner);
+        methodIds.put(key, id);
+        methodNames.add(name + descriptor);
+        return id;
+    }
+
+    private String methodName(int method) {
+        return classNames.get(ownerIds[method]) + '.' + methodNames.get(method);
+    }
+
+    private boolean isReachable(int method) {
+        return (reachable[method >>> 6] & 1L << method) != 0;
+    }
+
+    /**
+     * @return true if the method is reachable from the entry points, available after {@link #build()}
+     */
+    public boolean isReachable(String owner, String name, String descriptor) {
+        Integer id = methodIds.get(owner + '.' + name + descriptor);
+        return id != null && isReachable(id);
+    }
+
+    /**
+     * @return methods with code which are not reachable from the entry points, as owner.name descriptor
+     */
+    public List<String> getDeadMethods() {
+        List<String> dead = new ArrayList<>();
+        for (int method = withCode.nextSetBit(0); method >= 0; method = withCode.nextSetBit(method + 1))
+            if (!isReachable(method))
+                dead.add(methodName(method));
+        return dead;
+    }
+
+    /**
+     * @return methods with code
+     */
+    public int getMethods() {
+        return methods;
+    }
+
+    /**
+     * @return distinct caller-callee pairs
+     */
+    public int getCalls() {
+        return callTargets.length;
+    }
+
+    public int getEntryPoints() {
+        BitSet defined = (BitSet) entries.clone();
+        defined.and(definedMethods);
+        return defined.cardinality();
+    }
+
+    public int getReachableMethods() {
+        return reachableMethods;
+    }
+
+    public int getDeadMethodCount() {
+        return methods - reachableMethods;
+    }
+
+    public double getDeadMethodShare() {
+        return methods == 0 ? 0 : (double) getDeadMethodCount() / methods;
+    }
+
+    /**
+     * @return bytecode size of the dead methods, 0 if code sizes were not given
+     */
+    public long getDeadBytes() {
+        return deadBytes;
+    }
+
+    /**
+     * @return number of calls on the longest shortest path from an entry point
+     */
+    public int getMaxCallDepth() {
+        return maxCallDepth;
+    }
+
+    public double getAverageCallDepth() {
+        return averageCallDepth;
+    }
+
+    /**
+     * @return distinct callees of the method calling the most
+     */
+    public int getMaxFanOut() {
+        return maxFanOut;
+    }
+
+    public String getMaxFanOutMethod() {
+        return maxFanOutMethod;
+    }
+
+    public double getAverageFanOut() {
+        return averageFanOut;
+    }
+
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("methods", methods);
+        json.put("calls", getCalls());
+        json.put("entryPoints", getEntryPoints());
+        json.put("reachableMethods", reachableMethods);
+        json.put("deadMethods", getDeadMethodCount());
+        json.put("deadMethodShare", getDeadMethodShare());
+        json.put("deadBytes", deadBytes);
+        json.put("maxCallDepth", maxCallDepth);
+        json.put("averageCallDepth", averageCallDepth);
+        json.put("maxFanOut", maxFanOut);
+        if (maxFanOutMethod != null)
+            json.put("maxFanOutMethod", maxFanOutMethod);
+        json.put("averageFanOut", averageFanOut);
+        return json;
+    }
+
+    private static final class Ancestry {
+        private int[] ids;
+        private final List<Set<String>> jdk = new ArrayList<>();
+        private boolean unknown;
+
+        private boolean overridesJdk(String nameAndDescriptor) {
+            if (jdk.isEmpty())
+                return false;
+
+            //JDK signatures have no return type
+            String signature = nameAndDescriptor.substring(0, nameAndDescriptor.indexOf(')') + 1);
+            for (Set<String> methods : jdk)
+                if (methods.contains(signature))
+                    return true;
+            return false;
+        }
+    }
+
+    /**
+     * Growable pairs of method ids.
+     */
+    private static final class EdgeList {
+        private int[] from = new int[4096];
+        private int[] to = new int[4096];
+        private int size;
+
+        private void add(int source, int target) {
+            if (size == from.length) {
+                from = Arrays.copyOf(from, size * 2);
+                to = Arrays.copyOf(to, size * 2);
+            }
+            from[size] = source;
+            to[size] = target;
+            size++;
+        }
+    }
+}
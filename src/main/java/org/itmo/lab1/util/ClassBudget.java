@@ -0,0 +1,108 @@
+package org.itmo.lab1.util;
+
+import java.util.*;
+
+/**
+ * Limits that keep a single pathological class, e.g. generated parser tables, from stalling the scan.
+ * A class file over the size limit, or a class whose analysis runs over the time limit, is read
+ * without method bodies; a method over the code length limit is counted without its body.
+ * Such classes are recorded as partial with the reason, their A, B and C only cover what was analyzed.
+ * A limit of zero or less is disabled.
+ */
+public class ClassBudget {
+    private long maxClassSize;
+    private int maxMethodSize;
+    private long maxClassMillis;
+    private final Map<String, String> partialClasses = new TreeMap<>();
+
+    /**
+     * Create a budget from the {@code jarmetrics.budget.*} system properties:
+     * maxClassSize, maxMethodSize and maxClassMillis.
+     *
+     * @return configured budget or {@literal null} if no limit is set
+     */
+    public static ClassBudget fromSystemProperties() {
+        ClassBudget budget = new ClassBudget();
+        budget.setMaxClassSize(Long.getLong("jarmetrics.budget.maxClassSize", 0));
+        budget.setMaxMethodSize(Integer.getInteger("jarmetrics.budget.maxMethodSize", 0));
+        budget.setMaxClassMillis(Long.getLong("jarmetrics.budget.maxClassMillis", 0));
+
+        return budget.isEnabled() ? budget : null;
+    }
+
+    /**
+     * @param maxClassSize size of the class file in bytes
+     */
+    public void setMaxClassSize(long maxClassSize) {
+        this.maxClassSize = maxClassSize;
+    }
+
+    /**
+     * @param maxMethodSize bytecode length of a method, the JVM limit is 65535
+     */
+    public void setMaxMethodSize(int maxMethodSize) {
+        this.maxMethodSize = maxMethodSize;
+    }
+
+    /**
+     * @param maxClassMillis time to analyze the methods of a class
+     */
+    public void setMaxClassMillis(long maxClassMillis) {
+        this.maxClassMillis = maxClassMillis;
+    }
+
+    public boolean isEnabled() {
+        return maxClassSize > 0 || maxMethodSize > 0 || maxClassMillis > 0;
+    }
+
+    public boolean checksMethodSize() {
+        return maxMethodSize > 0;
+    }
+
+    public int getMaxMethodSize() {
+        return maxMethodSize;
+    }
+
+    /**
+     * @return reason to read the class without method bodies or {@literal null} if it fits
+     */
+    public String checkClassSize(long classSize) {
+        if (maxClassSize > 0 && classSize > maxClassSize)
+            return "class file of " + classSize + " bytes exceeds " + maxClassSize;
+        return null;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} by which the analysis of a class started now must end,
+     * {@link Long#MAX_VALUE} without a time limit
+     */
+    public long deadline() {
+        return maxClassMillis > 0 ? System.nanoTime() + maxClassMillis * 1_000_000 : Long.MAX_VALUE;
+    }
+
+    public String timeExceeded() {
+        return "analysis exceeds " + maxClassMillis + " ms";
+    }
+
+    public String methodsExceeded(int methods) {
+        return methods + " methods exceed " + maxMethodSize + " bytes of code";
+    }
+
+    public void addPartialClass(String className, String reason) {
+        partialClasses.put(className, reason);
+    }
+
+    /**
+     * Forget the partial classes of the previous analysis.
+     */
+    public void reset() {
+        partialClasses.clear();
+    }
+
+    /**
+     * @return reasons by internal class name
+     */
+    public Map<String, String> getPartialClasses() {
+        return Collections.unmodifiableMap(partialClasses);
+    }
+}
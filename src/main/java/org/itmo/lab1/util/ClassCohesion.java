@@ -0,0 +1,205 @@
+package org.itmo.lab1.util;
+
+import java.util.*;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Cohesion of a single class, collected while its methods are parsed. Every instance method with code
+ * except constructors gets a bitset of the instance fields of the class it reads or writes, stored in
+ * one flat array, so comparing two methods is an AND of their words.
+ * <ul>
+ *     <li>LCOM1 is the number of method pairs sharing no field</li>
+ *     <li>LCOM2 is LCOM1 minus the number of pairs sharing a field, at least 0</li>
+ *     <li>LCOM3 (Henderson-Sellers) is (m - sum of methods per field / fields) / (m - 1), from 0 to 2</li>
+ *     <li>LCOM4 is the number of connected components of methods linked by a shared field or a call</li>
+ *     <li>TCC is the share of method pairs sharing a field</li>
+ * </ul>
+ * Fields are matched by owner and name, so an access to the field of another instance of the class
+ * counts as well.
+ */
+public class ClassCohesion {
+    private final String className;
+    private final Map<String, Integer> fields = new HashMap<>();
+    private final Map<String, Integer> methods = new HashMap<>();
+    private int words = -1;
+    private long[] bits = new long[0];
+
+    //Calls to methods of the same class, resolved once all methods are known
+    private int[] callers = new int[16];
+    private final List<String> callees = new ArrayList<>();
+
+    private boolean computed;
+    private int lcom1, lcom2, lcom4;
+    private double lcom3, tcc;
+
+    public ClassCohesion(String className) {
+        this.className = className;
+    }
+
+    public void addField(int access, String name) {
+        if (words != -1)
+            throw new IllegalStateException("Field " + name + " added after methods of " + className);
+
+        if ((access & ACC_STATIC) == 0)
+            fields.put(name, fields.size());
+    }
+
+    /**
+     * @return index of the method to pass with its accesses, -1 if the method is not part of the metrics
+     */
+    public int addMethod(int access, String name, String descriptor) {
+        if ((access & (ACC_STATIC | ACC_ABSTRACT | ACC_NATIVE)) != 0 || name.equals("<init>"))
+            return -1;
+
+        if (words == -1)
+            words = (fields.size() + 63) >>> 6;
+        int index = methods.size();
+        methods.put(name + descriptor, index);
+        if ((index + 1) * words > bits.length)
+            bits = Arrays.copyOf(bits, Math.max(16, 2 * (index + 1) * words));
+        return index;
+    }
+
+    public void addFieldAccess(int method, String owner, String name) {
+        if (method == -1 || !owner.equals(className))
+            return;
+
+        Integer field = fields.get(name);
+        if (field != null)
+            bits[method * words + (field >>> 6)] |= 1L << field;
+    }
+
+    public void addCall(int method, String owner, String name, String descriptor) {
+        if (method == -1 || !owner.equals(className))
+            return;
+
+        if (callees.size() == callers.length)
+            callers = Arrays.copyOf(callers, callers.length * 2);
+        callers[callees.size()] = method;
+        callees.add(name + descriptor);
+    }
+
+    /**
+     * @return true if the class has at least two methods and a field, metrics are not defined otherwise
+     */
+    public boolean isDefined() {
+        return methods.size() >= 2 && !fields.isEmpty();
+    }
+
+    public void compute() {
+        if (computed || !isDefined())
+            return;
+        computed = true;
+
+        int m = methods.size();
+        int a = fields.size();
+        long sharing = 0;
+        long notSharing = 0;
+        for (int i = 0; i < m; i++) {
+            for (int j = i + 1; j < m; j++) {
+                if (shareField(i, j))
+                    sharing++;
+                else
+                    notSharing++;
+            }
+        }
+
+        lcom1 = (int) Math.min(notSharing, Integer.MAX_VALUE);
+        lcom2 = (int) Math.min(Math.max(notSharing - sharing, 0), Integer.MAX_VALUE);
+        tcc = (double) sharing / (sharing + notSharing);
+
+        long accesses = 0;
+        for (int i = 0; i < m * words; i++)
+            accesses += Long.bitCount(bits[i]);
+        lcom3 = (m - (double) accesses / a) / (m - 1);
+
+        lcom4 = components(m, a);
+    }
+
+    private boolean shareField(int i, int j) {
+        int first = i * words;
+        int second = j * words;
+        for (int w = 0; w < words; w++)
+            if ((bits[first + w] & bits[second + w]) != 0)
+                return true;
+        return false;
+    }
+
+    private int components(int m, int a) {
+        int[] parent = new int[m];
+        for (int i = 0; i < m; i++)
+            parent[i] = i;
+
+        //Every method is linked with the first method accessing the same field
+        int[] firstAccess = new int[a];
+        Arrays.fill(firstAccess, -1);
+        for (int i = 0; i < m; i++) {
+            for (int w = 0; w < words; w++) {
+                for (long word = bits[i * words + w]; word != 0; word &= word - 1) {
+                    int field = w << 6 | Long.numberOfTrailingZeros(word);
+                    if (firstAccess[field] == -1)
+                        firstAccess[field] = i;
+                    else
+                        union(parent, firstAccess[field], i);
+                }
+            }
+        }
+
+        for (int i = 0; i < callees.size(); i++) {
+            Integer callee = methods.get(callees.get(i));
+            if (callee != null)
+                union(parent, callers[i], callee);
+        }
+
+        int components = 0;
+        for (int i = 0; i < m; i++)
+            if (find(parent, i) == i)
+                components++;
+        return components;
+    }
+
+    private static void union(int[] parent, int x, int y) {
+        parent[find(parent, x)] = find(parent, y);
+    }
+
+    private static int find(int[] parent, int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public int getMethods() {
+        return methods.size();
+    }
+
+    public int getFields() {
+        return fields.size();
+    }
+
+    public int getLcom1() {
+        return lcom1;
+    }
+
+    public int getLcom2() {
+        return lcom2;
+    }
+
+    public double getLcom3() {
+        return lcom3;
+    }
+
+    public int getLcom4() {
+        return lcom4;
+    }
+
+    public double getTcc() {
+        return tcc;
+    }
+}
@@ -0,0 +1,107 @@
+package org.itmo.lab1.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Everything the jar-wide metrics need from a single parsed class.
+ * Summaries can be stored and reused, so unchanged classes don't have to be parsed again.
+ */
+public class ClassSummary {
+    private final String className;
+    private final String superName;
+    private final Set<String> interfaces;
+    private final List<String> methodSignatures;
+    private final int methodsCount;
+    private final int fields;
+    private final int a, b, c;
+
+    public ClassSummary(String className, String superName, Set<String> interfaces, List<String> methodSignatures,
+                        int methodsCount, Metrics metrics) {
+        this(className, superName, interfaces, methodSignatures, methodsCount, metrics.getFieldCount(),
+                metrics.getA(), metrics.getB(), metrics.getC());
+    }
+
+    private ClassSummary(String className, String superName, Set<String> interfaces, List<String> methodSignatures,
+                         int methodsCount, int fields, int a, int b, int c) {
+        this.className = className;
+        this.superName = superName;
+        this.interfaces = interfaces;
+        this.methodSignatures = methodSignatures;
+        this.methodsCount = methodsCount;
+        this.fields = fields;
+        this.a = a;
+        this.b = b;
+        this.c = c;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getSuperName() {
+        return superName;
+    }
+
+    public Set<String> getInterfaces() {
+        return interfaces;
+    }
+
+    public List<String> getMethodSignatures() {
+        return methodSignatures;
+    }
+
+    public int getMethodsCount() {
+        return methodsCount;
+    }
+
+    public int getFields() {
+        return fields;
+    }
+
+    public int getA() {
+        return a;
+    }
+
+    public int getB() {
+        return b;
+    }
+
+    public int getC() {
+        return c;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(className);
+        out.writeUTF(superName == null ? "" : superName);
+        out.writeInt(interfaces.size());
+        for (String face : interfaces)
+            out.writeUTF(face);
+        out.writeInt(methodSignatures.size());
+        for (String method : methodSignatures)
+            out.writeUTF(method);
+        out.writeInt(methodsCount);
+        out.writeInt(fields);
+        out.writeInt(a);
+        out.writeInt(b);
+        out.writeInt(c);
+    }
+
+    public static ClassSummary read(DataInput in) throws IOException {
+        String className = in.readUTF();
+        String superName = in.readUTF();
+
+        Set<String> interfaces = new HashSet<>();
+        for (int i = in.readInt(); i > 0; i--)
+            interfaces.add(in.readUTF());
+
+        List<String> methods = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--)
+            methods.add(in.readUTF());
+
+        return new ClassSummary(className, superName.isEmpty() ? null : superName, interfaces, methods,
+                in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+    }
+}
@@ -0,0 +1,144 @@
+package org.itmo.lab1.util;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Averages of the {@link ClassCohesion} metrics over the classes they are defined for,
+ * with the least cohesive classes by LCOM4. The metrics of every class can be written as JSON lines.
+ */
+public class CohesionMetrics {
+    private static final int LEAST_COHESIVE = 10;
+    private static final Comparator<ClassCohesion> BY_LCOM4 = Comparator.comparingInt(ClassCohesion::getLcom4)
+            .thenComparingInt(ClassCohesion::getMethods)
+            .thenComparing(ClassCohesion::getClassName, Comparator.reverseOrder());
+
+    private int classes;
+    private long lcom1, lcom2, lcom4;
+    private double lcom3, tcc;
+    private int splittableClasses;
+    private final PriorityQueue<ClassCohesion> leastCohesive = new PriorityQueue<>(BY_LCOM4);
+    private final Writer report;
+
+    public CohesionMetrics() {
+        this(null);
+    }
+
+    /**
+     * @param report receives a JSON line per class with defined metrics, may be {@literal null}
+     */
+    public CohesionMetrics(Writer report) {
+        this.report = report;
+    }
+
+    public void add(ClassCohesion cohesion) {
+        if (!cohesion.isDefined())
+            return;
+
+        cohesion.compute();
+        classes++;
+        lcom1 += cohesion.getLcom1();
+        lcom2 += cohesion.getLcom2();
+        lcom3 += cohesion.getLcom3();
+        lcom4 += cohesion.getLcom4();
+        tcc += cohesion.getTcc();
+        if (cohesion.getLcom4() > 1)
+            splittableClasses++;
+
+        leastCohesive.add(cohesion);
+        if (leastCohesive.size() > LEAST_COHESIVE)
+            leastCohesive.poll();
+        if (report != null)
+            writeLine(cohesion);
+    }
+
+    private void writeLine(ClassCohesion cohesion) {
+        StringBuilder line = new StringBuilder("{\"class\":");
+        OpcodeProfile.quote(cohesion.getClassName(), line);
+        line.append(",\"methods\":").append(cohesion.getMethods())
+                .append(",\"fields\":").append(cohesion.getFields())
+                .append(",\"LCOM1\":").append(cohesion.getLcom1())
+                .append(",\"LCOM2\":").append(cohesion.getLcom2())
+                .append(",\"LCOM3\":").append(cohesion.getLcom3())
+                .append(",\"LCOM4\":").append(cohesion.getLcom4())
+                .append(",\"TCC\":").append(cohesion.getTcc()).append("}\n");
+
+        try {
+            report.append(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return classes with at least two methods and a field
+     */
+    public int getClasses() {
+        return classes;
+    }
+
+    public double getAverageLcom1() {
+        return classes == 0 ? 0 : (double) lcom1 / classes;
+    }
+
+    public double getAverageLcom2() {
+        return classes == 0 ? 0 : (double) lcom2 / classes;
+    }
+
+    public double getAverageLcom3() {
+        return classes == 0 ? 0 : lcom3 / classes;
+    }
+
+    public double getAverageLcom4() {
+        return classes == 0 ? 0 : (double) lcom4 / classes;
+    }
+
+    public double getAverageTcc() {
+        return classes == 0 ? 0 : tcc / classes;
+    }
+
+    /**
+     * @return classes whose methods fall into several unrelated groups, LCOM4 > 1
+     */
+    public int getSplittableClasses() {
+        return splittableClasses;
+    }
+
+    /**
+     * @return classes with the highest LCOM4, highest first
+     */
+    public List<ClassCohesion> getLeastCohesive() {
+        List<ClassCohesion> result = new ArrayList<>(leastCohesive);
+        result.sort(BY_LCOM4.reversed());
+        return result;
+    }
+
+    public JSONObject toJson() {
+        JSONArray least = new JSONArray();
+        for (ClassCohesion cohesion : getLeastCohesive()) {
+            JSONObject json = new JSONObject();
+            json.put("class", cohesion.getClassName());
+            json.put("methods", cohesion.getMethods());
+            json.put("fields", cohesion.getFields());
+            json.put("LCOM4", cohesion.getLcom4());
+            json.put("TCC", cohesion.getTcc());
+            least.put(json);
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("classes", classes);
+        json.put("LCOM1", getAverageLcom1());
+        json.put("LCOM2", getAverageLcom2());
+        json.put("LCOM3", getAverageLcom3());
+        json.put("LCOM4", getAverageLcom4());
+        json.put("TCC", getAverageTcc());
+        json.put("splittableClasses", splittableClasses);
+        json.put("leastCohesive", least);
+        return json;
+    }
+}
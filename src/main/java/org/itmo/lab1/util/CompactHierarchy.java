@@ -0,0 +1,262 @@
+package org.itmo.lab1.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Class hierarchy for the bounded-memory mode. Classes are interned to int ids, supertypes are
+ * kept as id arrays and method signatures are spilled to disk with {@link MethodSpill}.
+ * Unlike {@link Node}, no ancestor sets are kept, and no {@link Graph} is built.
+ */
+public class CompactHierarchy implements Closeable {
+    private final Map<String, Integer> ids;
+    private final List<String> names;
+    private int[] superIds;
+    private int[][] interfaceIds;
+    private final BitSet defined;
+    private final BitSet external;
+    private final MethodSpill methods;
+    private final int rootId;
+
+    private int maxDepth = -1;
+    private double averageDepth = Double.NaN;
+
+    public CompactHierarchy(Node root) throws IOException {
+        ids = new HashMap<>();
+        names = new ArrayList<>();
+        superIds = new int[1024];
+        interfaceIds = new int[1024][];
+        defined = new BitSet();
+        external = new BitSet();
+        methods = new MethodSpill();
+
+        rootId = intern(root.getClassName());
+        addClass(root.getClassName(), null, Set.of(), root.getMethods(), false);
+    }
+
+    public void addClass(String className, String superName, Set<String> interfaces, List<String> methodSignatures,
+                         boolean isExternal) throws IOException {
+        int id = intern(className);
+        int superId = superName == null || superName.isEmpty() ? -1 : intern(superName);
+        int[] faces = new int[interfaces.size()];
+        int i = 0;
+        for (String face : interfaces)
+            faces[i++] = intern(face);
+
+        superIds[id] = superId;
+        interfaceIds[id] = faces;
+        defined.set(id);
+        external.set(id, isExternal);
+        methods.write(id, methodSignatures);
+    }
+
+    public boolean contains(String className) {
+        Integer id = ids.get(className);
+        return id != null && defined.get(id);
+    }
+
+    /**
+     * @return name of the superclass or {@literal null} if the class is not defined
+     */
+    public String getSuperclassName(String className) {
+        Integer id = ids.get(className);
+        if (id == null || !defined.get(id))
+            return null;
+        return superIds[id] == -1 ? "" : names.get(superIds[id]);
+    }
+
+    /**
+     * @return names of supertypes which have been referenced but not defined
+     */
+    public List<String> undefinedClasses() {
+        List<String> result = new ArrayList<>();
+        for (int id = 0; id < names.size(); id++)
+            if (!defined.get(id))
+                result.add(names.get(id));
+        return result;
+    }
+
+    /**
+     * Same depths as {@link Graph#depthFirstTraversal}: the longest path from java/lang/Object
+     * over superclass and interface edges.
+     *
+     * @param depthConsumer gets the depth of every class, may be {@literal null}
+     */
+    public void computeDepths(ObjIntConsumer<String> depthConsumer) {
+        int size = names.size();
+
+        //Children in CSR form: edges of node i are children[start[i]..start[i + 1])
+        int[] start = new int[size + 1];
+        for (int id = 0; id < size; id++) {
+            if (!defined.get(id) || id == rootId)
+                continue;
+            if (superIds[id] != -1)
+                start[superIds[id] + 1]++;
+            for (int face : interfaceIds[id])
+                start[face + 1]++;
+        }
+        for (int id = 0; id < size; id++)
+            start[id + 1] += start[id];
+
+        int[] children = new int[start[size]];
+        int[] fill = Arrays.copyOf(start, size);
+        for (int id = 0; id < size; id++) {
+            if (!defined.get(id) || id == rootId)
+                continue;
+            if (superIds[id] != -1)
+                children[fill[superIds[id]]++] = id;
+            for (int face : interfaceIds[id])
+                children[fill[face]++] = id;
+        }
+
+        //Parents of every node reachable from the root
+        BitSet visited = new BitSet(size);
+        int[] parents = new int[size];
+        int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = rootId;
+        visited.set(rootId);
+
+        while (head < tail) {
+            int node = queue[head++];
+            for (int i = start[node]; i < start[node + 1]; i++) {
+                parents[children[i]]++;
+                if (!visited.get(children[i])) {
+                    visited.set(children[i]);
+                    queue[tail++] = children[i];
+                }
+            }
+        }
+
+        //Nodes in topological order, a node is taken once all its parents are done
+        int[] depth = new int[size];
+        long depthSum = 0;
+        int depthCount = 0;
+        head = 0;
+        tail = 0;
+        queue[tail++] = rootId;
+        depth[rootId] = 1;
+
+        while (head < tail) {
+            int node = queue[head++];
+            if (node != rootId && !external.get(node)) {
+                maxDepth = Math.max(maxDepth, depth[node]);
+                depthSum += depth[node];
+                depthCount++;
+                if (depthConsumer != null)
+                    depthConsumer.accept(names.get(node), depth[node]);
+            }
+
+            for (int i = start[node]; i < start[node + 1]; i++) {
+                int child = children[i];
+                depth[child] = Math.max(depth[child], depth[node] + 1);
+                if (--parents[child] == 0)
+                    queue[tail++] = child;
+            }
+        }
+
+        averageDepth = depthCount == 0 ? Double.NaN : (double) depthSum / depthCount;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public double getAverageDepth() {
+        return averageDepth;
+    }
+
+    /**
+     * Count methods overriding a method of some superclass or interface, the same way
+     * as {@code JarMetrics.getOverridesForSuperclasses} and {@code getOverridesForInterfaces}.
+     * Classes are visited by id, their supertypes are looked up at random in the mapped spill
+     * by id and binary search, so the file is read back in no particular order.
+     *
+     * @param overridesConsumer gets the number of overriding methods of every class, may be {@literal null}
+     */
+    public int overridenMethods(ObjIntConsumer<String> overridesConsumer) throws IOException {
+        methods.finish();
+
+        int result = 0;
+        BitSet faces = new BitSet(names.size());
+        int[] faceStack = new int[16];
+
+        for (int id = 0; id < names.size(); id++) {
+            if (!defined.get(id) || external.get(id) || id == rootId)
+                continue;
+
+            //Transitive superclasses
+            int before = result;
+            int count = methods.count(id);
+            int depth = 0;
+            for (int parent = superIds[id]; parent != -1 && defined.get(parent) && depth < names.size();
+                 parent = superIds[parent], depth++) {
+                for (int i = 0; i < count; i++)
+                    if (methods.contains(parent, methods.hashAt(id, i)))
+                        result++;
+            }
+
+            //Transitive interfaces
+            faces.clear();
+            int top = 0;
+            for (int face : interfaceIds[id]) {
+                if (top == faceStack.length)
+                    faceStack = Arrays.copyOf(faceStack, top * 2);
+                faceStack[top++] = face;
+            }
+            while (top > 0) {
+                int face = faceStack[--top];
+                if (faces.get(face))
+                    continue;
+                faces.set(face);
+                if (!defined.get(face))
+                    continue;
+
+                for (int i = 0; i < count; i++)
+                    if (methods.contains(face, methods.hashAt(id, i)))
+                        result++;
+
+                for (int superFace : interfaceIds[face]) {
+                    if (top == faceStack.length)
+                        faceStack = Arrays.copyOf(faceStack, top * 2);
+                    faceStack[top++] = superFace;
+                }
+            }
+
+            if (overridesConsumer != null)
+                overridesConsumer.accept(names.get(id), result - before);
+        }
+
+        return result;
+    }
+
+    public HierarchyIndex toIndex() {
+        return new HierarchyIndex(new ArrayList<>(names), Arrays.copyOf(superIds, names.size()),
+                Arrays.copyOf(interfaceIds, names.size()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        methods.close();
+    }
+
+    private int intern(String className) {
+        Integer id = ids.get(className);
+        if (id != null)
+            return id;
+
+        id = names.size();
+        ids.put(className, id);
+        names.add(className);
+
+        if (id >= superIds.length) {
+            superIds = Arrays.copyOf(superIds, superIds.length * 2);
+            interfaceIds = Arrays.copyOf(interfaceIds, interfaceIds.length * 2);
+        }
+        superIds[id] = -1;
+        return id;
+    }
+}
@@ -0,0 +1,178 @@
+package org.itmo.lab1.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Classes already parsed, addressed by a 64-bit hash of their bytes. A copy of a class found again,
+ * e.g. in another jar or as a multi-release variant, reuses the stored metrics instead of being parsed.
+ * A hash only matches a class with the same name, length and CRC32C checksum, a second hash independent
+ * of the first one, so the first copy never has to be read again. Records are kept in flat arrays,
+ * about 64 bytes per unique class.
+ */
+public class ContentIndex {
+    private static final VarHandle LONGS =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+    private static final int FIELDS = 6;
+
+    //Open addressing table of hashes, slots hold record id + 1
+    private long[] keys = new long[1024];
+    private int[] slots = new int[1024];
+
+    private int size;
+    private int[] locations = new int[256];
+    private String[] names = new String[256];
+    private int[] lengths = new int[256];
+    private int[] checksums = new int[256];
+    private int[] values = new int[256 * FIELDS];
+    private boolean[] full = new boolean[256];
+
+    /**
+     * 64-bit hash of the bytes, eight bytes at a time with murmur3 mixing.
+     */
+    public static long hash(byte[] bytes) {
+        long h = bytes.length * C2;
+        int i = 0;
+        for (; i + 8 <= bytes.length; i += 8) {
+            long k = (long) LONGS.get(bytes, i) * C1;
+            h ^= Long.rotateLeft(k, 31) * C2;
+            h = Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+        }
+
+        long tail = 0;
+        for (int shift = 0; i < bytes.length; i++, shift += 8)
+            tail |= (bytes[i] & 0xffL) << shift;
+        h ^= Long.rotateLeft(tail * C1, 31) * C2;
+
+        //fmix64
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * CRC32C of the bytes, the JIT compiles it to the CPU instruction where there is one.
+     */
+    public static int checksum(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * @param checksum  {@link #checksum} of the class file
+     * @param className internal name of the class
+     * @param length    length of the class file
+     * @return id of the class with the given hash, checksum, name and length or -1 if it was not added
+     */
+    public int find(long hash, int checksum, String className, int length) {
+        int mask = keys.length - 1;
+        for (int slot = mix(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (keys[slot] == hash && checksums[id] == checksum && lengths[id] == length
+                    && names[id].equals(className))
+                return id;
+        }
+        return -1;
+    }
+
+    /**
+     * @param location caller's reference to the first copy, e.g. the index of its entry
+     * @param full     true if the class was parsed with method bodies
+     * @return id of the class
+     */
+    public int add(long hash, int checksum, String className, int length, int location, Metrics metrics,
+                   int methods, int skippedMethods, boolean full) {
+        if (size == locations.length) {
+            locations = Arrays.copyOf(locations, size * 2);
+            names = Arrays.copyOf(names, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+            checksums = Arrays.copyOf(checksums, size * 2);
+            values = Arrays.copyOf(values, size * 2 * FIELDS);
+            this.full = Arrays.copyOf(this.full, size * 2);
+        }
+        if (2 * (size + 1) > keys.length)
+            rehash();
+
+        int id = size++;
+        locations[id] = location;
+        names[id] = className;
+        lengths[id] = length;
+        checksums[id] = checksum;
+        update(id, metrics, methods, skippedMethods, full);
+
+        int mask = keys.length - 1;
+        int slot = mix(hash) & mask;
+        while (slots[slot] != 0)
+            slot = (slot + 1) & mask;
+        keys[slot] = hash;
+        slots[slot] = id + 1;
+
+        return id;
+    }
+
+    /**
+     * Replace the metrics of the class, e.g. once a class read without method bodies is parsed fully.
+     */
+    public void update(int id, Metrics metrics, int methods, int skippedMethods, boolean full) {
+        int base = id * FIELDS;
+        values[base] = metrics.getA();
+        values[base + 1] = metrics.getB();
+        values[base + 2] = metrics.getC();
+        values[base + 3] = metrics.getFieldCount();
+        values[base + 4] = methods;
+        values[base + 5] = skippedMethods;
+        this.full[id] = full;
+    }
+
+    public int getLocation(int id) {
+        return locations[id];
+    }
+
+    public Metrics getMetrics(int id) {
+        int base = id * FIELDS;
+        return new Metrics(values[base], values[base + 1], values[base + 2], values[base + 3]);
+    }
+
+    public int getMethods(int id) {
+        return values[id * FIELDS + 4];
+    }
+
+    public int getSkippedMethods(int id) {
+        return values[id * FIELDS + 5];
+    }
+
+    public boolean isFull(int id) {
+        return full[id];
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldSlots = slots;
+        keys = new long[oldKeys.length * 2];
+        slots = new int[oldKeys.length * 2];
+
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldSlots[i] == 0)
+                continue;
+            int slot = mix(oldKeys[i]) & mask;
+            while (slots[slot] != 0)
+                slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            slots[slot] = oldSlots[i];
+        }
+    }
+
+    private static int mix(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,54 @@
+package org.itmo.lab1.util;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.*;
+
+/**
+ * Classes found more than once with identical bytes, with the locations of all copies.
+ */
+public class DuplicateClasses {
+    private final Map<String, List<String>> copies = new TreeMap<>();
+    private int duplicates;
+
+    /**
+     * @param className     internal name of the class
+     * @param firstLocation location of the copy that was parsed
+     * @param location      location of the duplicate
+     */
+    public void add(String className, String firstLocation, String location) {
+        List<String> locations = copies.computeIfAbsent(className, key -> new ArrayList<>(List.of(firstLocation)));
+        locations.add(location);
+        duplicates++;
+    }
+
+    /**
+     * @return number of copies beyond the first one
+     */
+    public int getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return locations of all copies by class name
+     */
+    public Map<String, List<String>> getCopies() {
+        return Collections.unmodifiableMap(copies);
+    }
+
+    public JSONObject toJson() {
+        JSONObject classes = new JSONObject();
+        for (Map.Entry<String, List<String>> entry : copies.entrySet()) {
+            JSONArray locations = new JSONArray();
+            for (String location : entry.getValue())
+                locations.put(location);
+            classes.put(entry.getKey(), locations);
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("duplicates", duplicates);
+        json.put("classes", classes);
+        return json;
+    }
+}
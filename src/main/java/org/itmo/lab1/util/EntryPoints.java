@@ -0,0 +1,65 @@
+package org.itmo.lab1.util;
+
+import java.util.*;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Methods the {@link CallGraph} starts reachability from: {@code main} methods, the public API,
+ * i.e. public and protected methods of public classes, and methods annotated with one of
+ * the handler annotations. An annotated class makes all its non-private methods entry points.
+ */
+public class EntryPoints {
+    private boolean mains = true;
+    private boolean publicApi;
+    private final Set<String> annotations = new HashSet<>();
+
+    /**
+     * Parse a comma-separated list of {@code main}, {@code public} and annotation class names,
+     * e.g. {@code main,org.springframework.web.bind.annotation.RequestMapping}.
+     */
+    public static EntryPoints parse(String spec) {
+        EntryPoints entryPoints = new EntryPoints();
+        entryPoints.setMains(false);
+        for (String part : spec.split(",")) {
+            part = part.trim();
+            if (part.equals("main"))
+                entryPoints.setMains(true);
+            else if (part.equals("public"))
+                entryPoints.setPublicApi(true);
+            else if (!part.isEmpty())
+                entryPoints.addAnnotation(part);
+        }
+        return entryPoints;
+    }
+
+    public void setMains(boolean mains) {
+        this.mains = mains;
+    }
+
+    public void setPublicApi(boolean publicApi) {
+        this.publicApi = publicApi;
+    }
+
+    /**
+     * @param className binary or internal name of the annotation, e.g. javax.ws.rs.GET
+     */
+    public void addAnnotation(String className) {
+        annotations.add("L" + className.replace('.', '/') + ";");
+    }
+
+    public boolean isEntryPoint(int classAccess, int access, String name, String descriptor) {
+        if (mains && (access & (ACC_PUBLIC | ACC_STATIC)) == (ACC_PUBLIC | ACC_STATIC) && name.equals("main")
+                && descriptor.equals("([Ljava/lang/String;)V"))
+            return true;
+
+        return publicApi && (classAccess & ACC_PUBLIC) != 0 && (access & (ACC_PUBLIC | ACC_PROTECTED)) != 0;
+    }
+
+    /**
+     * @param descriptor descriptor of an annotation of a class or method
+     */
+    public boolean isHandlerAnnotation(String descriptor) {
+        return annotations.contains(descriptor);
+    }
+}
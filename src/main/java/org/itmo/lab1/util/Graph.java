@@ -1,6 +1,7 @@
 package org.itmo.lab1.util;
 
 import java.util.*;
+import java.util.function.ObjIntConsumer;
 
 public class Graph {
     private Map<Node, List<Node>> adjacencyList;
@@ -33,22 +34,65 @@ public class Graph {
         return depths.entrySet().stream().mapToInt(entry -> entry.getValue()).average().orElse(Double.NaN);
     }
 
+    /**
+     * Compute the depth of every node reachable from the root. A class implementing interfaces
+     * is reachable over several paths, its depth is the longest of them. Unlike the depth of the
+     * first visit, it does not depend on the order of the adjacency lists.
+     *
+     * @param root  root of the hierarchy
+     * @param count depth of the root
+     * @return maximum depth
+     */
     public int depthFirstTraversal(Node root, int count) {
+        return depthFirstTraversal(root, count, null);
+    }
+
+    /**
+     * Same as {@link #depthFirstTraversal(Node, int)}, the depth of every class is also passed to the consumer.
+     */
+    public int depthFirstTraversal(Node root, int count, ObjIntConsumer<String> depthConsumer) {
+        Map<Node, Integer> parents = new HashMap<>();
+        Deque<Node> stack = new ArrayDeque<>();
         visited.add(root);
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            for (Node node : adjacencyList.get(stack.pop())) {
+                parents.merge(node, 1, Integer::sum);
+                if (visited.add(node))
+                    stack.push(node);
+            }
+        }
 
-        for (Node node : adjacencyList.get(root)) {
-            if (!visited.contains(node)) {
-                int dfs = depthFirstTraversal(node, ++count);
-                if (maxDepth < dfs) {
-                    maxDepth = dfs;
-                }
+        //Nodes in topological order, a node is taken once all its parents are done
+        Map<Node, Integer> nodeDepths = new HashMap<>();
+        Deque<Node> ready = new ArrayDeque<>();
+        nodeDepths.put(root, count);
+        ready.add(root);
 
-                depths.put(node.getClassName(), count);
-                count--;
+        while (!ready.isEmpty()) {
+            Node parent = ready.poll();
+            int depth = nodeDepths.get(parent) + 1;
+
+            for (Node node : adjacencyList.get(parent)) {
+                nodeDepths.merge(node, depth, Math::max);
+                if (parents.merge(node, -1, Integer::sum) == 0)
+                    ready.add(node);
             }
         }
 
-        return count;
+        for (Map.Entry<Node, Integer> entry : nodeDepths.entrySet()) {
+            Node node = entry.getKey();
+            if (node == root || node.isExternal())
+                continue;
+
+            maxDepth = Math.max(maxDepth, entry.getValue());
+            depths.put(node.getClassName(), entry.getValue());
+            if (depthConsumer != null)
+                depthConsumer.accept(node.getClassName(), entry.getValue());
+        }
+
+        return maxDepth;
     }
 
     public Set<Node> getVisited() {
@@ -0,0 +1,268 @@
+package org.itmo.lab1.util;
+
+import java.util.*;
+
+/**
+ * Queryable index of the class hierarchy.
+ * The superclass tree is labeled with pre/post-order intervals, so X is a subclass of Y iff
+ * pre(Y) <= pre(X) and post(X) <= post(Y). Interfaces are handled with a bitset per type over
+ * all interfaces it implements, types that add no interface share the bitset of their superclass.
+ * Subtype checks are constant-time, subtype enumeration costs time proportional to the output.
+ */
+public class HierarchyIndex {
+    private static final long[] EMPTY = new long[0];
+
+    private final Map<String, Integer> ids;
+    private final List<String> names;
+    private final int[] pre;
+    private final int[] post;
+    private final int[] subtreeSize;
+    private final int[] order;
+    private final int[] interfaceIndex;
+    private final long[][] implemented;
+    private final int[][] declaredBy;
+
+    /**
+     * @param names        class names, the position of a name is its id
+     * @param superIds     id of the superclass of every class or -1
+     * @param interfaceIds ids of the direct interfaces of every class, may be {@literal null}
+     */
+    HierarchyIndex(List<String> names, int[] superIds, int[][] interfaceIds) {
+        int size = names.size();
+        this.names = names;
+        this.ids = new HashMap<>();
+        for (int id = 0; id < size; id++)
+            ids.put(names.get(id), id);
+
+        //Superclass tree in CSR form
+        int[] start = new int[size + 1];
+        for (int id = 0; id < size; id++)
+            if (superIds[id] != -1)
+                start[superIds[id] + 1]++;
+        for (int id = 0; id < size; id++)
+            start[id + 1] += start[id];
+        int[] children = new int[start[size]];
+        int[] fill = Arrays.copyOf(start, size);
+        for (int id = 0; id < size; id++)
+            if (superIds[id] != -1)
+                children[fill[superIds[id]]++] = id;
+
+        //Pre/post-order labels, iteratively from every root of the forest
+        pre = new int[size];
+        post = new int[size];
+        subtreeSize = new int[size];
+        order = new int[size];
+        Arrays.fill(pre, -1);
+        int[] stack = new int[size];
+        int[] next = new int[size];
+        int preCounter = 0;
+        int postCounter = 0;
+
+        //Roots are classes without a known superclass, the second pass picks up cycles of broken jars
+        for (int i = 0; i < 2 * size; i++) {
+            int root = i % size;
+            if (pre[root] != -1 || i < size && superIds[root] != -1)
+                continue;
+
+            int top = 0;
+            stack[0] = root;
+            next[0] = start[root];
+            order[preCounter] = root;
+            pre[root] = preCounter++;
+
+            while (top >= 0) {
+                int node = stack[top];
+                if (next[top] < start[node + 1]) {
+                    int child = children[next[top]++];
+                    if (pre[child] != -1)
+                        continue;
+
+                    order[preCounter] = child;
+                    pre[child] = preCounter++;
+                    stack[++top] = child;
+                    next[top] = start[child];
+                } else {
+                    post[node] = postCounter++;
+                    subtreeSize[node] = preCounter - pre[node];
+                    top--;
+                }
+            }
+        }
+
+        //Interfaces are the types that appear in some interface list
+        interfaceIndex = new int[size];
+        Arrays.fill(interfaceIndex, -1);
+        int interfaces = 0;
+        for (int id = 0; id < size; id++)
+            if (interfaceIds[id] != null)
+                for (int face : interfaceIds[id])
+                    if (interfaceIndex[face] == -1)
+                        interfaceIndex[face] = interfaces++;
+
+        //Implemented interfaces in pre-order, so the superclass is always done first
+        implemented = new long[size][];
+        int[] declared = new int[interfaces];
+        List<int[]> declarations = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            int id = order[i];
+            long[] inherited = superIds[id] == -1 || implemented[superIds[id]] == null ? EMPTY : implemented[superIds[id]];
+            long[] own = implementedBy(id, superIds, interfaceIds, interfaces, new BitSet());
+            implemented[id] = own == null ? inherited : or(own, inherited);
+
+            if (own != null) {
+                for (int bit = nextSetBit(own, 0); bit != -1; bit = nextSetBit(own, bit + 1)) {
+                    if (!testBit(inherited, bit)) {
+                        declared[bit]++;
+                        declarations.add(new int[]{bit, id});
+                    }
+                }
+            }
+        }
+
+        //Types which declare the interface themselves, sorted by pre-order
+        declaredBy = new int[interfaces][];
+        for (int face = 0; face < interfaces; face++)
+            declaredBy[face] = new int[declared[face]];
+        Arrays.fill(declared, 0);
+        for (int[] declaration : declarations)
+            declaredBy[declaration[0]][declared[declaration[0]]++] = declaration[1];
+    }
+
+    /**
+     * @return true if sub is sup itself, a subclass of it, or implements it
+     */
+    public boolean isSubtype(String sub, String sup) {
+        Integer x = ids.get(sub);
+        Integer y = ids.get(sup);
+        if (x == null || y == null)
+            return false;
+
+        if (pre[y] <= pre[x] && post[x] <= post[y])
+            return true;
+
+        return interfaceIndex[y] != -1 && testBit(implemented[x], interfaceIndex[y]);
+    }
+
+    /**
+     * All subclasses and implementations of the type, transitively, without the type itself.
+     */
+    public List<String> subtypes(String type) {
+        Integer y = ids.get(type);
+        if (y == null)
+            return List.of();
+
+        List<String> result = new ArrayList<>();
+        for (int i = pre[y] + 1; i < pre[y] + subtreeSize[y]; i++)
+            result.add(names.get(order[i]));
+
+        if (interfaceIndex[y] != -1) {
+            //Subtrees of declaring types, nested subtrees are skipped
+            int end = -1;
+            for (int id : declaredBy[interfaceIndex[y]]) {
+                if (pre[id] < end)
+                    continue;
+                end = pre[id] + subtreeSize[id];
+                for (int i = pre[id]; i < end; i++)
+                    result.add(names.get(order[i]));
+            }
+        }
+
+        return result;
+    }
+
+    public boolean contains(String type) {
+        return ids.containsKey(type);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Interfaces of the type itself and their super-interfaces, {@literal null} if the type declares none.
+     */
+    private long[] implementedBy(int id, int[] superIds, int[][] interfaceIds, int interfaces, BitSet seen) {
+        if (interfaceIds[id] == null || interfaceIds[id].length == 0)
+            return null;
+
+        long[] bits = new long[(interfaces + 63) >>> 6];
+        Deque<Integer> stack = new ArrayDeque<>();
+        for (int face : interfaceIds[id])
+            stack.push(face);
+
+        while (!stack.isEmpty()) {
+            int face = stack.pop();
+            if (seen.get(face))
+                continue;
+            seen.set(face);
+
+            int bit = interfaceIndex[face];
+            bits[bit >>> 6] |= 1L << bit;
+            if (interfaceIds[face] != null)
+                for (int superFace : interfaceIds[face])
+                    stack.push(superFace);
+        }
+
+        return bits;
+    }
+
+    private static long[] or(long[] a, long[] b) {
+        long[] result = Arrays.copyOf(a, Math.max(a.length, b.length));
+        for (int i = 0; i < b.length; i++)
+            result[i] |= b[i];
+        return result;
+    }
+
+    private static boolean testBit(long[] bits, int bit) {
+        int word = bit >>> 6;
+        return word < bits.length && (bits[word] & (1L << bit)) != 0;
+    }
+
+    private static int nextSetBit(long[] bits, int from) {
+        int word = from >>> 6;
+        if (word >= bits.length)
+            return -1;
+
+        long current = bits[word] & (-1L << from);
+        while (true) {
+            if (current != 0)
+                return (word << 6) + Long.numberOfTrailingZeros(current);
+            if (++word == bits.length)
+                return -1;
+            current = bits[word];
+        }
+    }
+
+    /**
+     * Build the index from the class map of {@code JarMetrics}.
+     */
+    public static HierarchyIndex of(Map<String, Node> classMap) {
+        List<String> names = new ArrayList<>();
+        Map<String, Integer> ids = new HashMap<>();
+        for (String name : classMap.keySet()) {
+            ids.put(name, names.size());
+            names.add(name);
+        }
+        //Referenced but missing supertypes become roots of their own
+        for (Node node : classMap.values()) {
+            String superName = node.getSuperclassName();
+            if (superName != null && !superName.isEmpty() && ids.putIfAbsent(superName, names.size()) == null)
+                names.add(superName);
+            for (String face : node.getInterfaces())
+                if (ids.putIfAbsent(face, names.size()) == null)
+                    names.add(face);
+        }
+
+        int[] superIds = new int[names.size()];
+        int[][] interfaceIds = new int[names.size()][];
+        Arrays.fill(superIds, -1);
+        for (Node node : classMap.values()) {
+            int id = ids.get(node.getClassName());
+            Integer superId = ids.get(node.getSuperclassName());
+            superIds[id] = superId == null ? -1 : superId;
+            interfaceIds[id] = node.getInterfaces().stream().mapToInt(ids::get).toArray();
+        }
+
+        return new HierarchyIndex(names, superIds, interfaceIds);
+    }
+}
@@ -0,0 +1,245 @@
+package org.itmo.lab1.util;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Resolves classes that are referenced from the jar but live in the running JDK
+ * (e.g. java/util/AbstractList) by reading them from the jrt:/ filesystem.
+ * Only the class header and method signatures are read, and only on demand.
+ * Results are kept in a process-wide cache which can optionally be persisted
+ * per JDK version by setting the {@code jarmetrics.jdk.cache.dir} system property.
+ */
+public class JdkClassResolver {
+    private static final JdkClassResolver INSTANCE = new JdkClassResolver();
+    private static final Header MISSING = new Header("", "", new String[0], List.of());
+    //"JMJC" and the version of the cache format, another file is ignored
+    private static final int CACHE_MAGIC = 0x4A4D4A43;
+    private static final int CACHE_VERSION = 2;
+    //Class file limits of the interface and method counts
+    private static final int MAX_MEMBERS = 0xFFFF;
+
+    private final Map<String, Header> headers;
+    private final Map<String, List<String>> packageModules;
+    private final Path cacheFile;
+    private FileSystem jrt;
+    private boolean loaded;
+    private volatile boolean dirty;
+
+    private JdkClassResolver() {
+        headers = new ConcurrentHashMap<>();
+        packageModules = new ConcurrentHashMap<>();
+
+        String cacheDir = System.getProperty("jarmetrics.jdk.cache.dir");
+        cacheFile = cacheDir == null ? null
+                : Path.of(cacheDir, "jdk-" + Runtime.version().toString().replaceAll("[^A-Za-z0-9._-]", "_") + ".cache");
+    }
+
+    public static JdkClassResolver getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Create a new node for the JDK class. Nodes are created per call since the analysis
+     * mutates them, the cached header itself is shared.
+     *
+     * @param className internal name of the class, e.g. java/util/AbstractList
+     * @return node marked as external or {@literal null} if the class is not part of the JDK
+     */
+    public Node resolve(String className) {
+        if (className == null || className.isEmpty())
+            return null;
+
+        loadCache();
+        Header header = headers.computeIfAbsent(className, this::readHeader);
+        if (header == MISSING)
+            return null;
+
+        Node node = new Node(header.name, header.superName, new HashSet<>(Arrays.asList(header.interfaces)), header.methods);
+        node.setExternal(true);
+        return node;
+    }
+
+    /**
+     * Write the cache to disk if persistence is enabled and something new was resolved.
+     */
+    public synchronized void persist() {
+        if (cacheFile == null || !dirty)
+            return;
+
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Path tmp = Files.createTempFile(cacheFile.getParent(), "jdk", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                //Misses are not persisted, they are mostly classes of the analyzed jars
+                List<Header> found = headers.values().stream().filter(header -> header != MISSING).toList();
+                out.writeInt(CACHE_MAGIC);
+                out.writeInt(CACHE_VERSION);
+                out.writeInt(found.size());
+                for (Header header : found) {
+                    out.writeUTF(header.name);
+
+                    out.writeUTF(header.superName);
+                    out.writeInt(header.interfaces.length);
+                    for (String face : header.interfaces)
+                        out.writeUTF(face);
+                    out.writeInt(header.methods.size());
+                    for (String method : header.methods)
+                        out.writeUTF(method);
+                }
+            }
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized void loadCache() {
+        if (loaded)
+            return;
+        loaded = true;
+
+        if (cacheFile == null || !Files.exists(cacheFile))
+            return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION)
+                return;
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                String superName = in.readUTF();
+                String[] interfaces = new String[readCount(in)];
+                for (int j = 0; j < interfaces.length; j++)
+                    interfaces[j] = in.readUTF();
+                String[] methods = new String[readCount(in)];
+                for (int j = 0; j < methods.length; j++)
+                    methods[j] = in.readUTF();
+
+                headers.put(name, new Header(name, superName, interfaces, List.of(methods)));
+            }
+        } catch (IOException | RuntimeException e) {
+            //Corrupted or foreign cache, classes are simply read again
+            headers.clear();
+        }
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > MAX_MEMBERS)
+            throw new IOException("Bad count in the JDK cache: " + count);
+        return count;
+    }
+
+    private Header readHeader(String className) {
+        byte[] bytes = readClassFile(className);
+        if (bytes == null)
+            return MISSING;
+
+        HeaderVisitor visitor = new HeaderVisitor();
+        new ClassReader(bytes).accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        dirty = true;
+
+        return new Header(visitor.name, visitor.superName == null ? "" : visitor.superName,
+                visitor.interfaces, List.copyOf(visitor.methods));
+    }
+
+    private byte[] readClassFile(String className) {
+        FileSystem fs = jrt();
+        if (fs == null)
+            return null;
+
+        int slash = className.lastIndexOf('/');
+        String packageName = slash == -1 ? "" : className.substring(0, slash).replace('/', '.');
+
+        for (String module : packageModules.computeIfAbsent(packageName, this::modulesOf)) {
+            Path path = fs.getPath("/modules", module, className + ".class");
+            try {
+                if (Files.exists(path))
+                    return Files.readAllBytes(path);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    private List<String> modulesOf(String packageName) {
+        if (packageName.isEmpty())
+            return List.of();
+
+        Path packageDir = jrt().getPath("/packages", packageName);
+        if (!Files.isDirectory(packageDir))
+            return List.of();
+
+        try (Stream<Path> modules = Files.list(packageDir)) {
+            return modules.map(path -> path.getFileName().toString()).toList();
+        } catch (IOException e) {
+            return List.of();
+        }
+    }
+
+    private synchronized FileSystem jrt() {
+        if (jrt == null) {
+            try {
+                jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+            } catch (RuntimeException e) {
+                //Not a modular runtime, nothing can be resolved
+                return null;
+            }
+        }
+        return jrt;
+    }
+
+    private static class Header {
+        private final String name;
+        private final String superName;
+        private final String[] interfaces;
+        private final List<String> methods;
+
+        private Header(String name, String superName, String[] interfaces, List<String> methods) {
+            this.name = name;
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.methods = methods;
+        }
+    }
+
+    private static class HeaderVisitor extends ClassVisitor {
+        private String name;
+        private String superName;
+        private String[] interfaces;
+        private final List<String> methods = new ArrayList<>();
+
+        private HeaderVisitor() {
+            super(ASM8);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            this.name = name;
+            this.superName = superName;
+            this.interfaces = interfaces == null ? new String[0] : interfaces;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            if (!name.equals("<init>"))
+                methods.add(name + desc.substring(desc.indexOf('('), desc.indexOf(')') + 1));
+            return null;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package org.itmo.lab1.util;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Method sizes against the HotSpot JIT limits: a method over MaxInlineSize is only inlined when it is hot,
+ * one over FreqInlineSize is never inlined, and one over HugeMethodLimit is not compiled at all
+ * with the default -XX:+DontCompileHugeMethods. Sizes come from the Code attribute, so the report
+ * runs as a {@link MetricCollector} in the same pass. Totals are kept per package, every method
+ * and a summary of every class can be written to a report as JSON lines.
+ */
+public class JitReport implements MetricCollector<JitReport> {
+    private static final int LARGEST = 10;
+    private static final Comparator<Method> BY_SIZE = Comparator.comparingInt(Method::getSize)
+            .thenComparing(Method::getClassName, Comparator.reverseOrder())
+            .thenComparing(Method::getSignature, Comparator.reverseOrder());
+
+    /**
+     * JIT limits in bytes of bytecode, HotSpot defaults are 35, 325 and 8000.
+     */
+    public static final class Limits {
+        public static final Limits HOTSPOT = new Limits(35, 325, 8000);
+
+        private final int maxInlineSize;
+        private final int freqInlineSize;
+        private final int hugeMethodLimit;
+
+        public Limits(int maxInlineSize, int freqInlineSize, int hugeMethodLimit) {
+            if (maxInlineSize < 0 || freqInlineSize < maxInlineSize || hugeMethodLimit < freqInlineSize)
+                throw new IllegalArgumentException("JIT limits must grow: " + maxInlineSize + ", " + freqInlineSize
+                        + ", " + hugeMethodLimit);
+
+            this.maxInlineSize = maxInlineSize;
+            this.freqInlineSize = freqInlineSize;
+            this.hugeMethodLimit = hugeMethodLimit;
+        }
+
+        /**
+         * @param limits MaxInlineSize,FreqInlineSize,HugeMethodLimit
+         */
+        public static Limits parse(String limits) {
+            String[] parts = limits.split(",");
+            if (parts.length != 3)
+                throw new IllegalArgumentException("Expected MaxInlineSize,FreqInlineSize,HugeMethodLimit: " + limits);
+
+            return new Limits(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+                    Integer.parseInt(parts[2].trim()));
+        }
+
+        public int getMaxInlineSize() {
+            return maxInlineSize;
+        }
+
+        public int getFreqInlineSize() {
+            return freqInlineSize;
+        }
+
+        public int getHugeMethodLimit() {
+            return hugeMethodLimit;
+        }
+
+        /**
+         * @return name of the highest limit the size exceeds or {@literal null}
+         */
+        public String exceeded(int size) {
+            if (size > hugeMethodLimit)
+                return "HugeMethodLimit";
+            if (size > freqInlineSize)
+                return "FreqInlineSize";
+            if (size > maxInlineSize)
+                return "MaxInlineSize";
+            return null;
+        }
+    }
+
+    /**
+     * Methods of a class, a package or the whole scan against the limits.
+     */
+    public static class Totals {
+        private int methods;
+        private long bytes;
+        private int overMaxInlineSize;
+        private int overFreqInlineSize;
+        private int huge;
+        private int maxStack;
+        private int maxLocals;
+
+        private void add(Limits limits, int size, int stack, int locals) {
+            methods++;
+            bytes += size;
+            if (size > limits.maxInlineSize)
+                overMaxInlineSize++;
+            if (size > limits.freqInlineSize)
+                overFreqInlineSize++;
+            if (size > limits.hugeMethodLimit)
+                huge++;
+            maxStack = Math.max(maxStack, stack);
+            maxLocals = Math.max(maxLocals, locals);
+        }
+
+        private void add(Totals other) {
+            methods += other.methods;
+            bytes += other.bytes;
+            overMaxInlineSize += other.overMaxInlineSize;
+            overFreqInlineSize += other.overFreqInlineSize;
+            huge += other.huge;
+            maxStack = Math.max(maxStack, other.maxStack);
+            maxLocals = Math.max(maxLocals, other.maxLocals);
+        }
+
+        private void clear() {
+            methods = overMaxInlineSize = overFreqInlineSize = huge = maxStack = maxLocals = 0;
+            bytes = 0;
+        }
+
+        /**
+         * @return methods with code
+         */
+        public int getMethods() {
+            return methods;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public int getOverMaxInlineSize() {
+            return overMaxInlineSize;
+        }
+
+        public int getOverFreqInlineSize() {
+            return overFreqInlineSize;
+        }
+
+        /**
+         * @return methods over HugeMethodLimit
+         */
+        public int getHuge() {
+            return huge;
+        }
+
+        public int getMaxStack() {
+            return maxStack;
+        }
+
+        public int getMaxLocals() {
+            return maxLocals;
+        }
+
+        public JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("methods", methods);
+            json.put("bytes", bytes);
+            json.put("overMaxInlineSize", overMaxInlineSize);
+            json.put("overFreqInlineSize", overFreqInlineSize);
+            json.put("huge", huge);
+            json.put("maxStack", maxStack);
+            json.put("maxLocals", maxLocals);
+            return json;
+        }
+    }
+
+    public static class Method {
+        private final String className;
+        private final String signature;
+        private final int size;
+        private final int maxStack;
+        private final int maxLocals;
+
+        private Method(String className, String signature, int size, int maxStack, int maxLocals) {
+            this.className = className;
+            this.signature = signature;
+            this.size = size;
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * @return name and arguments
+         */
+        public String getSignature() {
+            return signature;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getMaxStack() {
+            return maxStack;
+        }
+
+        public int getMaxLocals() {
+            return maxLocals;
+        }
+    }
+
+    private final Limits limits;
+    private final Writer report;
+    private final Totals total = new Totals();
+    private final Map<String, Totals> packages = new TreeMap<>();
+    private final PriorityQueue<Method> largest = new PriorityQueue<>(BY_SIZE);
+
+    //Current class, added to the totals and written to the report at its end so that an abandoned class can be dropped
+    private String className;
+    private String methodName;
+    private String methodDescriptor;
+    private final Totals classTotals = new Totals();
+    private final List<Method> classLargest = new ArrayList<>();
+    private final StringBuilder classLines = new StringBuilder();
+
+    public JitReport() {
+        this(Limits.HOTSPOT, null);
+    }
+
+    /**
+     * @param report receives a JSON line per method and per class, may be {@literal null}
+     */
+    public JitReport(Limits limits, Writer report) {
+        this.limits = limits;
+        this.report = report;
+    }
+
+    @Override
+    public String name() {
+        return "jit";
+    }
+
+    @Override
+    public int events() {
+        return CLASSES | METHODS | CODE_SIZES;
+    }
+
+    @Override
+    public void visitClass(int access, String className, String superName, String[] interfaces) {
+        this.className = className;
+    }
+
+    @Override
+    public void visitMethod(int access, String name, String descriptor) {
+        methodName = name;
+        methodDescriptor = descriptor;
+    }
+
+    @Override
+    public void visitCodeSize(int length, int maxStack, int maxLocals) {
+        classTotals.add(limits, length, maxStack, maxLocals);
+        String signature = null;
+        if (largest.size() < LARGEST || length > largest.peek().size) {
+            signature = signature();
+            classLargest.add(new Method(className, signature, length, maxStack, maxLocals));
+        }
+
+        if (report != null) {
+            StringBuilder line = new StringBuilder("{\"class\":");
+            OpcodeProfile.quote(className, line);
+            line.append(",\"method\":");
+            OpcodeProfile.quote(signature != null ? signature : signature(), line);
+            line.append(",\"size\":").append(length)
+                    .append(",\"maxStack\":").append(maxStack)
+                    .append(",\"maxLocals\":").append(maxLocals);
+            String exceeded = limits.exceeded(length);
+            if (exceeded != null)
+                line.append(",\"exceeds\":\"").append(exceeded).append('"');
+            classLines.append(line).append("}\n");
+        }
+    }
+
+    private String signature() {
+        return methodName + methodDescriptor.substring(0, methodDescriptor.indexOf(')') + 1);
+    }
+
+    @Override
+    public void visitClassEnd() {
+        if (report != null && classTotals.methods > 0) {
+            StringBuilder line = classLines.append("{\"class\":");
+            OpcodeProfile.quote(className, line);
+            line.append(",\"methods\":").append(classTotals.methods)
+                    .append(",\"bytes\":").append(classTotals.bytes)
+                    .append(",\"overMaxInlineSize\":").append(classTotals.overMaxInlineSize)
+                    .append(",\"overFreqInlineSize\":").append(classTotals.overFreqInlineSize)
+                    .append(",\"huge\":").append(classTotals.huge);
+            write(line.append("}\n"));
+        }
+
+        if (classTotals.methods > 0) {
+            total.add(classTotals);
+            int slash = className.lastIndexOf('/');
+            packages.computeIfAbsent(slash == -1 ? "" : className.substring(0, slash), name -> new Totals())
+                    .add(classTotals);
+        }
+        for (Method method : classLargest)
+            offer(method);
+        discardClass();
+    }
+
+    @Override
+    public void discardClass() {
+        classTotals.clear();
+        classLargest.clear();
+        classLines.setLength(0);
+    }
+
+    private void offer(Method method) {
+        largest.add(method);
+        if (largest.size() > LARGEST)
+            largest.poll();
+    }
+
+    private void write(CharSequence line) {
+        try {
+            report.append(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Limits getLimits() {
+        return limits;
+    }
+
+    public Totals getTotals() {
+        return total;
+    }
+
+    /**
+     * @return totals of every package by internal name, without subpackages
+     */
+    public Map<String, Totals> getPackages() {
+        return Collections.unmodifiableMap(packages);
+    }
+
+    /**
+     * @return longest methods, longest first
+     */
+    public List<Method> getLargest() {
+        List<Method> result = new ArrayList<>(largest);
+        result.sort(BY_SIZE.reversed());
+        return result;
+    }
+
+    @Override
+    public void merge(JitReport other) {
+        total.add(other.total);
+        for (Map.Entry<String, Totals> entry : other.packages.entrySet())
+            packages.computeIfAbsent(entry.getKey(), name -> new Totals()).add(entry.getValue());
+        for (Method method : other.largest)
+            offer(method);
+    }
+
+    @Override
+    public JSONObject toJson() {
+        JSONObject thresholds = new JSONObject();
+        thresholds.put("MaxInlineSize", limits.maxInlineSize);
+        thresholds.put("FreqInlineSize", limits.freqInlineSize);
+        thresholds.put("HugeMethodLimit", limits.hugeMethodLimit);
+
+        JSONArray longest = new JSONArray();
+        for (Method method : getLargest()) {
+            JSONObject json = new JSONObject();
+            json.put("class", method.className);
+            json.put("method", method.signature);
+            json.put("size", method.size);
+            json.put("maxStack", method.maxStack);
+            json.put("maxLocals", method.maxLocals);
+            longest.put(json);
+        }
+
+        JSONObject byPackage = new JSONObject();
+        for (Map.Entry<String, Totals> entry : packages.entrySet())
+            byPackage.put(entry.getKey(), entry.getValue().toJson());
+
+        JSONObject json = total.toJson();
+        json.put("limits", thresholds);
+        json.put("largest", longest);
+        json.put("packages", byPackage);
+        return json;
+    }
+}
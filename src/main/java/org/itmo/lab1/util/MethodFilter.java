@@ -0,0 +1,86 @@
+package org.itmo.lab1.util;
+
+import java.util.regex.Pattern;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Methods left out of the metrics. The filter is checked before the body of a method is visited,
+ * so skipped methods are neither counted nor decoded.
+ */
+public class MethodFilter {
+    /**
+     * Kotlin default-argument stubs, lambda bodies of javac ({@code lambda$run$0}) and kotlinc
+     * ({@code run$lambda$0}, {@code run$lambda-0}) and synthetic accessors.
+     */
+    public static final String GENERATED_METHODS = ".*\\$default|.*\\$lambda[$-].*|lambda\\$.*|access\\$.*";
+    /**
+     * Kotlin interface stubs for default methods.
+     */
+    public static final String GENERATED_CLASSES = ".*\\$DefaultImpls";
+
+    private int skippedAccess;
+    private Pattern methodPattern;
+    private Pattern classPattern;
+
+    /**
+     * Create a filter from the {@code jarmetrics.filter.*} system properties:
+     * synthetic and bridge flags, methods and classes patterns.
+     *
+     * @return configured filter or {@literal null} if nothing is filtered
+     */
+    public static MethodFilter fromSystemProperties() {
+        MethodFilter filter = new MethodFilter();
+        filter.setSkipSynthetic(Boolean.getBoolean("jarmetrics.filter.synthetic"));
+        filter.setSkipBridge(Boolean.getBoolean("jarmetrics.filter.bridge"));
+        filter.setMethodPattern(System.getProperty("jarmetrics.filter.methods"));
+        filter.setClassPattern(System.getProperty("jarmetrics.filter.classes"));
+
+        return filter.isEnabled() ? filter : null;
+    }
+
+    public void setSkipSynthetic(boolean skipSynthetic) {
+        skippedAccess = skipSynthetic ? skippedAccess | ACC_SYNTHETIC : skippedAccess & ~ACC_SYNTHETIC;
+    }
+
+    public void setSkipBridge(boolean skipBridge) {
+        skippedAccess = skipBridge ? skippedAccess | ACC_BRIDGE : skippedAccess & ~ACC_BRIDGE;
+    }
+
+    /**
+     * @param regex methods with a matching name are skipped, {@literal null} disables the pattern
+     */
+    public void setMethodPattern(String regex) {
+        methodPattern = regex == null ? null : Pattern.compile(regex);
+    }
+
+    /**
+     * @param regex all methods of classes with a matching internal name are skipped,
+     *              {@literal null} disables the pattern
+     */
+    public void setClassPattern(String regex) {
+        classPattern = regex == null ? null : Pattern.compile(regex);
+    }
+
+    /**
+     * Skip synthetic and bridge methods and the code generated by javac and kotlinc.
+     */
+    public void skipGenerated() {
+        setSkipSynthetic(true);
+        setSkipBridge(true);
+        setMethodPattern(GENERATED_METHODS);
+        setClassPattern(GENERATED_CLASSES);
+    }
+
+    public boolean isEnabled() {
+        return skippedAccess != 0 || methodPattern != null || classPattern != null;
+    }
+
+    public boolean skipsClass(String className) {
+        return classPattern != null && classPattern.matcher(className).matches();
+    }
+
+    public boolean skipsMethod(int access, String name) {
+        return (access & skippedAccess) != 0 || methodPattern != null && methodPattern.matcher(name).matches();
+    }
+}
@@ -0,0 +1,57 @@
+package org.itmo.lab1.util;
+
+import org.objectweb.asm.ClassReader;
+
+/**
+ * Bytecode lengths of methods, read from the Code attributes of the class file.
+ * The visitor API doesn't expose them, so the method table is walked directly.
+ */
+public final class MethodSizes {
+    private MethodSizes() {
+    }
+
+    /**
+     * @return code length of every method in the order of the class file, which is the order
+     * of {@code visitMethod} calls; 0 for abstract and native methods
+     */
+    public static int[] read(ClassReader reader) {
+        char[] buffer = new char[reader.getMaxStringLength()];
+
+        //Header: access, this, super, interfaces
+        int offset = reader.header + 6;
+        offset += 2 + 2 * reader.readUnsignedShort(offset);
+
+        //Fields
+        int fieldsCount = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < fieldsCount; i++)
+            offset = skipMember(reader, offset);
+
+        int methodsCount = reader.readUnsignedShort(offset);
+        offset += 2;
+        int[] sizes = new int[methodsCount];
+
+        for (int i = 0; i < methodsCount; i++) {
+            int attributesCount = reader.readUnsignedShort(offset + 6);
+            offset += 8;
+            for (int j = 0; j < attributesCount; j++) {
+                String name = reader.readUTF8(offset, buffer);
+                int length = reader.readInt(offset + 2);
+                //Code: max_stack, max_locals, code_length
+                if (name.equals("Code"))
+                    sizes[i] = reader.readInt(offset + 10);
+                offset += 6 + length;
+            }
+        }
+
+        return sizes;
+    }
+
+    private static int skipMember(ClassReader reader, int offset) {
+        int attributesCount = reader.readUnsignedShort(offset + 6);
+        offset += 8;
+        for (int i = 0; i < attributesCount; i++)
+            offset += 6 + reader.readInt(offset + 2);
+        return offset;
+    }
+}
@@ -0,0 +1,128 @@
+package org.itmo.lab1.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Method signatures of classes spilled to a temporary file.
+ * Every class is written once as a sorted array of 64-bit signature hashes. Only the offset and
+ * the count of every class stay on the heap. For the override phase the file is memory-mapped and
+ * accessed at random by class id, the page cache keeps the parts in use.
+ */
+public class MethodSpill implements Closeable {
+    private final Path file;
+    private DataOutputStream out;
+    private long position;
+    private long[] offsets;
+    private int[] counts;
+    private ByteBuffer data;
+
+    public MethodSpill() throws IOException {
+        //Deleted by close, a deleteOnExit registration would stay in the JVM for every analysis
+        file = Files.createTempFile("jar-metrics-methods", ".bin");
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        offsets = new long[1024];
+        counts = new int[1024];
+    }
+
+    /**
+     * Write the method signatures of the class with the given id.
+     */
+    public void write(int id, List<String> methods) throws IOException {
+        if (id >= offsets.length) {
+            int size = Math.max(id + 1, offsets.length * 2);
+            offsets = Arrays.copyOf(offsets, size);
+            counts = Arrays.copyOf(counts, size);
+        }
+
+        long[] hashes = new long[methods.size()];
+        for (int i = 0; i < hashes.length; i++)
+            hashes[i] = hash(methods.get(i));
+        Arrays.sort(hashes);
+
+        offsets[id] = position;
+        counts[id] = hashes.length;
+        for (long hash : hashes)
+            out.writeLong(hash);
+        position += 8L * hashes.length;
+    }
+
+    /**
+     * Stop writing and map the file for reading.
+     */
+    public void finish() throws IOException {
+        out.close();
+        out = null;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (position > Integer.MAX_VALUE)
+                throw new IOException("Method spill is too large: " + position + " bytes");
+
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, position);
+        }
+    }
+
+    public int count(int id) {
+        return id < counts.length ? counts[id] : 0;
+    }
+
+    public long hashAt(int id, int index) {
+        return data.getLong((int) (offsets[id] + 8L * index));
+    }
+
+    /**
+     * Binary search of the hash among the methods of the class.
+     */
+    public boolean contains(int id, long hash) {
+        int low = 0;
+        int high = count(id) - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = hashAt(id, mid);
+            if (value < hash)
+                low = mid + 1;
+            else if (value > hash)
+                high = mid - 1;
+            else
+                return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (out != null)
+                out.close();
+        } finally {
+            out = null;
+            data = null;
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters of the signature.
+     */
+    public static long hash(String signature) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < signature.length(); i++) {
+            hash ^= signature.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,118 @@
+package org.itmo.lab1.util;
+
+import org.json.JSONObject;
+
+/**
+ * Metric computed in the same pass over a class as ABC and the other built-in metrics.
+ * A collector declares the events it needs with {@link #events()} and only receives those,
+ * so collectors that don't look at instructions cost nothing per instruction.
+ * <p>
+ * Classes are visited one at a time: {@link #visitClass}, its fields, then every analyzed method
+ * from {@link #visitMethod} through its instructions to {@link #visitMethodEnd}, and {@link #visitClassEnd}.
+ * Only methods with code that pass the method filter are visited, and in sampling mode only sampled classes.
+ * A method over the method size budget is visited without its instructions, {@link #visitCodeSize} still comes.
+ * If the analysis of a class is abandoned, e.g. by the class budget, {@link #discardClass} is called
+ * instead of {@link #visitClassEnd}.
+ * <p>
+ * A new collector is created for every analysis, so a collector is never used by two threads.
+ * Results of separate analyses, e.g. of parts of a classpath, are combined with {@link #merge}.
+ *
+ * @param <C> type of the collector itself
+ */
+public interface MetricCollector<C extends MetricCollector<C>> {
+    int CLASSES = 1;
+    int FIELDS = 1 << 1;
+    int METHODS = 1 << 2;
+    int INSTRUCTIONS = 1 << 3;
+    int METHOD_INSNS = 1 << 4;
+    int FIELD_INSNS = 1 << 5;
+    int TYPE_INSNS = 1 << 6;
+    int CODE_SIZES = 1 << 7;
+
+    /**
+     * @return key of the result in the output, unique among the collectors of an analysis
+     */
+    String name();
+
+    /**
+     * @return events the collector receives, a combination of {@link #CLASSES}, {@link #FIELDS},
+     * {@link #METHODS}, {@link #INSTRUCTIONS}, {@link #METHOD_INSNS}, {@link #FIELD_INSNS}, {@link #TYPE_INSNS}
+     * and {@link #CODE_SIZES}
+     */
+    int events();
+
+    /**
+     * {@link #CLASSES} event.
+     */
+    default void visitClass(int access, String className, String superName, String[] interfaces) {
+    }
+
+    /**
+     * {@link #FIELDS} event.
+     */
+    default void visitField(int access, String name, String descriptor) {
+    }
+
+    /**
+     * {@link #METHODS} event.
+     */
+    default void visitMethod(int access, String name, String descriptor) {
+    }
+
+    /**
+     * {@link #INSTRUCTIONS} event, called for every instruction with the opcode normalized by ASM.
+     */
+    default void visitInstruction(int opcode) {
+    }
+
+    /**
+     * {@link #METHOD_INSNS} event, called for INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC and INVOKEINTERFACE.
+     */
+    default void visitMethodInsn(int opcode, String owner, String name, String descriptor) {
+    }
+
+    /**
+     * {@link #FIELD_INSNS} event, called for GETSTATIC, PUTSTATIC, GETFIELD and PUTFIELD.
+     */
+    default void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+    }
+
+    /**
+     * {@link #TYPE_INSNS} event, called for NEW, ANEWARRAY, CHECKCAST and INSTANCEOF.
+     */
+    default void visitTypeInsn(int opcode, String type) {
+    }
+
+    /**
+     * {@link #CODE_SIZES} event, called after the instructions with the sizes from the Code attribute.
+     *
+     * @param length code length in bytes
+     */
+    default void visitCodeSize(int length, int maxStack, int maxLocals) {
+    }
+
+    /**
+     * {@link #METHODS} event.
+     */
+    default void visitMethodEnd() {
+    }
+
+    /**
+     * {@link #CLASSES} event.
+     */
+    default void visitClassEnd() {
+    }
+
+    /**
+     * Forget what was collected since the last {@link #visitClass}.
+     */
+    default void discardClass() {
+    }
+
+    /**
+     * Add the results of another analysis to this collector.
+     */
+    void merge(C other);
+
+    JSONObject toJson();
+}
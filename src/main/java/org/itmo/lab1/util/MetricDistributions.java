@@ -0,0 +1,85 @@
+package org.itmo.lab1.util;
+
+import org.json.JSONObject;
+
+/**
+ * Distributions of per-method ABC, method bytecode size and fields per class, kept in quantile sketches.
+ * The JSON form contains the sketch state, so distributions of separate runs can be merged.
+ */
+public class MetricDistributions {
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    private final QuantileSketch methodAbc;
+    private final QuantileSketch methodSize;
+    private final QuantileSketch classFields;
+
+    public MetricDistributions() {
+        this(new QuantileSketch(), new QuantileSketch(), new QuantileSketch());
+    }
+
+    private MetricDistributions(QuantileSketch methodAbc, QuantileSketch methodSize, QuantileSketch classFields) {
+        this.methodAbc = methodAbc;
+        this.methodSize = methodSize;
+        this.classFields = classFields;
+    }
+
+    /**
+     * @param abc  ABC of the method
+     * @param size length of the bytecode of the method
+     */
+    public void addMethod(double abc, int size) {
+        methodAbc.add(abc);
+        methodSize.add(size);
+    }
+
+    public void addClass(int fieldCount) {
+        classFields.add(fieldCount);
+    }
+
+    public void merge(MetricDistributions other) {
+        methodAbc.merge(other.methodAbc);
+        methodSize.merge(other.methodSize);
+        classFields.merge(other.classFields);
+    }
+
+    public QuantileSketch getMethodAbc() {
+        return methodAbc;
+    }
+
+    public QuantileSketch getMethodSize() {
+        return methodSize;
+    }
+
+    public QuantileSketch getClassFields() {
+        return classFields;
+    }
+
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("methodAbc", toJson(methodAbc));
+        json.put("methodSize", toJson(methodSize));
+        json.put("classFields", toJson(classFields));
+        return json;
+    }
+
+    /**
+     * Restore the distributions from the {@code distributions} object of metrics.json.
+     */
+    public static MetricDistributions fromJson(JSONObject json) {
+        return new MetricDistributions(
+                QuantileSketch.fromJson(json.getJSONObject("methodAbc").getJSONObject("sketch")),
+                QuantileSketch.fromJson(json.getJSONObject("methodSize").getJSONObject("sketch")),
+                QuantileSketch.fromJson(json.getJSONObject("classFields").getJSONObject("sketch")));
+    }
+
+    private static JSONObject toJson(QuantileSketch sketch) {
+        JSONObject json = new JSONObject();
+        json.put("count", sketch.getCount());
+        if (sketch.getCount() > 0) {
+            for (double q : QUANTILES)
+                json.put("p" + Math.round(q * 100), sketch.quantile(q));
+        }
+        json.put("sketch", sketch.toJson());
+        return json;
+    }
+}
@@ -12,6 +12,13 @@ public class Metrics {
         C = 0;
         fieldCount = 0;
     }
+
+    public Metrics(int a, int b, int c, int fieldCount) {
+        A = a;
+        B = b;
+        C = c;
+        this.fieldCount = fieldCount;
+    }
     public int getA() {
         return A;
     }
@@ -21,6 +28,9 @@ public class Metrics {
     public int getC() {
         return C;
     }
+    public double getAbc() {
+        return Math.sqrt((double) A * A + (double) B * B + (double) C * C);
+    }
     public int getFieldCount() {
         return fieldCount;
     }
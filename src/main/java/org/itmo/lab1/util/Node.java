@@ -10,6 +10,7 @@ public class Node {
     private Set<String> interfaces;
     private List<String> methods;
     private Set<Node> superClasses;
+    private boolean external;
 
     public Node(String key, String superclassName, Set<String> interfaces, List<String> methods) {
         this.className = key;
@@ -47,6 +48,18 @@ public class Node {
         this.interfaces = interfaces;
     }
 
+    /**
+     * External nodes are resolved from outside the jar (e.g. the JDK) or excluded by the package filter.
+     * They take part in the hierarchy but are not counted in the metrics themselves.
+     */
+    public boolean isExternal() {
+        return external;
+    }
+
+    public void setExternal(boolean external) {
+        this.external = external;
+    }
+
     @Override
     public String toString() {
         return className;
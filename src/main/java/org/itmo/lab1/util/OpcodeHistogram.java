@@ -0,0 +1,121 @@
+package org.itmo.lab1.util;
+
+import org.json.JSONObject;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Counts of instructions by opcode. Opcodes are the ones reported by ASM, so short forms are folded:
+ * {@code iload_0} is counted as ILOAD, {@code ldc_w} and {@code ldc2_w} as LDC, {@code goto_w} as GOTO.
+ */
+public class OpcodeHistogram {
+    //Mnemonics by opcode, as printed by ASM, kept here so the core doesn't depend on asm-util
+    private static final String[] NAMES = {
+            "NOP", "ACONST_NULL", "ICONST_M1", "ICONST_0", "ICONST_1", "ICONST_2", "ICONST_3", "ICONST_4", "ICONST_5",
+            "LCONST_0", "LCONST_1", "FCONST_0", "FCONST_1", "FCONST_2", "DCONST_0", "DCONST_1", "BIPUSH", "SIPUSH",
+            "LDC", "LDC_W", "LDC2_W", "ILOAD", "LLOAD", "FLOAD", "DLOAD", "ALOAD", "ILOAD_0", "ILOAD_1", "ILOAD_2",
+            "ILOAD_3", "LLOAD_0", "LLOAD_1", "LLOAD_2", "LLOAD_3", "FLOAD_0", "FLOAD_1", "FLOAD_2", "FLOAD_3",
+            "DLOAD_0", "DLOAD_1", "DLOAD_2", "DLOAD_3", "ALOAD_0", "ALOAD_1", "ALOAD_2", "ALOAD_3", "IALOAD", "LALOAD",
+            "FALOAD", "DALOAD", "AALOAD", "BALOAD", "CALOAD", "SALOAD", "ISTORE", "LSTORE", "FSTORE", "DSTORE",
+            "ASTORE", "ISTORE_0", "ISTORE_1", "ISTORE_2", "ISTORE_3", "LSTORE_0", "LSTORE_1", "LSTORE_2", "LSTORE_3",
+            "FSTORE_0", "FSTORE_1", "FSTORE_2", "FSTORE_3", "DSTORE_0", "DSTORE_1", "DSTORE_2", "DSTORE_3", "ASTORE_0",
+            "ASTORE_1", "ASTORE_2", "ASTORE_3", "IASTORE", "LASTORE", "FASTORE", "DASTORE", "AASTORE", "BASTORE",
+            "CASTORE", "SASTORE", "POP", "POP2", "DUP", "DUP_X1", "DUP_X2", "DUP2", "DUP2_X1", "DUP2_X2", "SWAP",
+            "IADD", "LADD", "FADD", "DADD", "ISUB", "LSUB", "FSUB", "DSUB", "IMUL", "LMUL", "FMUL", "DMUL", "IDIV",
+            "LDIV", "FDIV", "DDIV", "IREM", "LREM", "FREM", "DREM", "INEG", "LNEG", "FNEG", "DNEG", "ISHL", "LSHL",
+            "ISHR", "LSHR", "IUSHR", "LUSHR", "IAND", "LAND", "IOR", "LOR", "IXOR", "LXOR", "IINC", "I2L", "I2F",
+            "I2D", "L2I", "L2F", "L2D", "F2I", "F2L", "F2D", "D2I", "D2L", "D2F", "I2B", "I2C", "I2S", "LCMP", "FCMPL",
+            "FCMPG", "DCMPL", "DCMPG", "IFEQ", "IFNE", "IFLT", "IFGE", "IFGT", "IFLE", "IF_ICMPEQ", "IF_ICMPNE",
+            "IF_ICMPLT", "IF_ICMPGE", "IF_ICMPGT", "IF_ICMPLE", "IF_ACMPEQ", "IF_ACMPNE", "GOTO", "JSR", "RET",
+            "TABLESWITCH", "LOOKUPSWITCH", "IRETURN", "LRETURN", "FRETURN", "DRETURN", "ARETURN", "RETURN",
+            "GETSTATIC", "PUTSTATIC", "GETFIELD", "PUTFIELD", "INVOKEVIRTUAL", "INVOKESPECIAL", "INVOKESTATIC",
+            "INVOKEINTERFACE", "INVOKEDYNAMIC", "NEW", "NEWARRAY", "ANEWARRAY", "ARRAYLENGTH", "ATHROW", "CHECKCAST",
+            "INSTANCEOF", "MONITORENTER", "MONITOREXIT", "WIDE", "MULTIANEWARRAY", "IFNULL", "IFNONNULL"
+    };
+
+    private final long[] counts;
+
+    public OpcodeHistogram() {
+        this(new long[256]);
+    }
+
+    OpcodeHistogram(long[] counts) {
+        this.counts = counts;
+    }
+
+    public void add(int opcode, long count) {
+        counts[opcode] += count;
+    }
+
+    public void merge(OpcodeHistogram other) {
+        for (int opcode = 0; opcode < counts.length; opcode++)
+            counts[opcode] += other.counts[opcode];
+    }
+
+    /**
+     * @return mnemonic of the opcode, e.g. INVOKEVIRTUAL
+     */
+    static String name(int opcode) {
+        return NAMES[opcode];
+    }
+
+    public long get(int opcode) {
+        return counts[opcode];
+    }
+
+    public long total() {
+        long total = 0;
+        for (long count : counts)
+            total += count;
+        return total;
+    }
+
+    /**
+     * @return share of the given opcodes among all instructions
+     */
+    public double share(int... opcodes) {
+        long total = total();
+        if (total == 0)
+            return 0;
+
+        long count = 0;
+        for (int opcode : opcodes)
+            count += counts[opcode];
+        return (double) count / total;
+    }
+
+    public double getInvokeInterfaceShare() {
+        return share(INVOKEINTERFACE);
+    }
+
+    public double getCheckcastShare() {
+        return share(CHECKCAST);
+    }
+
+    public double getAllocationShare() {
+        return share(NEW, NEWARRAY, ANEWARRAY, MULTIANEWARRAY);
+    }
+
+    public double getMonitorShare() {
+        return share(MONITORENTER, MONITOREXIT);
+    }
+
+    public JSONObject toJson() {
+        JSONObject opcodes = new JSONObject();
+        for (int opcode = 0; opcode < counts.length; opcode++)
+            if (counts[opcode] > 0)
+                opcodes.put(name(opcode), counts[opcode]);
+
+        JSONObject shares = new JSONObject();
+        shares.put("invokeinterface", getInvokeInterfaceShare());
+        shares.put("checkcast", getCheckcastShare());
+        shares.put("allocation", getAllocationShare());
+        shares.put("monitor", getMonitorShare());
+
+        JSONObject json = new JSONObject();
+        json.put("total", total());
+        json.put("opcodes", opcodes);
+        json.put("shares", shares);
+        return json;
+    }
+}
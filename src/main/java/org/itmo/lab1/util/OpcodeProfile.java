@@ -0,0 +1,164 @@
+package org.itmo.lab1.util;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Opcode histograms of a scan. Instructions are counted in a reused array of the current method,
+ * which is folded into the class at the end of the method and into the jar at the end of the class,
+ * so an instruction costs a single increment. Histograms of classes or methods are written to the
+ * report as JSON lines instead of being kept in memory. The profile runs as a {@link MetricCollector}.
+ */
+public class OpcodeProfile implements MetricCollector<OpcodeProfile> {
+    public enum Level {
+        JAR, CLASS, METHOD
+    }
+
+    private final Level level;
+    private final Writer report;
+    private final long[] jarCounts = new long[256];
+    private final long[] classCounts = new long[256];
+    private final long[] methodCounts = new long[256];
+    //Opcodes of the current method, so that only they are folded and cleared
+    private final int[] methodOpcodes = new int[256];
+    private int methodOpcodesCount;
+    private String className;
+    private String methodSignature;
+
+    public OpcodeProfile() {
+        this(Level.JAR, null);
+    }
+
+    /**
+     * @param level  granularity of the report
+     * @param report receives a JSON line per class or method, may be {@literal null} for {@link Level#JAR}
+     */
+    public OpcodeProfile(Level level, Writer report) {
+        if (level != Level.JAR && report == null)
+            throw new IllegalArgumentException("No report for " + level + " histograms");
+
+        this.level = level;
+        this.report = report;
+    }
+
+    @Override
+    public String name() {
+        return "opcodes";
+    }
+
+    @Override
+    public int events() {
+        return CLASSES | METHODS | INSTRUCTIONS;
+    }
+
+    @Override
+    public void visitClass(int access, String className, String superName, String[] interfaces) {
+        this.className = className;
+    }
+
+    @Override
+    public void visitMethod(int access, String name, String descriptor) {
+        methodSignature = name + descriptor.substring(0, descriptor.indexOf(')') + 1);
+    }
+
+    @Override
+    public void visitInstruction(int opcode) {
+        if (methodCounts[opcode]++ == 0)
+            methodOpcodes[methodOpcodesCount++] = opcode;
+    }
+
+    @Override
+    public void visitMethodEnd() {
+        if (level == Level.METHOD && methodOpcodesCount > 0)
+            writeLine(className, methodSignature, methodCounts);
+
+        for (int i = 0; i < methodOpcodesCount; i++) {
+            int opcode = methodOpcodes[i];
+            classCounts[opcode] += methodCounts[opcode];
+            methodCounts[opcode] = 0;
+        }
+        methodOpcodesCount = 0;
+    }
+
+    @Override
+    public void visitClassEnd() {
+        if (level == Level.CLASS)
+            writeLine(className, null, classCounts);
+
+        for (int opcode = 0; opcode < classCounts.length; opcode++) {
+            jarCounts[opcode] += classCounts[opcode];
+            classCounts[opcode] = 0;
+        }
+    }
+
+    @Override
+    public void discardClass() {
+        for (int i = 0; i < methodOpcodesCount; i++)
+            methodCounts[methodOpcodes[i]] = 0;
+        methodOpcodesCount = 0;
+        Arrays.fill(classCounts, 0);
+    }
+
+    /**
+     * @return histogram of all classes counted so far
+     */
+    public OpcodeHistogram getHistogram() {
+        return new OpcodeHistogram(jarCounts.clone());
+    }
+
+    @Override
+    public void merge(OpcodeProfile other) {
+        for (int opcode = 0; opcode < jarCounts.length; opcode++)
+            jarCounts[opcode] += other.jarCounts[opcode];
+    }
+
+    @Override
+    public JSONObject toJson() {
+        return getHistogram().toJson();
+    }
+
+    private void writeLine(String className, String methodSignature, long[] counts) {
+        StringBuilder line = new StringBuilder("{\"class\":");
+        quote(className, line);
+        if (methodSignature != null) {
+            line.append(",\"method\":");
+            quote(methodSignature, line);
+        }
+
+        line.append(",\"opcodes\":{");
+        boolean first = true;
+        for (int opcode = 0; opcode < counts.length; opcode++) {
+            if (counts[opcode] == 0)
+                continue;
+            if (!first)
+                line.append(',');
+            first = false;
+            line.append('"').append(OpcodeHistogram.name(opcode)).append("\":").append(counts[opcode]);
+        }
+        line.append("}}\n");
+
+        try {
+            report.write(line.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void quote(String value, StringBuilder out) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"' || ch == '\\')
+                out.append('\\').append(ch);
+            else if (ch < 0x20)
+                out.append(String.format("\\u%04x", (int) ch));
+            else
+                out.append(ch);
+        }
+        out.append('"');
+    }
+}
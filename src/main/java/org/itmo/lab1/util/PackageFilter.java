@@ -0,0 +1,75 @@
+package org.itmo.lab1.util;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Include and exclude globs on internal class names, e.g. {@code com/ourco/**} or {@code io/netty/**}.
+ * {@code **} matches any part of a name, {@code *} and {@code ?} don't cross package boundaries.
+ * Dots are accepted instead of slashes. Without includes every class not excluded is included.
+ */
+public class PackageFilter {
+    private final List<Pattern> includes = new ArrayList<>();
+    private final List<Pattern> excludes = new ArrayList<>();
+
+    /**
+     * Create a filter from the comma-separated globs of the {@code jarmetrics.include}
+     * and {@code jarmetrics.exclude} system properties.
+     *
+     * @return configured filter or {@literal null} if no glob is set
+     */
+    public static PackageFilter fromSystemProperties() {
+        PackageFilter filter = new PackageFilter();
+        for (String glob : System.getProperty("jarmetrics.include", "").split(","))
+            if (!glob.isBlank())
+                filter.include(glob.trim());
+        for (String glob : System.getProperty("jarmetrics.exclude", "").split(","))
+            if (!glob.isBlank())
+                filter.exclude(glob.trim());
+
+        return filter.isEnabled() ? filter : null;
+    }
+
+    public void include(String glob) {
+        includes.add(toPattern(glob));
+    }
+
+    public void exclude(String glob) {
+        excludes.add(toPattern(glob));
+    }
+
+    public boolean isEnabled() {
+        return !includes.isEmpty() || !excludes.isEmpty();
+    }
+
+    /**
+     * @param className internal name of the class
+     */
+    public boolean includes(String className) {
+        if (!includes.isEmpty() && includes.stream().noneMatch(pattern -> pattern.matcher(className).matches()))
+            return false;
+
+        return excludes.stream().noneMatch(pattern -> pattern.matcher(className).matches());
+    }
+
+    private static Pattern toPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        String path = glob.replace('.', '/');
+
+        for (int i = 0; i < path.length(); i++) {
+            char ch = path.charAt(i);
+            if (ch == '*' && i + 1 < path.length() && path.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else if (ch == '*') {
+                regex.append("[^/]*");
+            } else if (ch == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(ch)));
+            }
+        }
+
+        return Pattern.compile(regex.toString());
+    }
+}
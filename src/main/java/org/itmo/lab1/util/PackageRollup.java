@@ -0,0 +1,215 @@
+package org.itmo.lab1.util;
+
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Metrics rolled up along the package tree. Every class is added to the accumulator of its own package,
+ * {@link #reduce()} then merges the accumulators bottom-up, so the total of a package covers all of
+ * its subpackages, e.g. {@code org/springframework/web/**}. Both steps are linear in the number of
+ * classes and packages.
+ */
+public class PackageRollup {
+    private final Package root = new Package();
+    private final Map<String, Package> packages = new HashMap<>();
+    private boolean reduced;
+
+    /**
+     * @param className internal name of the class
+     * @return accumulator of the package of the class
+     */
+    public Accumulator of(String className) {
+        int end = className.lastIndexOf('/');
+        return find(end == -1 ? "" : className.substring(0, end)).own;
+    }
+
+    /**
+     * Merge the accumulators bottom-up in parallel.
+     */
+    public void reduce() {
+        ForkJoinPool.commonPool().invoke(new Reduction(root));
+        reduced = true;
+    }
+
+    /**
+     * @param packageName internal name of the package, e.g. {@code org/springframework/web}
+     * @return total of the package and its subpackages or {@literal null} if there is no such package
+     */
+    public Accumulator get(String packageName) {
+        if (!reduced)
+            throw new IllegalStateException("Rollup is not reduced");
+
+        Package pkg = packageName.isEmpty() ? root : packages.get(packageName);
+        return pkg == null ? null : pkg.total;
+    }
+
+    /**
+     * @return names of all named packages in the tree, sorted; the unnamed package is the root
+     */
+    public SortedSet<String> packageNames() {
+        return new TreeSet<>(packages.keySet());
+    }
+
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        for (String name : packageNames())
+            json.put(name, get(name).toJson());
+        return json;
+    }
+
+    private Package find(String packageName) {
+        if (packageName.isEmpty())
+            return root;
+
+        Package pkg = packages.get(packageName);
+        if (pkg != null)
+            return pkg;
+
+        int end = packageName.lastIndexOf('/');
+        Package parent = end == -1 ? root : find(packageName.substring(0, end));
+        pkg = new Package();
+        parent.children.add(pkg);
+        packages.put(packageName, pkg);
+        return pkg;
+    }
+
+    private static class Package {
+        private final List<Package> children = new ArrayList<>();
+        private final Accumulator own = new Accumulator();
+        private Accumulator total;
+    }
+
+    private static class Reduction extends RecursiveTask<Accumulator> {
+        private static final long serialVersionUID = 1L;
+
+        private final Package pkg;
+
+        private Reduction(Package pkg) {
+            this.pkg = pkg;
+        }
+
+        @Override
+        protected Accumulator compute() {
+            Accumulator total = new Accumulator();
+            total.merge(pkg.own);
+
+            if (pkg.children.size() == 1) {
+                total.merge(new Reduction(pkg.children.get(0)).compute());
+            } else if (!pkg.children.isEmpty()) {
+                List<Reduction> tasks = new ArrayList<>();
+                for (Package child : pkg.children)
+                    tasks.add(new Reduction(child));
+                for (Reduction task : invokeAll(tasks))
+                    total.merge(task.join());
+            }
+
+            pkg.total = total;
+            return total;
+        }
+    }
+
+    /**
+     * Mergeable sums of the per-class metrics.
+     */
+    public static class Accumulator {
+        private int classes;
+        private long fields;
+        private long a, b, c;
+        private long methods;
+        private long overridenMethods;
+        private long depthSum;
+        private int depthCount;
+        private int maxDepth = -1;
+
+        public void addClass(int fieldCount, int a, int b, int c, int methods) {
+            this.classes++;
+            this.fields += fieldCount;
+            this.a += a;
+            this.b += b;
+            this.c += c;
+            this.methods += methods;
+        }
+
+        public void addOverrides(int overridenMethods) {
+            this.overridenMethods += overridenMethods;
+        }
+
+        public void addDepth(int depth) {
+            depthSum += depth;
+            depthCount++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        public void merge(Accumulator other) {
+            classes += other.classes;
+            fields += other.fields;
+            a += other.a;
+            b += other.b;
+            c += other.c;
+            methods += other.methods;
+            overridenMethods += other.overridenMethods;
+            depthSum += other.depthSum;
+            depthCount += other.depthCount;
+            maxDepth = Math.max(maxDepth, other.maxDepth);
+        }
+
+        public int getClasses() {
+            return classes;
+        }
+
+        public double getFieldsAverage() {
+            return classes == 0 ? 0 : (double) fields / classes;
+        }
+
+        public long getA() {
+            return a;
+        }
+
+        public long getB() {
+            return b;
+        }
+
+        public long getC() {
+            return c;
+        }
+
+        public double getAbc() {
+            return Math.sqrt((double) a * a + (double) b * b + (double) c * c);
+        }
+
+        public long getMethods() {
+            return methods;
+        }
+
+        public long getOverridenMethods() {
+            return overridenMethods;
+        }
+
+        public int getMaxInheritanceDepth() {
+            return maxDepth;
+        }
+
+        public double getAverageInheritanceDepth() {
+            return depthCount == 0 ? Double.NaN : (double) depthSum / depthCount;
+        }
+
+        public JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("classes", classes);
+            json.put("fieldsAverage", getFieldsAverage());
+            json.put("A", a);
+            json.put("B", b);
+            json.put("C", c);
+            json.put("ABC", getAbc());
+            json.put("maxInheritanceDepth", maxDepth);
+            if (depthCount > 0)
+                json.put("averageInheritanceDepth", getAverageInheritanceDepth());
+            json.put("methods", methods);
+            json.put("overridenMethods", overridenMethods);
+            return json;
+        }
+    }
+}
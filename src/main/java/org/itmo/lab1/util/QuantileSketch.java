@@ -0,0 +1,237 @@
+package org.itmo.lab1.util;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.*;
+
+/**
+ * KLL quantile sketch. Values are kept in a stack of compactors, an item of level h stands for 2^h values.
+ * A full level is sorted and every other item is promoted to the next level, so memory stays
+ * O(k log(n / k)) while the rank error is about 1.7 / k. Sketches of the same k can be merged.
+ */
+public class QuantileSketch {
+    private static final double CAPACITY_RATIO = 2.0 / 3.0;
+
+    private final int k;
+    private final List<double[]> levels;
+    private final List<Integer> sizes;
+    private long count;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private boolean evenOffset;
+
+    public QuantileSketch() {
+        this(200);
+    }
+
+    /**
+     * @param k accuracy parameter, at least 8
+     */
+    public QuantileSketch(int k) {
+        if (k < 8)
+            throw new IllegalArgumentException("k must be at least 8: " + k);
+
+        this.k = k;
+        this.levels = new ArrayList<>();
+        this.sizes = new ArrayList<>();
+        addLevel();
+    }
+
+    public void add(double value) {
+        if (count == 0 || value < min)
+            min = value;
+        if (count == 0 || value > max)
+            max = value;
+        count++;
+
+        append(0, value);
+        compress();
+    }
+
+    /**
+     * Add all values seen by the other sketch.
+     */
+    public void merge(QuantileSketch other) {
+        if (other.k != k)
+            throw new IllegalArgumentException("Sketches of different k: " + k + " and " + other.k);
+        if (other.count == 0)
+            return;
+
+        min = count == 0 ? other.min : Math.min(min, other.min);
+        max = count == 0 ? other.max : Math.max(max, other.max);
+        count += other.count;
+
+        for (int level = 0; level < other.levels.size(); level++) {
+            double[] items = other.levels.get(level);
+            for (int i = 0; i < other.sizes.get(level); i++)
+                append(level, items[i]);
+        }
+        compress();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param q quantile in [0, 1]
+     * @return estimated value of the quantile, NaN if the sketch is empty
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1)
+            throw new IllegalArgumentException("Quantile must be in [0, 1]: " + q);
+        if (count == 0)
+            return Double.NaN;
+        if (q == 0)
+            return min;
+        if (q == 1)
+            return max;
+
+        int total = 0;
+        for (int size : sizes)
+            total += size;
+
+        double[] values = new double[total];
+        long[] weights = new long[total];
+        int n = 0;
+        for (int level = 0; level < levels.size(); level++) {
+            double[] items = levels.get(level);
+            for (int i = 0; i < sizes.get(level); i++) {
+                values[n] = items[i];
+                weights[n++] = 1L << level;
+            }
+        }
+
+        Integer[] order = new Integer[total];
+        for (int i = 0; i < total; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparingDouble(i -> values[i]));
+
+        double rank = q * count;
+        long cumulative = 0;
+        for (int i : order) {
+            cumulative += weights[i];
+            if (cumulative >= rank)
+                return values[i];
+        }
+
+        return max;
+    }
+
+    /**
+     * State of the sketch, {@link #fromJson} restores it for merging with later runs.
+     */
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("k", k);
+        json.put("count", count);
+        if (count > 0) {
+            json.put("min", min);
+            json.put("max", max);
+        }
+
+        JSONArray jsonLevels = new JSONArray();
+        for (int level = 0; level < levels.size(); level++) {
+            JSONArray items = new JSONArray();
+            for (int i = 0; i < sizes.get(level); i++)
+                items.put(levels.get(level)[i]);
+            jsonLevels.put(items);
+        }
+        json.put("levels", jsonLevels);
+
+        return json;
+    }
+
+    public static QuantileSketch fromJson(JSONObject json) {
+        QuantileSketch sketch = new QuantileSketch(json.getInt("k"));
+        sketch.count = json.getLong("count");
+        if (sketch.count > 0) {
+            sketch.min = json.getDouble("min");
+            sketch.max = json.getDouble("max");
+        }
+
+        JSONArray jsonLevels = json.getJSONArray("levels");
+        for (int level = 0; level < jsonLevels.length(); level++) {
+            JSONArray items = jsonLevels.getJSONArray(level);
+            for (int i = 0; i < items.length(); i++)
+                sketch.append(level, items.getDouble(i));
+        }
+
+        return sketch;
+    }
+
+    private void append(int level, double value) {
+        while (level >= levels.size())
+            addLevel();
+
+        double[] items = levels.get(level);
+        int size = sizes.get(level);
+        if (size == items.length) {
+            items = Arrays.copyOf(items, items.length * 2);
+            levels.set(level, items);
+        }
+        items[size] = value;
+        sizes.set(level, size + 1);
+    }
+
+    private void addLevel() {
+        levels.add(new double[Math.max(8, k / 4)]);
+        sizes.add(0);
+    }
+
+    /**
+     * Capacity of the level, the top level holds k items and lower levels geometrically less.
+     */
+    private int capacity(int level) {
+        int depth = levels.size() - 1 - level;
+        return Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_RATIO, depth)));
+    }
+
+    private void compress() {
+        while (true) {
+            int total = 0;
+            int capacity = 0;
+            for (int level = 0; level < levels.size(); level++) {
+                total += sizes.get(level);
+                capacity += capacity(level);
+            }
+            if (total <= capacity)
+                return;
+
+            for (int level = 0; level < levels.size(); level++) {
+                if (sizes.get(level) >= capacity(level)) {
+                    compact(level);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sort the level and promote every other item to the next level. The offset alternates,
+     * so the error of successive compactions cancels out and the result is deterministic.
+     */
+    private void compact(int level) {
+        double[] items = levels.get(level);
+        int size = sizes.get(level);
+        Arrays.sort(items, 0, size);
+
+        //An odd item stays on the level
+        int kept = size % 2;
+        int offset = evenOffset ? 0 : 1;
+        evenOffset = !evenOffset;
+
+        double leftover = items[size - 1];
+        for (int i = offset; i < size - kept; i += 2)
+            append(level + 1, items[i]);
+
+        //append() may have replaced the arrays of the upper level only
+        if (kept == 1) {
+            levels.get(level)[0] = leftover;
+            sizes.set(level, 1);
+        } else {
+            sizes.set(level, 0);
+        }
+    }
+}
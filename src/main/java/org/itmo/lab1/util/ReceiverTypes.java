@@ -0,0 +1,374 @@
+package org.itmo.lab1.util;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.*;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Receiver types of virtual call sites by class hierarchy analysis. For every INVOKEVIRTUAL and INVOKEINTERFACE
+ * the concrete classes among the owner type and its subtypes are counted; a site with more receivers than
+ * the limit is likely megamorphic, HotSpot inlines through at most two receiver types.
+ * Only the classes of the pass count as receivers, implementations in the JDK or in excluded packages don't.
+ * <p>
+ * Call sites are kept as ids while the classes are read and resolved against the {@link HierarchyIndex}
+ * once all classes are known, the receivers of every owner type are counted only once.
+ */
+public class ReceiverTypes implements MetricCollector<ReceiverTypes> {
+    public static final int DEFAULT_LIMIT = 2;
+    private static final int LISTED = 20;
+    private static final Comparator<Site> BY_RECEIVERS = Comparator.comparingInt(Site::getReceivers)
+            .thenComparing(Site::getCaller, Comparator.reverseOrder())
+            .thenComparing(Site::getCallee, Comparator.reverseOrder());
+    private static final Comparator<Type> BY_SITES = Comparator.comparingInt(Type::getSites)
+            .thenComparingInt(Type::getReceivers)
+            .thenComparing(Type::getName, Comparator.reverseOrder());
+
+    public static class Site {
+        private final String caller;
+        private final String callee;
+        private final int receivers;
+
+        private Site(String caller, String callee, int receivers) {
+            this.caller = caller;
+            this.callee = callee;
+            this.receivers = receivers;
+        }
+
+        /**
+         * @return class.name(arguments) of the calling method
+         */
+        public String getCaller() {
+            return caller;
+        }
+
+        /**
+         * @return owner.name descriptor of the called method
+         */
+        public String getCallee() {
+            return callee;
+        }
+
+        public int getReceivers() {
+            return receivers;
+        }
+    }
+
+    public static class Type {
+        private final String name;
+        private final int receivers;
+        private final int sites;
+
+        private Type(String name, int receivers, int sites) {
+            this.name = name;
+            this.receivers = receivers;
+            this.sites = sites;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getReceivers() {
+            return receivers;
+        }
+
+        /**
+         * @return call sites with this owner type
+         */
+        public int getSites() {
+            return sites;
+        }
+    }
+
+    private final int limit;
+    private final Writer report;
+
+    //Owner types and analyzed classes, a bit per concrete class
+    private final Map<String, Integer> typeIds = new HashMap<>();
+    private final List<String> typeNames = new ArrayList<>();
+    private final BitSet concrete = new BitSet();
+
+    //Callers are interned at their first virtual call, names and descriptors of callees apart from their owners
+    private final Map<String, Integer> callerIds = new HashMap<>();
+    private final List<String> callerNames = new ArrayList<>();
+    private final Map<String, Integer> memberIds = new HashMap<>();
+    private final List<String> memberNames = new ArrayList<>();
+    private int[] siteTypes = new int[4096];
+    private int[] siteCallers = new int[4096];
+    private int[] siteNames = new int[4096];
+    private int[] siteDescriptors = new int[4096];
+    private int sites;
+
+    private String className;
+    private String methodName;
+    private String methodDescriptor;
+    private int caller;
+    private int classStart;
+
+    private boolean resolved;
+    private int virtualSites;
+    private int polymorphicSites;
+    private int megamorphicSites;
+    private final PriorityQueue<Site> largest = new PriorityQueue<>(BY_RECEIVERS);
+    private final Map<String, Type> megamorphicTypes = new HashMap<>();
+
+    public ReceiverTypes() {
+        this(DEFAULT_LIMIT, null);
+    }
+
+    /**
+     * @param limit  receivers a site may have before it is reported
+     * @param report receives a JSON line per site over the limit, may be {@literal null}
+     */
+    public ReceiverTypes(int limit, Writer report) {
+        if (limit < 1)
+            throw new IllegalArgumentException("Receiver limit must be positive: " + limit);
+
+        this.limit = limit;
+        this.report = report;
+    }
+
+    @Override
+    public String name() {
+        return "receiverTypes";
+    }
+
+    @Override
+    public int events() {
+        return CLASSES | METHODS | METHOD_INSNS;
+    }
+
+    @Override
+    public void visitClass(int access, String className, String superName, String[] interfaces) {
+        this.className = className;
+        classStart = sites;
+        //A class is a receiver even if its analysis is abandoned later
+        if ((access & (ACC_INTERFACE | ACC_ABSTRACT)) == 0)
+            concrete.set(internType(className));
+    }
+
+    @Override
+    public void visitMethod(int access, String name, String descriptor) {
+        methodName = name;
+        methodDescriptor = descriptor;
+        caller = -1;
+    }
+
+    @Override
+    public void visitMethodInsn(int opcode, String owner, String name, String descriptor) {
+        //Methods of arrays are those of Object
+        if (opcode != INVOKEVIRTUAL && opcode != INVOKEINTERFACE || owner.charAt(0) == '[')
+            return;
+
+        if (caller == -1)
+            caller = intern(className + "." + methodName + methodDescriptor.substring(0,
+                    methodDescriptor.indexOf(')') + 1), callerIds, callerNames);
+        if (sites == siteTypes.length) {
+            siteTypes = Arrays.copyOf(siteTypes, sites * 2);
+            siteCallers = Arrays.copyOf(siteCallers, sites * 2);
+            siteNames = Arrays.copyOf(siteNames, sites * 2);
+            siteDescriptors = Arrays.copyOf(siteDescriptors, sites * 2);
+        }
+        siteTypes[sites] = internType(owner);
+        siteCallers[sites] = caller;
+        siteNames[sites] = intern(name, memberIds, memberNames);
+        siteDescriptors[sites] = intern(descriptor, memberIds, memberNames);
+        sites++;
+    }
+
+    @Override
+    public void discardClass() {
+        sites = classStart;
+        caller = -1;
+    }
+
+    private int internType(String name) {
+        return intern(name, typeIds, typeNames);
+    }
+
+    private static int intern(String name, Map<String, Integer> ids, List<String> names) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    /**
+     * Count the receivers of every call site, once all classes of the pass are in the hierarchy.
+     * The sites are released afterwards.
+     */
+    public void resolve(HierarchyIndex hierarchy) {
+        if (resolved)
+            throw new IllegalStateException("Receiver types are resolved already");
+        resolved = true;
+
+        int[] receivers = new int[typeNames.size()];
+        Arrays.fill(receivers, -1);
+        int[] typeSites = new int[typeNames.size()];
+
+        for (int i = 0; i < sites; i++) {
+            int type = siteTypes[i];
+            if (receivers[type] == -1)
+                receivers[type] = countReceivers(type, hierarchy);
+
+            int count = receivers[type];
+            if (count > 1)
+                polymorphicSites++;
+            if (count <= limit)
+                continue;
+
+            megamorphicSites++;
+            typeSites[type]++;
+            Site site = new Site(callerNames.get(siteCallers[i]), typeNames.get(type) + "."
+                    + memberNames.get(siteNames[i]) + memberNames.get(siteDescriptors[i]), count);
+            offer(site);
+            if (report != null)
+                writeLine(site);
+        }
+        virtualSites = sites;
+
+        for (int type = 0; type < typeSites.length; type++) {
+            if (typeSites[type] > 0) {
+                String name = typeNames.get(type);
+                megamorphicTypes.put(name, new Type(name, receivers[type], typeSites[type]));
+            }
+        }
+
+        //Only the results are kept
+        sites = 0;
+        siteTypes = siteCallers = siteNames = siteDescriptors = new int[0];
+        callerIds.clear();
+        memberIds.clear();
+    }
+
+    private int countReceivers(int type, HierarchyIndex hierarchy) {
+        //A class may implement the type along several paths
+        BitSet receivers = new BitSet();
+        if (concrete.get(type))
+            receivers.set(type);
+        for (String subtype : hierarchy.subtypes(typeNames.get(type))) {
+            Integer id = typeIds.get(subtype);
+            if (id != null && concrete.get(id))
+                receivers.set(id);
+        }
+        return receivers.cardinality();
+    }
+
+    private void offer(Site site) {
+        largest.add(site);
+        if (largest.size() > LISTED)
+            largest.poll();
+    }
+
+    private void writeLine(Site site) {
+        StringBuilder line = new StringBuilder("{\"caller\":");
+        OpcodeProfile.quote(site.caller, line);
+        line.append(",\"callee\":");
+        OpcodeProfile.quote(site.callee, line);
+        line.append(",\"receivers\":").append(site.receivers).append("}\n");
+
+        try {
+            report.append(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return INVOKEVIRTUAL and INVOKEINTERFACE sites
+     */
+    public int getVirtualSites() {
+        return virtualSites;
+    }
+
+    /**
+     * @return sites with more than one receiver
+     */
+    public int getPolymorphicSites() {
+        return polymorphicSites;
+    }
+
+    /**
+     * @return sites with more receivers than the limit
+     */
+    public int getMegamorphicSites() {
+        return megamorphicSites;
+    }
+
+    /**
+     * @return sites with the most receivers, most first
+     */
+    public List<Site> getLargest() {
+        List<Site> result = new ArrayList<>(largest);
+        result.sort(BY_RECEIVERS.reversed());
+        return result;
+    }
+
+    /**
+     * @return owner types over the limit with the most sites, most first
+     */
+    public List<Type> getMegamorphicTypes() {
+        List<Type> result = new ArrayList<>(megamorphicTypes.values());
+        result.sort(BY_SITES.reversed());
+        return result.subList(0, Math.min(LISTED, result.size()));
+    }
+
+    @Override
+    public void merge(ReceiverTypes other) {
+        if (!resolved || !other.resolved)
+            throw new IllegalStateException("Only resolved receiver types can be merged");
+
+        virtualSites += other.virtualSites;
+        polymorphicSites += other.polymorphicSites;
+        megamorphicSites += other.megamorphicSites;
+        for (Site site : other.largest)
+            offer(site);
+        for (Type type : other.megamorphicTypes.values()) {
+            megamorphicTypes.merge(type.name, type, (a, b) -> new Type(a.name, Math.max(a.receivers, b.receivers),
+                    a.sites + b.sites));
+        }
+    }
+
+    @Override
+    public JSONObject toJson() {
+        JSONArray types = new JSONArray();
+        for (Type type : getMegamorphicTypes()) {
+            JSONObject json = new JSONObject();
+            json.put("type", type.name);
+            json.put("receivers", type.receivers);
+            json.put("sites", type.sites);
+            types.put(json);
+        }
+
+        JSONArray most = new JSONArray();
+        for (Site site : getLargest()) {
+            JSONObject json = new JSONObject();
+            json.put("caller", site.caller);
+            json.put("callee", site.callee);
+            json.put("receivers", site.receivers);
+            most.put(json);
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("limit", limit);
+        json.put("virtualSites", virtualSites);
+        json.put("polymorphicSites", polymorphicSites);
+        json.put("megamorphicSites", megamorphicSites);
+        json.put("megamorphicTypes", types);
+        json.put("largest", most);
+        return json;
+    }
+}
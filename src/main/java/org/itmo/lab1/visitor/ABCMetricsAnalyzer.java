@@ -1,6 +1,10 @@
 package org.itmo.lab1.visitor;
 
+import org.itmo.lab1.util.CallGraph;
+import org.itmo.lab1.util.ClassCohesion;
 import org.itmo.lab1.util.Metrics;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
@@ -10,10 +14,40 @@ import static org.objectweb.asm.Opcodes.*;
 
 public class ABCMetricsAnalyzer extends MethodVisitor {
     private Metrics metrics;
+    private final Metrics methodMetrics;
+    private final ClassAnalyzer owner;
+    private final String methodSignature;
+    private final CollectorChain collectors;
+    private final CallGraph callGraph;
+    private final int methodId;
+    private final ClassCohesion cohesion;
+    private final int cohesionIndex;
+    private final boolean checksDeadline;
+    private final AssignmentTracker assignments;
 
     public ABCMetricsAnalyzer(Metrics metrics) {
-        super(ASM8);
+        this(metrics, null, null);
+    }
+
+    /**
+     * @param metrics         metrics of the whole class, shared by all its methods
+     * @param owner           class analyzer notified with the metrics of this method at its end
+     * @param methodSignature name and arguments of the method
+     */
+    public ABCMetricsAnalyzer(Metrics metrics, ClassAnalyzer owner, String methodSignature) {
+        //The assignment tracker follows the stack through every instruction passed on to it
+        super(ASM8, owner == null ? null : owner.getAssignments());
         this.metrics = metrics;
+        this.methodMetrics = new Metrics();
+        this.owner = owner;
+        this.methodSignature = methodSignature;
+        this.collectors = owner == null ? null : owner.getCollectors();
+        this.callGraph = owner == null ? null : owner.getCallGraph();
+        this.methodId = owner == null ? -1 : owner.getMethodId();
+        this.cohesion = owner == null ? null : owner.getCohesion();
+        this.cohesionIndex = owner == null ? -1 : owner.getCohesionIndex();
+        this.checksDeadline = owner != null && owner.hasDeadline();
+        this.assignments = owner == null ? null : owner.getAssignments();
     }
 
     /**
@@ -21,6 +55,8 @@ public class ABCMetricsAnalyzer extends MethodVisitor {
      * Adds one to the assignment count for each occurrence of an assignment operator,
      * excluding constant declarations:
      * =  *=  /=  %=  +=  <<=  >>=  &=  |=  ^=  >>>=
+     * Every store counts unless the class analyzer tracks assignments accurately, then they are counted
+     * at the end of the method.
      *
      * @param opcode   the opcode of the local variable instruction to be visited. This opcode is either
      *                 ILOAD, LLOAD, FLOAD, DLOAD, ALOAD, ISTORE, LSTORE, FSTORE, DSTORE, ASTORE or RET.
@@ -29,8 +65,11 @@ public class ABCMetricsAnalyzer extends MethodVisitor {
      */
     @Override
     public void visitVarInsn(int opcode, int varIndex) {
-        switch (opcode) {
-            case Opcodes.ISTORE, Opcodes.LSTORE, Opcodes.FSTORE, Opcodes.DSTORE, Opcodes.ASTORE -> metrics.increaseA();
+        instruction(opcode);
+        if (assignments == null) {
+            switch (opcode) {
+                case Opcodes.ISTORE, Opcodes.LSTORE, Opcodes.FSTORE, Opcodes.DSTORE, Opcodes.ASTORE -> increaseA();
+            }
         }
 
         super.visitVarInsn(opcode, varIndex);
@@ -51,7 +90,14 @@ public class ABCMetricsAnalyzer extends MethodVisitor {
      */
     @Override
     public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
-        metrics.increaseB();
+        instruction(opcode);
+        if (callGraph != null)
+            callGraph.addCall(methodId, owner, name, descriptor);
+        if (cohesion != null)
+            cohesion.addCall(cohesionIndex, owner, name, descriptor);
+        if (collectors != null)
+            collectors.visitMethodInsn(opcode, owner, name, descriptor);
+        increaseB();
 
         super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
     }
@@ -67,8 +113,11 @@ public class ABCMetricsAnalyzer extends MethodVisitor {
      */
     @Override
     public void visitTypeInsn(int opcode, String type) {
+        instruction(opcode);
+        if (collectors != null)
+            collectors.visitTypeInsn(opcode, type);
         switch (opcode) {
-            case Opcodes.NEW, Opcodes.NEWARRAY, Opcodes.ANEWARRAY, Opcodes.MULTIANEWARRAY -> metrics.increaseB();
+            case Opcodes.NEW, Opcodes.NEWARRAY, Opcodes.ANEWARRAY, Opcodes.MULTIANEWARRAY -> increaseB();
         }
 
         super.visitTypeInsn(opcode, type);
@@ -91,8 +140,9 @@ public class ABCMetricsAnalyzer extends MethodVisitor {
      */
     @Override
     public void visitIntInsn(int opcode, int operand) {
+        instruction(opcode);
         switch (opcode) {
-            case Opcodes.NEW, Opcodes.NEWARRAY, Opcodes.ANEWARRAY, Opcodes.MULTIANEWARRAY -> metrics.increaseB();
+            case Opcodes.NEW, Opcodes.NEWARRAY, Opcodes.ANEWARRAY, Opcodes.MULTIANEWARRAY -> increaseB();
         }
 
         super.visitIntInsn(opcode, operand);
@@ -111,7 +161,8 @@ public class ABCMetricsAnalyzer extends MethodVisitor {
      */
     @Override
     public void visitJumpInsn(int opcode, Label label) {
-        metrics.increaseC();
+        instruction(opcode);
+        increaseC();
 
         super.visitJumpInsn(opcode, label);
     }
@@ -128,7 +179,7 @@ public class ABCMetricsAnalyzer extends MethodVisitor {
      */
     @Override
     public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
-        metrics.increaseC();
+        increaseC();
 
         super.visitTryCatchBlock(start, end, handler, type);
     }
@@ -143,14 +194,138 @@ public class ABCMetricsAnalyzer extends MethodVisitor {
      */
     @Override
     public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+        instruction(LOOKUPSWITCH);
         for (int ignored : keys)
-            metrics.increaseC();
+            increaseC();
 
         super.visitLookupSwitchInsn(dflt, keys, labels);
     }
 
+    //Instructions below only feed the collectors, the call graph and the cohesion
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+        if (callGraph != null)
+            callGraph.addMethodAnnotation(methodId, descriptor);
+
+        return super.visitAnnotation(descriptor, visible);
+    }
+
+    @Override
+    public void visitInsn(int opcode) {
+        instruction(opcode);
+
+        super.visitInsn(opcode);
+    }
+
+    @Override
+    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+        instruction(opcode);
+        if (callGraph != null && (opcode == GETSTATIC || opcode == PUTSTATIC))
+            callGraph.addStaticAccess(methodId, owner);
+        if (cohesion != null && (opcode == GETFIELD || opcode == PUTFIELD))
+            cohesion.addFieldAccess(cohesionIndex, owner, name);
+        if (collectors != null)
+            collectors.visitFieldInsn(opcode, owner, name, descriptor);
+
+        super.visitFieldInsn(opcode, owner, name, descriptor);
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+                                       Object... bootstrapMethodArguments) {
+        instruction(INVOKEDYNAMIC);
+        //Lambdas and method references call the method handles among the bootstrap arguments
+        for (Object argument : bootstrapMethodArguments)
+            addCall(argument);
+
+        super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+    }
+
+    @Override
+    public void visitLdcInsn(Object value) {
+        instruction(LDC);
+        addCall(value);
+
+        super.visitLdcInsn(value);
+    }
+
+    @Override
+    public void visitIincInsn(int varIndex, int increment) {
+        instruction(IINC);
+
+        super.visitIincInsn(varIndex, increment);
+    }
+
+    @Override
+    public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+        instruction(TABLESWITCH);
+
+        super.visitTableSwitchInsn(min, max, dflt, labels);
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+        instruction(MULTIANEWARRAY);
+
+        super.visitMultiANewArrayInsn(descriptor, numDimensions);
+    }
+
+    @Override
+    public void visitMaxs(int maxStack, int maxLocals) {
+        if (collectors != null)
+            collectors.visitCodeSize(owner.getMethodSize(), maxStack, maxLocals);
+
+        super.visitMaxs(maxStack, maxLocals);
+    }
+
+    @Override
+    public void visitEnd() {
+        if (assignments != null) {
+            for (int i = assignments.endMethod(); i > 0; i--)
+                increaseA();
+        }
+        if (owner != null)
+            owner.methodAnalyzed(methodSignature, methodMetrics);
+
+        super.visitEnd();
+    }
+
+    private void instruction(int opcode) {
+        if (collectors != null)
+            collectors.visitInstruction(opcode);
+        if (checksDeadline)
+            owner.instructionVisited();
+    }
+
+    private void addCall(Object constant) {
+        if (callGraph != null && constant instanceof Handle) {
+            Handle handle = (Handle) constant;
+            callGraph.addCall(methodId, handle.getOwner(), handle.getName(), handle.getDesc());
+        }
+    }
+
+    private void increaseA() {
+        metrics.increaseA();
+        methodMetrics.increaseA();
+    }
+
+    private void increaseB() {
+        metrics.increaseB();
+        methodMetrics.increaseB();
+    }
+
+    private void increaseC() {
+        metrics.increaseC();
+        methodMetrics.increaseC();
+    }
+
     public Metrics getMetrics() {
         return metrics;
     }
+
+    public Metrics getMethodMetrics() {
+        return methodMetrics;
+    }
 }
 
@@ -0,0 +1,403 @@
+package org.itmo.lab1.visitor;
+
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.util.Arrays;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Assignment count of a method that tells apart the stores a plain count of xSTORE instructions doesn't.
+ * The source of every operand stack slot is tracked within basic blocks as a constant, a load of a local,
+ * a caught exception or a computed value, so that
+ * <ul>
+ *     <li>a local stored once with a constant is a constant declaration and doesn't count</li>
+ *     <li>a local stored once with another local is an alias, like the compiler temporaries of for-each
+ *     over an array or of switch on a string, and doesn't count</li>
+ *     <li>a store of a caught exception, a catch parameter or a finally temporary, doesn't count</li>
+ *     <li>a duplicate stored right before MONITORENTER is the lock temporary of synchronized and doesn't count</li>
+ *     <li>IINC counts, it is {@code ++} or {@code +=}</li>
+ * </ul>
+ * Method parameters count as stored once already. The tracker is chained behind the method analyzer
+ * and reused for all methods of a class, its arrays only grow. A jump target gets the stack depth
+ * at the jump in {@link Label#info}, and values reaching a label by a jump are computed.
+ */
+class AssignmentTracker extends MethodVisitor {
+    private static final byte COMPUTED = 0;
+    private static final byte CONSTANT = 1;
+    private static final byte LOAD = 2;
+    private static final byte CAUGHT = 3;
+
+    //Marks handler labels instead of a stack depth
+    private static final Object HANDLER = new Object();
+
+    //Stack slots popped and pushed by the instructions without operands that don't need special handling
+    private static final byte[] POPS = new byte[256];
+    private static final byte[] PUSHES = new byte[256];
+
+    static {
+        effect(IALOAD, SALOAD, 2, 1);
+        effect(LALOAD, LALOAD, 2, 2);
+        effect(DALOAD, DALOAD, 2, 2);
+        effect(IASTORE, SASTORE, 3, 0);
+        effect(LASTORE, LASTORE, 4, 0);
+        effect(DASTORE, DASTORE, 4, 0);
+        effect(POP, POP, 1, 0);
+        effect(POP2, POP2, 2, 0);
+        //Arithmetic comes in int, long, float and double variants
+        for (int opcode = IADD; opcode <= DREM; opcode += 4) {
+            effect(opcode, opcode, 2, 1);
+            effect(opcode + 1, opcode + 1, 4, 2);
+            effect(opcode + 2, opcode + 2, 2, 1);
+            effect(opcode + 3, opcode + 3, 4, 2);
+        }
+        effect(INEG, INEG, 1, 1);
+        effect(LNEG, LNEG, 2, 2);
+        effect(FNEG, FNEG, 1, 1);
+        effect(DNEG, DNEG, 2, 2);
+        for (int opcode = ISHL; opcode <= LUSHR; opcode += 2) {
+            effect(opcode, opcode, 2, 1);
+            effect(opcode + 1, opcode + 1, 3, 2);
+        }
+        for (int opcode = IAND; opcode <= LXOR; opcode += 2) {
+            effect(opcode, opcode, 2, 1);
+            effect(opcode + 1, opcode + 1, 4, 2);
+        }
+        effect(I2L, I2L, 1, 2);
+        effect(I2F, I2F, 1, 1);
+        effect(I2D, I2D, 1, 2);
+        effect(L2I, L2F, 2, 1);
+        effect(L2D, L2D, 2, 2);
+        effect(F2I, F2I, 1, 1);
+        effect(F2L, F2D, 1, 2);
+        effect(D2I, D2I, 2, 1);
+        effect(D2L, D2L, 2, 2);
+        effect(D2F, D2F, 2, 1);
+        effect(I2B, I2S, 1, 1);
+        effect(LCMP, LCMP, 4, 1);
+        effect(FCMPL, FCMPG, 2, 1);
+        effect(DCMPL, DCMPG, 4, 1);
+        effect(ARRAYLENGTH, ARRAYLENGTH, 1, 1);
+        effect(MONITORENTER, MONITOREXIT, 1, 0);
+    }
+
+    private static void effect(int from, int to, int pops, int pushes) {
+        for (int opcode = from; opcode <= to; opcode++) {
+            POPS[opcode] = (byte) pops;
+            PUSHES[opcode] = (byte) pushes;
+        }
+    }
+
+    private byte[] stack = new byte[16];
+    private int depth;
+    private boolean reachable;
+
+    //Per local: stores in the method and the source of the first one
+    private int[] stores = new int[16];
+    private byte[] firstStores = new byte[16];
+    private int locals;
+
+    private int assignments;
+    private int opcode;
+    private int previousOpcode;
+    //Local stored with a duplicate by the last instruction
+    private int lockStore;
+
+    AssignmentTracker() {
+        super(ASM8);
+    }
+
+    void startMethod(int access, String descriptor) {
+        Arrays.fill(stores, 0, locals, 0);
+        depth = 0;
+        reachable = true;
+        assignments = 0;
+        opcode = previousOpcode = -1;
+        lockStore = -1;
+
+        //Arguments size includes this
+        int parameters = (Type.getArgumentsAndReturnSizes(descriptor) >> 2) - ((access & ACC_STATIC) != 0 ? 1 : 0);
+        locals = 0;
+        ensureLocals(parameters);
+        for (int i = 0; i < parameters; i++) {
+            stores[i] = 1;
+            firstStores[i] = COMPUTED;
+        }
+    }
+
+    /**
+     * @return assignments of the method
+     */
+    int endMethod() {
+        int result = assignments;
+        for (int i = 0; i < locals; i++)
+            if (stores[i] == 1 && (firstStores[i] == CONSTANT || firstStores[i] == LOAD))
+                result--;
+        return result;
+    }
+
+    @Override
+    public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+        handler.info = HANDLER;
+    }
+
+    @Override
+    public void visitLabel(Label label) {
+        Object info = label.info;
+        if (info == HANDLER) {
+            depth = 0;
+            push(CAUGHT, 1);
+        } else if (info != null) {
+            depth = (Integer) info;
+            ensureStack(depth);
+            Arrays.fill(stack, 0, depth, COMPUTED);
+        } else if (!reachable) {
+            depth = 0;
+        }
+        reachable = true;
+    }
+
+    @Override
+    public void visitInsn(int opcode) {
+        instruction(opcode);
+        switch (opcode) {
+            case ACONST_NULL, ICONST_M1, ICONST_0, ICONST_1, ICONST_2, ICONST_3, ICONST_4, ICONST_5,
+                 FCONST_0, FCONST_1, FCONST_2 -> push(CONSTANT, 1);
+            case LCONST_0, LCONST_1, DCONST_0, DCONST_1 -> push(CONSTANT, 2);
+            case DUP -> {
+                require(1);
+                push(stack[depth - 1], 1);
+            }
+            case DUP_X1 -> insert(1, 2);
+            case DUP_X2 -> insert(1, 3);
+            case DUP2 -> insert(2, 2);
+            case DUP2_X1 -> insert(2, 3);
+            case DUP2_X2 -> insert(2, 4);
+            case SWAP -> {
+                require(2);
+                byte top = stack[depth - 1];
+                stack[depth - 1] = stack[depth - 2];
+                stack[depth - 2] = top;
+            }
+            case IRETURN, LRETURN, FRETURN, DRETURN, ARETURN, RETURN, ATHROW -> {
+                depth = 0;
+                reachable = false;
+            }
+            default -> {
+                pop(POPS[opcode]);
+                push(COMPUTED, PUSHES[opcode]);
+            }
+        }
+    }
+
+    @Override
+    public void visitIntInsn(int opcode, int operand) {
+        instruction(opcode);
+        if (opcode == NEWARRAY) {
+            pop(1);
+            push(COMPUTED, 1);
+        } else {
+            push(CONSTANT, 1);
+        }
+    }
+
+    @Override
+    public void visitVarInsn(int opcode, int varIndex) {
+        instruction(opcode);
+        switch (opcode) {
+            case ILOAD, FLOAD, ALOAD -> push(LOAD, 1);
+            case LLOAD, DLOAD -> push(LOAD, 2);
+            case ISTORE, FSTORE, ASTORE -> store(varIndex, 1);
+            case LSTORE, DSTORE -> store(varIndex, 2);
+            default -> reachable = false;
+        }
+    }
+
+    @Override
+    public void visitIincInsn(int varIndex, int increment) {
+        instruction(IINC);
+        ensureLocals(varIndex + 1);
+        if (stores[varIndex]++ == 0)
+            firstStores[varIndex] = COMPUTED;
+        assignments++;
+    }
+
+    @Override
+    public void visitTypeInsn(int opcode, String type) {
+        instruction(opcode);
+        if (opcode != NEW)
+            pop(1);
+        push(COMPUTED, 1);
+    }
+
+    @Override
+    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+        instruction(opcode);
+        int size = descriptor.charAt(0) == 'J' || descriptor.charAt(0) == 'D' ? 2 : 1;
+        switch (opcode) {
+            case GETSTATIC -> push(COMPUTED, size);
+            case PUTSTATIC -> pop(size);
+            case GETFIELD -> {
+                pop(1);
+                push(COMPUTED, size);
+            }
+            default -> pop(size + 1);
+        }
+    }
+
+    @Override
+    public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+        instruction(opcode);
+        invoke(descriptor, opcode != INVOKESTATIC);
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+                                       Object... bootstrapMethodArguments) {
+        instruction(INVOKEDYNAMIC);
+        invoke(descriptor, false);
+    }
+
+    @Override
+    public void visitJumpInsn(int opcode, Label label) {
+        instruction(opcode);
+        switch (opcode) {
+            case IFEQ, IFNE, IFLT, IFGE, IFGT, IFLE, IFNULL, IFNONNULL -> pop(1);
+            case IF_ICMPEQ, IF_ICMPNE, IF_ICMPLT, IF_ICMPGE, IF_ICMPGT, IF_ICMPLE, IF_ACMPEQ, IF_ACMPNE -> pop(2);
+        }
+
+        if (opcode == JSR) {
+            //The subroutine starts with the return address on the stack
+            jumpTo(label, depth + 1);
+        } else {
+            jumpTo(label, depth);
+            if (opcode == GOTO)
+                reachable = false;
+        }
+    }
+
+    @Override
+    public void visitLdcInsn(Object value) {
+        instruction(LDC);
+        boolean wide = value instanceof Long || value instanceof Double
+                || value instanceof ConstantDynamic && ((ConstantDynamic) value).getSize() == 2;
+        push(CONSTANT, wide ? 2 : 1);
+    }
+
+    @Override
+    public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+        instruction(TABLESWITCH);
+        switchTo(dflt, labels);
+    }
+
+    @Override
+    public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+        instruction(LOOKUPSWITCH);
+        switchTo(dflt, labels);
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+        instruction(MULTIANEWARRAY);
+        pop(numDimensions);
+        push(COMPUTED, 1);
+    }
+
+    private void instruction(int opcode) {
+        previousOpcode = this.opcode;
+        this.opcode = opcode;
+
+        if (opcode == MONITORENTER && lockStore != -1) {
+            stores[lockStore]--;
+            assignments--;
+        }
+        lockStore = -1;
+    }
+
+    private void store(int varIndex, int size) {
+        byte source = depth >= size ? stack[depth - 1] : COMPUTED;
+        pop(size);
+        if (source == CAUGHT)
+            return;
+
+        ensureLocals(varIndex + 1);
+        if (stores[varIndex]++ == 0)
+            firstStores[varIndex] = source;
+        assignments++;
+        if (previousOpcode == DUP)
+            lockStore = varIndex;
+    }
+
+    private void invoke(String descriptor, boolean hasReceiver) {
+        int sizes = Type.getArgumentsAndReturnSizes(descriptor);
+        //Arguments size includes the receiver
+        pop((sizes >> 2) - (hasReceiver ? 0 : 1));
+        push(COMPUTED, sizes & 3);
+    }
+
+    private void switchTo(Label dflt, Label[] labels) {
+        pop(1);
+        jumpTo(dflt, depth);
+        for (Label label : labels)
+            jumpTo(label, depth);
+        reachable = false;
+    }
+
+    private static void jumpTo(Label label, int depth) {
+        if (label.info == null)
+            label.info = depth;
+    }
+
+    /**
+     * Copy the top {@code size} slots below the {@code under} slots under them, as DUP_X1 and the like.
+     */
+    private void insert(int size, int under) {
+        require(under);
+        ensureStack(depth + size);
+        System.arraycopy(stack, depth - under, stack, depth - under + size, under);
+        System.arraycopy(stack, depth, stack, depth - under, size);
+        depth += size;
+    }
+
+    private void push(byte source, int size) {
+        ensureStack(depth + size);
+        for (int i = 0; i < size; i++)
+            stack[depth++] = source;
+    }
+
+    private void pop(int size) {
+        depth = Math.max(depth - size, 0);
+    }
+
+    /**
+     * Make sure the stack holds at least {@code size} slots, missing ones at the bottom are computed.
+     * The stack can only run short after bytecode the tracker doesn't follow, e.g. subroutines.
+     */
+    private void require(int size) {
+        if (depth >= size)
+            return;
+
+        ensureStack(size);
+        System.arraycopy(stack, 0, stack, size - depth, depth);
+        Arrays.fill(stack, 0, size - depth, COMPUTED);
+        depth = size;
+    }
+
+    private void ensureStack(int size) {
+        if (size > stack.length)
+            stack = Arrays.copyOf(stack, Math.max(size, 2 * stack.length));
+    }
+
+    private void ensureLocals(int size) {
+        if (size > stores.length) {
+            int length = Math.max(size, 2 * stores.length);
+            stores = Arrays.copyOf(stores, length);
+            firstStores = Arrays.copyOf(firstStores, length);
+        }
+        locals = Math.max(locals, size);
+    }
+}
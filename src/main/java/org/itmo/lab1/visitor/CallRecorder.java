@@ -0,0 +1,59 @@
+package org.itmo.lab1.visitor;
+
+import org.itmo.lab1.util.CallGraph;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Adds the calls of a method left out of the metrics to the call graph, so that the methods it calls
+ * are not taken for dead code. Lambda bodies, accessors and bridges are often the only callers of a method.
+ */
+class CallRecorder extends MethodVisitor {
+    private final CallGraph callGraph;
+    private final int methodId;
+
+    CallRecorder(CallGraph callGraph, int methodId) {
+        super(ASM8);
+        this.callGraph = callGraph;
+        this.methodId = methodId;
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+        callGraph.addMethodAnnotation(methodId, descriptor);
+        return null;
+    }
+
+    @Override
+    public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+        callGraph.addCall(methodId, owner, name, descriptor);
+    }
+
+    @Override
+    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+        if (opcode == GETSTATIC || opcode == PUTSTATIC)
+            callGraph.addStaticAccess(methodId, owner);
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+                                       Object... bootstrapMethodArguments) {
+        for (Object argument : bootstrapMethodArguments)
+            addCall(argument);
+    }
+
+    @Override
+    public void visitLdcInsn(Object value) {
+        addCall(value);
+    }
+
+    private void addCall(Object constant) {
+        if (constant instanceof Handle) {
+            Handle handle = (Handle) constant;
+            callGraph.addCall(methodId, handle.getOwner(), handle.getName(), handle.getDesc());
+        }
+    }
+}
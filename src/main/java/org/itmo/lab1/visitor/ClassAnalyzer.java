@@ -1,5 +1,10 @@
 package org.itmo.lab1.visitor;
 
+import org.itmo.lab1.util.CallGraph;
+import org.itmo.lab1.util.ClassCohesion;
+import org.itmo.lab1.util.CohesionMetrics;
+import org.itmo.lab1.util.MethodFilter;
+import org.itmo.lab1.util.MetricDistributions;
 import org.itmo.lab1.util.Metrics;
 import org.objectweb.asm.*;
 
@@ -9,25 +14,184 @@ import static org.objectweb.asm.Opcodes.*;
 
 public class ClassAnalyzer extends ClassVisitor {
     private Metrics metrics;
+    private final MethodFilter filter;
     private String className;
     private String superName;
     private boolean isInterface;
     private List<String> methodSignatures;
     private Set<String> interfaces;
     private int methodsCount;
+    private int skippedMethods;
+    private boolean skipsAllMethods;
+    private double maxMethodAbc;
+    private String maxAbcMethod;
+    private MetricDistributions distributions;
+    //ABC and size of the analyzed methods, they reach the distributions with the whole class
+    private double[] methodAbcs;
+    private int[] codeSizes;
+    private int distributedMethods;
+    private int[] methodSizes;
+    private int methodIndex;
+    private int methodSize;
+    private CollectorChain collectors;
+    private AssignmentTracker assignments;
+    private boolean collectsMethod;
+    private CallGraph callGraph;
+    private int methodId;
+    private CohesionMetrics cohesionMetrics;
+    private ClassCohesion cohesion;
+    private int cohesionIndex;
+    private int maxMethodSize;
+    private int oversizedMethods;
+    private long deadline = Long.MAX_VALUE;
+    private int instructions;
+    private boolean partial;
 
     public ClassAnalyzer() {
+        this(null);
+    }
+
+    /**
+     * @param filter methods left out of the metrics, may be {@literal null}
+     */
+    public ClassAnalyzer(MethodFilter filter) {
         super(ASM8);
+        this.filter = filter;
         metrics = new Metrics();
         methodSignatures = new ArrayList<>();
         methodsCount = 0;
     }
 
+    /**
+     * @param methodSizes code lengths of the methods in class file order, see
+     *                    {@link org.itmo.lab1.util.MethodSizes}
+     */
+    public void setMethodSizes(int[] methodSizes) {
+        this.methodSizes = methodSizes;
+    }
+
+    /**
+     * Feed the distributions with the methods and fields of the class at its end, an abandoned class
+     * adds nothing. Methods are only counted if their sizes are set.
+     */
+    public void setDistributions(MetricDistributions distributions) {
+        this.distributions = distributions;
+        methodAbcs = new double[16];
+        codeSizes = new int[16];
+    }
+
+    /**
+     * Feed the collectors with the class, its fields and the analyzed methods with code.
+     */
+    public void setCollectors(CollectorChain collectors) {
+        this.collectors = collectors;
+    }
+
+    CollectorChain getCollectors() {
+        return collectors;
+    }
+
+    /**
+     * @return code length of the method returned by the last {@link #visitMethod} call, 0 without method sizes
+     */
+    int getMethodSize() {
+        return methodSize;
+    }
+
+    /**
+     * Count assignments with {@link AssignmentTracker}, leaving out constant declarations, aliases
+     * and compiler temporaries, instead of counting every store to a local.
+     */
+    public void setAccurateAssignments(boolean accurate) {
+        this.assignments = accurate ? new AssignmentTracker() : null;
+    }
+
+    AssignmentTracker getAssignments() {
+        return assignments;
+    }
+
+    /**
+     * Add the class, its methods and their calls to the graph. Methods skipped by the filter
+     * or by {@link #setMaxMethodSize} are added too, with their calls only.
+     */
+    public void setCallGraph(CallGraph callGraph) {
+        this.callGraph = callGraph;
+    }
+
+    CallGraph getCallGraph() {
+        return callGraph;
+    }
+
+    /**
+     * Count methods longer than the given bytecode length without analyzing their bodies.
+     * Collectors that need code sizes still get theirs. Needs the method sizes, see {@link #setMethodSizes}.
+     */
+    public void setMaxMethodSize(int maxMethodSize) {
+        this.maxMethodSize = maxMethodSize;
+    }
+
+    /**
+     * Abandon the analysis with {@link DeadlineExceededException} once {@link System#nanoTime()}
+     * passes the deadline. It is checked at every method and every 1024 instructions.
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    boolean hasDeadline() {
+        return deadline != Long.MAX_VALUE;
+    }
+
+    /**
+     * Called by the method analyzer for every instruction if there is a deadline.
+     */
+    void instructionVisited() {
+        if ((++instructions & 1023) == 0)
+            checkDeadline();
+    }
+
+    private void checkDeadline() {
+        if (System.nanoTime() > deadline)
+            throw new DeadlineExceededException(className);
+    }
+
+    /**
+     * Compute the cohesion of the class from the fields its methods access and add it to the metrics.
+     */
+    public void setCohesion(CohesionMetrics cohesionMetrics) {
+        this.cohesionMetrics = cohesionMetrics;
+    }
+
+    ClassCohesion getCohesion() {
+        return cohesion;
+    }
+
+    /**
+     * @return index in the class cohesion of the method returned by the last {@link #visitMethod} call
+     */
+    int getCohesionIndex() {
+        return cohesionIndex;
+    }
+
+    /**
+     * @return id in the call graph of the method returned by the last {@link #visitMethod} call
+     */
+    int getMethodId() {
+        return methodId;
+    }
+
     public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
         this.isInterface = (access & ACC_INTERFACE) != 0;
         this.className = name;
         this.superName = superName;
         this.interfaces = new HashSet<>(Arrays.asList(interfaces));
+        this.skipsAllMethods = filter != null && filter.skipsClass(name);
+        if (callGraph != null)
+            callGraph.addClass(name, superName, interfaces, access);
+        if (cohesionMetrics != null)
+            cohesion = new ClassCohesion(name);
+        if (collectors != null)
+            collectors.visitClass(access, name, superName, interfaces);
 
     }
 
@@ -38,6 +202,8 @@ public class ClassAnalyzer extends ClassVisitor {
     }
 
     public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+        if (callGraph != null)
+            callGraph.addClassAnnotation(className, desc);
         return null;
     }
 
@@ -49,20 +215,98 @@ public class ClassAnalyzer extends ClassVisitor {
 
     public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
         metrics.increaseFields();
+        if (cohesion != null)
+            cohesion.addField(access, name);
+        if (collectors != null)
+            collectors.visitField(access, name, desc);
         return null;
     }
 
     public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        methodSize = methodSizes == null ? 0 : methodSizes[methodIndex++];
+        if (skipsAllMethods || filter != null && filter.skipsMethod(access, name)) {
+            skippedMethods++;
+            return recordCalls(access, name, desc);
+        }
+
         methodsCount++;
         String methodSignature = name + retrieveArgs(desc);
 
         if (!methodSignature.contains("<init>"))
             methodSignatures.add(methodSignature);
 
-        return new ABCMetricsAnalyzer(metrics);
+        if (maxMethodSize > 0 && methodSize > maxMethodSize) {
+            oversizedMethods++;
+            partial = true;
+            MethodVisitor calls = recordCalls(access, name, desc);
+            if (collectors == null || !collectors.needsCodeSizes())
+                return calls;
+
+            collectors.visitMethod(access, name, desc);
+            return new CodeSizeReporter(collectors, methodSize, calls);
+        }
+        if (hasDeadline())
+            checkDeadline();
+
+        if (callGraph != null)
+            methodId = callGraph.addMethod(className, access, name, desc, methodSize);
+        if (cohesion != null)
+            cohesionIndex = cohesion.addMethod(access, name, desc);
+        collectsMethod = collectors != null && (access & (ACC_ABSTRACT | ACC_NATIVE)) == 0;
+        if (collectsMethod)
+            collectors.visitMethod(access, name, desc);
+        if (assignments != null)
+            assignments.startMethod(access, desc);
+
+        return new ABCMetricsAnalyzer(metrics, this, methodSignature);
+    }
+
+    /**
+     * Methods left out of the metrics still call others, the call graph gets them without analysis.
+     */
+    private MethodVisitor recordCalls(int access, String name, String desc) {
+        if (callGraph == null)
+            return null;
+
+        methodId = callGraph.addMethod(className, access, name, desc, methodSize);
+        return new CallRecorder(callGraph, methodId);
+    }
+
+    /**
+     * Called by the method analyzer once the method body has been visited.
+     */
+    void methodAnalyzed(String methodSignature, Metrics methodMetrics) {
+        if (maxAbcMethod == null || methodMetrics.getAbc() > maxMethodAbc) {
+            maxMethodAbc = methodMetrics.getAbc();
+            maxAbcMethod = methodSignature;
+        }
+
+        //Abstract and native methods have no code
+        if (distributions != null && methodSize > 0) {
+            if (distributedMethods == methodAbcs.length) {
+                methodAbcs = Arrays.copyOf(methodAbcs, distributedMethods * 2);
+                codeSizes = Arrays.copyOf(codeSizes, distributedMethods * 2);
+            }
+            methodAbcs[distributedMethods] = methodMetrics.getAbc();
+            codeSizes[distributedMethods] = methodSize;
+            distributedMethods++;
+        }
+
+        if (collectsMethod)
+            collectors.visitMethodEnd();
     }
 
     public void visitEnd() {
+        if (distributions != null) {
+            for (int i = 0; i < distributedMethods; i++)
+                distributions.addMethod(methodAbcs[i], codeSizes[i]);
+            distributions.addClass(metrics.getFieldCount());
+        }
+
+        if (collectors != null)
+            collectors.visitClassEnd();
+        if (cohesion != null)
+            cohesionMetrics.add(cohesion);
     }
 
     public Metrics getMetrics() {
@@ -98,5 +342,45 @@ public class ClassAnalyzer extends ClassVisitor {
     public int getMethodsCount() {
         return methodsCount;
     }
-}
 
+    public int getSkippedMethods() {
+        return skippedMethods;
+    }
+
+    /**
+     * @return methods counted without their bodies because of {@link #setMaxMethodSize}
+     */
+    public int getOversizedMethods() {
+        return oversizedMethods;
+    }
+
+    /**
+     * Mark the metrics of the class as covering only a part of its code.
+     */
+    public void markPartial() {
+        partial = true;
+    }
+
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public double getMaxMethodAbc() {
+        return maxMethodAbc;
+    }
+
+    public String getMaxAbcMethod() {
+        return maxAbcMethod;
+    }
+
+    /**
+     * Thrown when the analysis of a class runs past its deadline.
+     */
+    public static class DeadlineExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public DeadlineExceededException(String className) {
+            super("Analysis of " + className + " exceeded its deadline", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.itmo.lab1.visitor;
+
+import org.objectweb.asm.MethodVisitor;
+
+import static org.objectweb.asm.Opcodes.ASM8;
+
+/**
+ * Passes the code size of a method counted without its body to the collectors that need it,
+ * e.g. so that the JIT report still sees the largest methods. Its instructions are not visited.
+ */
+class CodeSizeReporter extends MethodVisitor {
+    private final CollectorChain collectors;
+    private final int methodSize;
+
+    /**
+     * @param next receives the body too, may be {@literal null}
+     */
+    CodeSizeReporter(CollectorChain collectors, int methodSize, MethodVisitor next) {
+        super(ASM8, next);
+        this.collectors = collectors;
+        this.methodSize = methodSize;
+    }
+
+    @Override
+    public void visitMaxs(int maxStack, int maxLocals) {
+        collectors.visitCodeSize(methodSize, maxStack, maxLocals);
+
+        super.visitMaxs(maxStack, maxLocals);
+    }
+
+    @Override
+    public void visitEnd() {
+        collectors.visitMethodEnd();
+
+        super.visitEnd();
+    }
+}
@@ -0,0 +1,115 @@
+package org.itmo.lab1.visitor;
+
+import org.itmo.lab1.util.MetricCollector;
+
+import java.util.*;
+
+import static org.itmo.lab1.util.MetricCollector.*;
+
+/**
+ * Collectors of one analysis fused into the class and method analyzers. Collectors are grouped
+ * by event into flat arrays once, so an event is a loop over the collectors that asked for it
+ * instead of a chain of delegating visitors.
+ */
+public class CollectorChain {
+    private static final MetricCollector<?>[] NONE = new MetricCollector<?>[0];
+
+    private final MetricCollector<?>[] all;
+    private final MetricCollector<?>[] classes;
+    private final MetricCollector<?>[] fields;
+    private final MetricCollector<?>[] methods;
+    private final MetricCollector<?>[] instructions;
+    private final MetricCollector<?>[] methodInsns;
+    private final MetricCollector<?>[] fieldInsns;
+    private final MetricCollector<?>[] typeInsns;
+    private final MetricCollector<?>[] codeSizes;
+
+    public CollectorChain(List<? extends MetricCollector<?>> collectors) {
+        all = collectors.toArray(NONE);
+        classes = select(CLASSES);
+        fields = select(FIELDS);
+        methods = select(METHODS);
+        instructions = select(INSTRUCTIONS);
+        methodInsns = select(METHOD_INSNS);
+        fieldInsns = select(FIELD_INSNS);
+        typeInsns = select(TYPE_INSNS);
+        codeSizes = select(CODE_SIZES);
+    }
+
+    private MetricCollector<?>[] select(int event) {
+        List<MetricCollector<?>> selected = new ArrayList<>();
+        for (MetricCollector<?> collector : all)
+            if ((collector.events() & event) != 0)
+                selected.add(collector);
+        return selected.toArray(NONE);
+    }
+
+    public boolean isEmpty() {
+        return all.length == 0;
+    }
+
+    /**
+     * @return true if some collector needs the code lengths of the methods, see {@link org.itmo.lab1.util.MethodSizes}
+     */
+    public boolean needsCodeSizes() {
+        return codeSizes.length > 0;
+    }
+
+    void visitClass(int access, String className, String superName, String[] interfaces) {
+        for (MetricCollector<?> collector : classes)
+            collector.visitClass(access, className, superName, interfaces);
+    }
+
+    void visitField(int access, String name, String descriptor) {
+        for (MetricCollector<?> collector : fields)
+            collector.visitField(access, name, descriptor);
+    }
+
+    void visitMethod(int access, String name, String descriptor) {
+        for (MetricCollector<?> collector : methods)
+            collector.visitMethod(access, name, descriptor);
+    }
+
+    void visitInstruction(int opcode) {
+        for (MetricCollector<?> collector : instructions)
+            collector.visitInstruction(opcode);
+    }
+
+    void visitMethodInsn(int opcode, String owner, String name, String descriptor) {
+        for (MetricCollector<?> collector : methodInsns)
+            collector.visitMethodInsn(opcode, owner, name, descriptor);
+    }
+
+    void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+        for (MetricCollector<?> collector : fieldInsns)
+            collector.visitFieldInsn(opcode, owner, name, descriptor);
+    }
+
+    void visitTypeInsn(int opcode, String type) {
+        for (MetricCollector<?> collector : typeInsns)
+            collector.visitTypeInsn(opcode, type);
+    }
+
+    void visitCodeSize(int length, int maxStack, int maxLocals) {
+        for (MetricCollector<?> collector : codeSizes)
+            collector.visitCodeSize(length, maxStack, maxLocals);
+    }
+
+    void visitMethodEnd() {
+        for (MetricCollector<?> collector : methods)
+            collector.visitMethodEnd();
+    }
+
+    void visitClassEnd() {
+        for (MetricCollector<?> collector : classes)
+            collector.visitClassEnd();
+    }
+
+    /**
+     * Let every collector forget the class whose analysis was abandoned.
+     */
+    public void discardClass() {
+        for (MetricCollector<?> collector : all)
+            collector.discardClass();
+    }
+}
@@ -0,0 +1,107 @@
+package org.itmo.lab1;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CliTest {
+    @TempDir
+    Path dir;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    private int run(String... args) throws IOException {
+        return Cli.run(args, new PrintStream(out, true, StandardCharsets.UTF_8),
+                new PrintStream(err, true, StandardCharsets.UTF_8));
+    }
+
+    private String jar() throws IOException {
+        return Fixtures.jar(dir.resolve("a.jar"), JarMetricsTest.Complex.class, JarMetricsTest.Simple.class)
+                .toString();
+    }
+
+    @Test
+    void violationExitsWithOne() throws IOException {
+        assertEquals(1, run("--output=-", "--max-class-abc=5", jar()));
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("Budget violation: "), err.toString());
+        //A stopped scan has no totals to print
+        assertEquals("", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void budgetKeptExitsWithZero() throws IOException {
+        assertEquals(0, run("--output=-", "--max-class-abc=100", jar()));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("\"methods\": 3"), out.toString());
+    }
+
+    @Test
+    void nothingIncludedPrintsEmptyMetrics() throws IOException {
+        assertEquals(0, run("--output=-", "--include=nothing/**", jar()));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("\"excludedClasses\": 2"), out.toString());
+    }
+
+    @Test
+    void collectorsAreLoadedByName() throws IOException {
+        String collector = "--collector=org.itmo.lab1.util.MetricCollectorTest$Structure";
+
+        assertEquals(0, run("--output=-", collector, jar()));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("\"structure\""), out.toString());
+        assertEquals(2, run("--output=-", collector, collector, jar()));
+        assertEquals(2, run("--output=-", "--collector=org.itmo.lab1.CliTest", jar()));
+    }
+
+    @Test
+    void jarIsReadFromStdin() throws IOException {
+        String jar = jar();
+        assertEquals(0, run("--output=-", "--format=text", jar));
+        String expected = out.toString(StandardCharsets.UTF_8).replace(jar, "stdin");
+        out.reset();
+
+        InputStream stdin = System.in;
+        try (InputStream in = Files.newInputStream(Path.of(jar))) {
+            System.setIn(in);
+            assertEquals(0, run("--output=-", "--format=text", "-"));
+        } finally {
+            System.setIn(stdin);
+        }
+        assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+
+        assertEquals(2, run("--output=-", "-", jar));
+        assertEquals(2, run("--output=-", "--sample=0.5", "-"));
+    }
+
+    @Test
+    void badUsageExitsWithTwo() throws IOException {
+        assertEquals(2, run("--output=-", "--max-class-abc=many", jar()));
+        assertEquals(2, run("--unknown", jar()));
+        assertEquals(2, run("--output=-"));
+    }
+
+    @Test
+    void malformedSystemPropertyExitsWithTwo() throws IOException {
+        System.setProperty("jarmetrics.gate.maxClassAbc", "many");
+        try {
+            assertEquals(2, run("--output=-", jar()));
+            assertTrue(err.toString(StandardCharsets.UTF_8).contains("many"), err.toString());
+        } finally {
+            System.clearProperty("jarmetrics.gate.maxClassAbc");
+        }
+
+        System.setProperty("jarmetrics.filter.methods", "get(");
+        try {
+            assertEquals(2, run("--output=-", jar()));
+        } finally {
+            System.clearProperty("jarmetrics.filter.methods");
+        }
+    }
+}
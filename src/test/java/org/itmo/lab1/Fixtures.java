@@ -0,0 +1,48 @@
+package org.itmo.lab1;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Class files of the fixture classes nested in the tests, as compiled with the tests.
+ */
+public final class Fixtures {
+    private Fixtures() {
+    }
+
+    public static byte[] bytes(Class<?> type) {
+        String name = type.getName();
+        try (InputStream in = type.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class")) {
+            if (in == null)
+                throw new IllegalArgumentException("No class file of " + name);
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static ClassReader reader(Class<?> type) {
+        return new ClassReader(bytes(type));
+    }
+
+    /**
+     * Write a jar with the class files of the fixtures in the given order.
+     */
+    public static Path jar(Path file, Class<?>... types) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(file))) {
+            for (Class<?> type : types) {
+                out.putNextEntry(new JarEntry(type.getName().replace('.', '/') + ".class"));
+                out.write(bytes(type));
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+}
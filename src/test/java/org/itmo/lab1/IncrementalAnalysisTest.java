@@ -0,0 +1,110 @@
+package org.itmo.lab1;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalAnalysisTest {
+    @TempDir
+    Path dir;
+
+    private Path classes;
+    private Path state;
+    private Path json;
+    private Path changes;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        classes = Files.createDirectories(dir.resolve("classes"));
+        state = dir.resolve("out/classes.state");
+        json = dir.resolve("out/metrics.json");
+        changes = dir.resolve("changes.txt");
+        Files.createDirectories(json.getParent());
+    }
+
+    private static String path(Class<?> type) {
+        return type.getName().replace('.', '/') + ".class";
+    }
+
+    private Path write(Class<?> type) throws IOException {
+        Path classFile = classes.resolve(path(type));
+        Files.createDirectories(classFile.getParent());
+        return Files.write(classFile, Fixtures.bytes(type));
+    }
+
+    private MetricsResult run(String... lines) throws IOException {
+        Files.write(changes, List.of(lines));
+        return IncrementalAnalysis.run(state, json, changes, List.of(classes, dir.resolve("missing")));
+    }
+
+    private MetricsResult jar(Class<?>... types) throws IOException {
+        return new JarMetrics(Fixtures.jar(dir.resolve("expected.jar"), types).toString()).analyze();
+    }
+
+    private static void assertSameTotals(MetricsResult expected, MetricsResult actual) {
+        assertEquals(expected.getClasses(), actual.getClasses());
+        assertEquals(expected.getA(), actual.getA());
+        assertEquals(expected.getB(), actual.getB());
+        assertEquals(expected.getC(), actual.getC());
+        assertEquals(expected.getMethods(), actual.getMethods());
+        assertEquals(expected.getOverridenMethods(), actual.getOverridenMethods());
+        assertEquals(expected.getMaxInheritanceDepth(), actual.getMaxInheritanceDepth());
+    }
+
+    @Test
+    void firstRunParsesEveryClass() throws IOException {
+        write(JarMetricsTest.Shape.class);
+        write(JarMetricsTest.Square.class);
+        write(JarMetricsTest.Cube.class);
+
+        assertSameTotals(jar(JarMetricsTest.Shape.class, JarMetricsTest.Square.class, JarMetricsTest.Cube.class),
+                run());
+        assertTrue(Files.exists(state));
+        assertTrue(Files.exists(json));
+    }
+
+    @Test
+    void laterRunsApplyTheChanges() throws IOException {
+        write(JarMetricsTest.Shape.class);
+        write(JarMetricsTest.Square.class);
+        run();
+
+        Path cube = write(JarMetricsTest.Cube.class);
+        assertSameTotals(jar(JarMetricsTest.Shape.class, JarMetricsTest.Square.class, JarMetricsTest.Cube.class),
+                run("M\t" + path(JarMetricsTest.Cube.class) + "\t" + cube));
+
+        Files.delete(cube);
+        assertSameTotals(jar(JarMetricsTest.Shape.class, JarMetricsTest.Square.class),
+                run("R\t" + path(JarMetricsTest.Cube.class)));
+    }
+
+    @Test
+    void brokenStateParsesEveryClassAgain() throws IOException {
+        write(JarMetricsTest.Shape.class);
+        write(JarMetricsTest.Square.class);
+        Path cube = write(JarMetricsTest.Cube.class);
+        Files.write(state, new byte[]{0, 0, 0, 1, 0, 0, 0, 9, 1});
+
+        assertFalse(new IncrementalAnalysis(state).isRestored());
+        assertSameTotals(jar(JarMetricsTest.Shape.class, JarMetricsTest.Square.class, JarMetricsTest.Cube.class),
+                run("M\t" + path(JarMetricsTest.Cube.class) + "\t" + cube));
+        assertTrue(new IncrementalAnalysis(state).isRestored());
+    }
+
+    @Test
+    void outdatedStateParsesEveryClassAgain() throws IOException {
+        write(JarMetricsTest.Shape.class);
+        write(JarMetricsTest.Square.class);
+        Files.write(state, new byte[]{0, 0, 0, 0, 0, 0, 0, 0});
+
+        assertFalse(new IncrementalAnalysis(state).isRestored());
+        assertSameTotals(jar(JarMetricsTest.Shape.class, JarMetricsTest.Square.class), run());
+    }
+}
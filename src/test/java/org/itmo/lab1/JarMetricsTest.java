@@ -0,0 +1,433 @@
+package org.itmo.lab1;
+
+import org.itmo.lab1.util.ClassBudget;
+import org.itmo.lab1.util.MethodFilter;
+import org.itmo.lab1.util.PackageFilter;
+import org.itmo.lab1.util.PackageRollup;
+import org.itmo.lab1.util.ThresholdGate;
+import org.itmo.lab1.visitor.ClassAnalyzer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JarMetricsTest {
+    @TempDir
+    Path dir;
+
+    static class Complex {
+        int run(int[] values) {
+            int sum = 0;
+            for (int value : values) {
+                if (value > 10)
+                    sum += value * 2;
+                else if (value < 0)
+                    sum -= value;
+                else
+                    sum = Math.max(sum, value);
+            }
+            return sum;
+        }
+    }
+
+    static class Simple {
+    }
+
+    static class Other {
+    }
+
+    static class Generated implements Comparable<Generated> {
+        @Override
+        public int compareTo(Generated other) {
+            return 0;
+        }
+
+        Runnable task() {
+            return () -> System.out.println("task");
+        }
+    }
+
+    abstract static class Shape {
+        abstract double area();
+
+        double scaled(double factor) {
+            return area() * factor;
+        }
+    }
+
+    static class Square extends Shape {
+        private final double side;
+
+        Square(double side) {
+            this.side = side;
+        }
+
+        @Override
+        double area() {
+            return side * side;
+        }
+    }
+
+    static class Cube extends Square {
+        Cube(double side) {
+            super(side);
+        }
+
+        @Override
+        double area() {
+            return 6 * super.area();
+        }
+
+        @Override
+        public String toString() {
+            return "Cube " + area();
+        }
+    }
+
+    /**
+     * Fixtures and some classes of the tool itself, supertypes come after their subclasses.
+     */
+    private Path mixedJar() throws IOException {
+        return Fixtures.jar(dir.resolve("mixed.jar"), Cube.class, Square.class, Shape.class, Complex.class,
+                Simple.class, JarMetrics.class, MetricsResult.class, MetricsResult.Builder.class, Cli.class);
+    }
+
+    private static void assertSameTotals(MetricsResult expected, MetricsResult actual) {
+        assertEquals(expected.getClasses(), actual.getClasses());
+        assertEquals(expected.getA(), actual.getA());
+        assertEquals(expected.getB(), actual.getB());
+        assertEquals(expected.getC(), actual.getC());
+        assertEquals(expected.getMethods(), actual.getMethods());
+        assertEquals(expected.getFieldsAverage(), actual.getFieldsAverage(), 1e-9);
+        assertEquals(expected.getOverridenMethods(), actual.getOverridenMethods());
+        assertEquals(expected.getMaxInheritanceDepth(), actual.getMaxInheritanceDepth());
+        assertEquals(expected.getAverageInheritanceDepth(), actual.getAverageInheritanceDepth(), 1e-9);
+    }
+
+    private static ThresholdGate gate(double maxClassAbc, int maxViolations) {
+        ThresholdGate gate = new ThresholdGate();
+        gate.setMaxClassAbc(maxClassAbc);
+        gate.setMaxViolations(maxViolations);
+        return gate;
+    }
+
+    @Test
+    void boundedModeHasTheSameTotals() throws IOException {
+        String jar = mixedJar().toString();
+        MetricsResult expected = new JarMetrics(jar).analyze();
+        JarMetrics bounded = new JarMetrics(jar);
+        bounded.setBoundedMemory(true);
+        MetricsResult actual = bounded.analyze();
+
+        assertSameTotals(expected, actual);
+        //Every supertype with the method counts, Cube.area overrides both Square.area and Shape.area
+        assertEquals(4, expected.getOverridenMethods());
+        assertEquals(4, expected.getMaxInheritanceDepth());
+    }
+
+    @Test
+    void asyncAnalysisHasTheSameTotals() throws Exception {
+        String jar = mixedJar().toString();
+        MetricsResult expected = new JarMetrics(jar).analyze();
+        List<int[]> progress = new ArrayList<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            MetricsResult actual = new JarMetrics(jar)
+                    .analyzeAsync(executor, (processed, total) -> progress.add(new int[]{processed, total})).get();
+
+            assertSameTotals(expected, actual);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(expected.getClasses(), progress.size());
+        for (int i = 0; i < progress.size(); i++) {
+            assertEquals(i + 1, progress.get(i)[0]);
+            assertEquals(expected.getClasses(), progress.get(i)[1]);
+        }
+    }
+
+    @Test
+    void cancellingStopsTheScanAtTheNextClass() throws Exception {
+        JarMetrics metrics = new JarMetrics(mixedJar().toString());
+        List<Integer> progress = new ArrayList<>();
+        AtomicReference<CompletableFuture<MetricsResult>> future = new AtomicReference<>();
+        //The analysis runs on this thread once the future is known to the listener
+        List<Runnable> tasks = new ArrayList<>();
+        CompletableFuture<MetricsResult> analysis = metrics.analyzeAsync(tasks::add, (processed, total) -> {
+            progress.add(processed);
+            future.get().cancel(false);
+        });
+        future.set(analysis);
+        tasks.forEach(Runnable::run);
+
+        assertTrue(analysis.isCancelled());
+        assertEquals(List.of(1), progress);
+    }
+
+    @Test
+    void failureCompletesTheFutureExceptionally() {
+        CompletableFuture<MetricsResult> future = new JarMetrics(dir.resolve("missing.jar").toString())
+                .analyzeAsync(Runnable::run, null);
+
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(IOException.class, e.getCause());
+    }
+
+    @Test
+    void repeatedAnalysisStartsAfresh() throws IOException {
+        JarMetrics metrics = new JarMetrics(mixedJar().toString());
+        MetricsResult first = metrics.analyze();
+        MetricsResult second = metrics.analyze();
+
+        assertSameTotals(first, second);
+    }
+
+    @Test
+    void filteredMethodsAreCountedAsSkipped() throws IOException {
+        String jar = Fixtures.jar(dir.resolve("a.jar"), Generated.class).toString();
+        //Constructor, compareTo, its bridge, task and the lambda body
+        MetricsResult all = new JarMetrics(jar).analyze();
+        assertEquals(5, all.getMethods());
+        assertEquals(0, all.getSkippedMethods());
+
+        MethodFilter filter = new MethodFilter();
+        filter.skipGenerated();
+        JarMetrics metrics = new JarMetrics(jar);
+        metrics.setMethodFilter(filter);
+        MetricsResult generated = metrics.analyze();
+        assertEquals(3, generated.getMethods());
+        assertEquals(2, generated.getSkippedMethods());
+        assertTrue(generated.getB() < all.getB());
+
+        filter = new MethodFilter();
+        filter.setMethodPattern("task|compareTo");
+        metrics.setMethodFilter(filter);
+        MetricsResult named = metrics.analyze();
+        assertEquals(2, named.getMethods());
+        assertEquals(3, named.getSkippedMethods());
+    }
+
+    private MetricsResult filtered(PackageFilter filter) throws IOException {
+        JarMetrics metrics = new JarMetrics(Fixtures.jar(dir.resolve("a.jar"), Cube.class, Square.class, Shape.class,
+                Complex.class, MethodFilter.class, PackageFilter.class).toString());
+        metrics.setPackageFilter(filter);
+        return metrics.analyze();
+    }
+
+    @Test
+    void includedPackagesAreCounted() throws IOException {
+        PackageFilter filter = new PackageFilter();
+        filter.include("org/itmo/lab1/util/**");
+        MetricsResult result = filtered(filter);
+
+        assertEquals(2, result.getClasses());
+        assertEquals(4, result.getExcludedClasses());
+
+        filter = new PackageFilter();
+        filter.exclude("org/itmo/lab1/util/**");
+        result = filtered(filter);
+        assertEquals(4, result.getClasses());
+        assertEquals(2, result.getExcludedClasses());
+    }
+
+    @Test
+    void excludedSupertypesKeepDepthAndOverrides() throws IOException {
+        PackageFilter filter = new PackageFilter();
+        filter.include("org/itmo/lab1/JarMetricsTest$Cube");
+        MetricsResult result = filtered(filter);
+
+        assertEquals(1, result.getClasses());
+        assertEquals(4, result.getMaxInheritanceDepth());
+        //Cube.area overrides Square.area and Shape.area, Cube.toString overrides Object
+        assertEquals(3, result.getOverridenMethods());
+    }
+
+    @Test
+    void nothingIncludedIsAnEmptyResult() throws IOException {
+        PackageFilter filter = new PackageFilter();
+        filter.include("nothing/**");
+        MetricsResult result = filtered(filter);
+
+        assertEquals(0, result.getClasses());
+        assertEquals(6, result.getExcludedClasses());
+        assertEquals(0, result.getFieldsAverage());
+        assertEquals(0, result.getAverageOverridenMethods());
+        assertFalse(result.toJson().has("averageInheritanceDepth"));
+    }
+
+    @Test
+    void rollupsSumUpToTheTotals() throws IOException {
+        String jar = Fixtures.jar(dir.resolve("a.jar"), Cube.class, Square.class, Shape.class, Complex.class,
+                Generated.class, MethodFilter.class, PackageFilter.class, PackageRollup.class).toString();
+        for (boolean bounded : new boolean[]{false, true}) {
+            JarMetrics metrics = new JarMetrics(jar);
+            metrics.setBoundedMemory(bounded);
+            metrics.setPackageRollups(true);
+            MetricsResult result = metrics.analyze();
+            PackageRollup rollup = result.getPackageRollup();
+
+            for (String name : new String[]{"", "org", "org/itmo/lab1"}) {
+                PackageRollup.Accumulator total = rollup.get(name);
+                assertEquals(result.getClasses(), total.getClasses(), name);
+                assertEquals(result.getA(), total.getA(), name);
+                assertEquals(result.getB(), total.getB(), name);
+                assertEquals(result.getC(), total.getC(), name);
+                assertEquals(result.getMethods(), total.getMethods(), name);
+                assertEquals(result.getOverridenMethods(), total.getOverridenMethods(), name);
+                assertEquals(result.getMaxInheritanceDepth(), total.getMaxInheritanceDepth(), name);
+                assertEquals(result.getAverageInheritanceDepth(), total.getAverageInheritanceDepth(), 1e-9, name);
+            }
+            assertEquals(3, rollup.get("org/itmo/lab1/util").getClasses());
+        }
+    }
+
+    @Test
+    void copiesAreCountedFromTheFirstOne() throws IOException {
+        List<String> jars = List.of(Fixtures.jar(dir.resolve("a.jar"), Complex.class, Simple.class).toString(),
+                Fixtures.jar(dir.resolve("b.jar"), Complex.class, Other.class).toString());
+        JarMetrics metrics = new JarMetrics(jars);
+        metrics.setThresholdGate(gate(5, 10));
+        MetricsResult counted = metrics.analyze();
+
+        assertEquals(1, counted.getDuplicates().getDuplicates());
+        assertEquals(4, counted.getClasses());
+        //The copy has the same name, the gate only reports the first one
+        assertEquals(1, counted.getViolations().size());
+
+        metrics.setCountDuplicates(false);
+        MetricsResult skipped = metrics.analyze();
+        assertEquals(1, skipped.getDuplicates().getDuplicates());
+        assertEquals(3, skipped.getClasses());
+        MetricsResult copy = new JarMetrics(Fixtures.jar(dir.resolve("c.jar"), Complex.class).toString()).analyze();
+        assertEquals(skipped.getA() + copy.getA(), counted.getA());
+        assertEquals(skipped.getB() + copy.getB(), counted.getB());
+        assertEquals(skipped.getMethods() + copy.getMethods(), counted.getMethods());
+    }
+
+    private MetricsResult budgeted(ClassBudget budget) throws IOException {
+        JarMetrics metrics = new JarMetrics(Fixtures.jar(dir.resolve("a.jar"), Complex.class, Simple.class).toString());
+        metrics.setClassBudget(budget);
+        return metrics.analyze();
+    }
+
+    @Test
+    void oversizedClassesAreReadWithoutBodies() throws IOException {
+        MetricsResult full = budgeted(null);
+        ClassBudget budget = new ClassBudget();
+        budget.setMaxClassSize(Fixtures.bytes(Simple.class).length);
+        MetricsResult result = budgeted(budget);
+
+        assertTrue(result.isPartial());
+        assertEquals(List.of("org/itmo/lab1/JarMetricsTest$Complex"), List.copyOf(result.getPartialClasses().keySet()));
+        assertTrue(result.getPartialClasses().values().iterator().next().startsWith("class file of "));
+        assertEquals(full.getClasses(), result.getClasses());
+        assertEquals(full.getMethods(), result.getMethods());
+        assertTrue(result.getA() < full.getA());
+        assertTrue(result.toJson().getBoolean("partial"));
+    }
+
+    @Test
+    void longMethodsAreCountedWithoutBodies() throws IOException {
+        MetricsResult full = budgeted(null);
+        ClassBudget budget = new ClassBudget();
+        //Longer than any constructor, shorter than Complex.run
+        budget.setMaxMethodSize(8);
+        MetricsResult result = budgeted(budget);
+
+        assertEquals(Map.of("org/itmo/lab1/JarMetricsTest$Complex", "1 methods exceed 8 bytes of code"),
+                result.getPartialClasses());
+        assertEquals(full.getMethods(), result.getMethods());
+        assertTrue(result.getA() < full.getA());
+
+        //The partial classes of one analysis are not carried over to the next
+        budget.setMaxMethodSize(0);
+        assertFalse(budgeted(budget).isPartial());
+    }
+
+    @Test
+    void analysisPastTheDeadlineIsAbandoned() {
+        ClassAnalyzer analyzer = new ClassAnalyzer();
+        analyzer.setDeadline(System.nanoTime() - 1);
+
+        assertThrows(ClassAnalyzer.DeadlineExceededException.class,
+                () -> Fixtures.reader(Complex.class).accept(analyzer, 0));
+    }
+
+    @Test
+    void streamedJarHasTheSameTotals() throws IOException {
+        Path jar = mixedJar();
+        for (boolean bounded : new boolean[]{false, true}) {
+            JarMetrics files = new JarMetrics(jar.toString());
+            files.setBoundedMemory(bounded);
+            MetricsResult expected = files.analyze();
+
+            try (InputStream in = Files.newInputStream(jar)) {
+                JarMetrics stream = new JarMetrics(in, "stdin");
+                stream.setBoundedMemory(bounded);
+                MetricsResult actual = stream.analyze();
+
+                assertEquals("stdin", actual.getJarName());
+                assertSameTotals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    void streamedJarWithExcludedSupertypes() throws IOException {
+        PackageFilter filter = new PackageFilter();
+        filter.include("org/itmo/lab1/JarMetricsTest$Cube");
+        JarMetrics files = new JarMetrics(mixedJar().toString());
+        files.setPackageFilter(filter);
+        MetricsResult expected = files.analyze();
+
+        try (InputStream in = Files.newInputStream(mixedJar())) {
+            JarMetrics stream = new JarMetrics(in, "stdin");
+            stream.setPackageFilter(filter);
+            MetricsResult actual = stream.analyze();
+
+            assertSameTotals(expected, actual);
+            assertEquals(expected.getExcludedClasses(), actual.getExcludedClasses());
+            assertEquals(3, actual.getOverridenMethods());
+        }
+    }
+
+    @Test
+    void gateStopsAtTheLastAllowedViolation() throws IOException {
+        JarMetrics metrics = new JarMetrics(Fixtures.jar(dir.resolve("a.jar"), Complex.class, Simple.class,
+                Other.class).toString());
+        metrics.setThresholdGate(gate(5, 1));
+        MetricsResult result = metrics.analyze();
+
+        assertTrue(result.isStopped());
+        assertEquals(1, result.getViolations().size());
+        assertTrue(result.getViolations().get(0).contains("Complex: class ABC"), result.getViolations().get(0));
+        //The classes after the violation are not parsed
+        assertEquals(1, result.getClasses());
+    }
+
+    @Test
+    void gateWithinBudgetDoesNotStop() throws IOException {
+        JarMetrics metrics = new JarMetrics(Fixtures.jar(dir.resolve("a.jar"), Complex.class, Simple.class,
+                Other.class).toString());
+        metrics.setThresholdGate(gate(100, 1));
+        MetricsResult result = metrics.analyze();
+
+        assertFalse(result.isStopped());
+        assertEquals(0, result.getViolations().size());
+        assertEquals(3, result.getClasses());
+    }
+}
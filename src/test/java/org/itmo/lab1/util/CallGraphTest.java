@@ -0,0 +1,125 @@
+package org.itmo.lab1.util;
+
+import org.itmo.lab1.Fixtures;
+import org.itmo.lab1.visitor.ClassAnalyzer;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CallGraphTest {
+    static class App {
+        public static void main(String[] args) {
+            new App().used();
+            Runnable reference = App::referenced;
+            reference.run();
+            Runnable lambda = () -> fromLambda();
+            lambda.run();
+            new Worker().work();
+        }
+
+        void used() {
+            helper();
+        }
+
+        private static void helper() {
+        }
+
+        private static void referenced() {
+        }
+
+        private static void fromLambda() {
+        }
+
+        void unused() {
+            onlyFromUnused();
+        }
+
+        private static void onlyFromUnused() {
+        }
+    }
+
+    static class Worker {
+        void work() {
+            Base base = new Derived();
+            base.call();
+        }
+    }
+
+    static class Base {
+        void call() {
+        }
+    }
+
+    static class Derived extends Base {
+        @Override
+        void call() {
+        }
+    }
+
+    private static CallGraph graph(MethodFilter filter, Class<?>... fixtures) {
+        CallGraph graph = new CallGraph(EntryPoints.parse("main"));
+        for (Class<?> fixture : fixtures) {
+            ClassAnalyzer analyzer = new ClassAnalyzer(filter);
+            analyzer.setCallGraph(graph);
+            Fixtures.reader(fixture).accept(analyzer, 0);
+        }
+        graph.build();
+        return graph;
+    }
+
+    private static CallGraph graph(Class<?>... fixtures) {
+        return graph(null, fixtures);
+    }
+
+    private static boolean reachable(CallGraph graph, Class<?> owner, String name) {
+        return graph.isReachable(Type.getInternalName(owner), name, "()V");
+    }
+
+    @Test
+    void directCallsAreReachable() {
+        CallGraph graph = graph(App.class, Worker.class, Base.class, Derived.class);
+
+        assertTrue(reachable(graph, App.class, "used"));
+        assertTrue(reachable(graph, App.class, "helper"));
+        assertTrue(reachable(graph, Worker.class, "work"));
+    }
+
+    @Test
+    void methodHandlesAreCalls() {
+        CallGraph graph = graph(App.class, Worker.class, Base.class, Derived.class);
+
+        assertTrue(reachable(graph, App.class, "referenced"));
+        assertTrue(reachable(graph, App.class, "fromLambda"));
+    }
+
+    @Test
+    void virtualCallReachesOverrides() {
+        CallGraph graph = graph(App.class, Worker.class, Base.class, Derived.class);
+
+        assertTrue(reachable(graph, Base.class, "call"));
+        assertTrue(reachable(graph, Derived.class, "call"));
+    }
+
+    @Test
+    void methodsCalledOnlyFromDeadCodeAreDead() {
+        CallGraph graph = graph(App.class, Worker.class, Base.class, Derived.class);
+
+        assertFalse(reachable(graph, App.class, "unused"));
+        assertFalse(reachable(graph, App.class, "onlyFromUnused"));
+        List<String> dead = graph.getDeadMethods();
+        assertEquals(2, graph.getDeadMethodCount(), dead.toString());
+    }
+
+    @Test
+    void filteredLambdaBodiesKeepTheirCalls() {
+        MethodFilter filter = new MethodFilter();
+        filter.skipGenerated();
+        CallGraph graph = graph(filter, App.class, Worker.class, Base.class, Derived.class);
+
+        assertTrue(reachable(graph, App.class, "fromLambda"));
+        assertEquals(2, graph.getDeadMethodCount());
+    }
+}
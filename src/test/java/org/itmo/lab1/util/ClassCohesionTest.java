@@ -0,0 +1,129 @@
+package org.itmo.lab1.util;
+
+import org.itmo.lab1.Fixtures;
+import org.itmo.lab1.JarMetrics;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.objectweb.asm.Opcodes.*;
+
+class ClassCohesionTest {
+    @TempDir
+    Path dir;
+
+    static class Split {
+        private int count;
+        private String name;
+
+        void increment() {
+            count++;
+        }
+
+        int count() {
+            return count;
+        }
+
+        String name() {
+            return name;
+        }
+
+        void rename(String name) {
+            this.name = name;
+        }
+    }
+
+    static class Joined {
+        private int count;
+        private String name;
+
+        Joined(String name) {
+            this.name = name;
+        }
+
+        void increment() {
+            count++;
+        }
+
+        String describe() {
+            return name + count;
+        }
+
+        static Joined of(String name) {
+            return new Joined(name);
+        }
+    }
+
+    @Test
+    void metricsOfTwoGroupsLinkedByACall() {
+        ClassCohesion cohesion = new ClassCohesion("a/A");
+        cohesion.addField(ACC_PRIVATE, "x");
+        cohesion.addField(ACC_PRIVATE, "y");
+        cohesion.addField(ACC_STATIC, "CACHE");
+        int a = cohesion.addMethod(0, "a", "()V");
+        int b = cohesion.addMethod(0, "b", "()V");
+        int c = cohesion.addMethod(0, "c", "()V");
+        int d = cohesion.addMethod(0, "d", "()V");
+        cohesion.addFieldAccess(a, "a/A", "x");
+        cohesion.addFieldAccess(b, "a/A", "x");
+        cohesion.addFieldAccess(c, "a/A", "y");
+        cohesion.addFieldAccess(d, "a/A", "CACHE");
+        cohesion.addFieldAccess(d, "a/B", "x");
+        cohesion.addCall(d, "a/A", "c", "()V");
+        cohesion.compute();
+
+        assertEquals(2, cohesion.getFields());
+        //Six pairs, only a and b share a field
+        assertEquals(5, cohesion.getLcom1());
+        assertEquals(4, cohesion.getLcom2());
+        assertEquals((4 - 3 / 2.0) / 3, cohesion.getLcom3(), 1e-12);
+        assertEquals(2, cohesion.getLcom4());
+        assertEquals(1 / 6.0, cohesion.getTcc(), 1e-12);
+    }
+
+    @Test
+    void constructorsAndStaticMethodsAreLeftOut() {
+        ClassCohesion cohesion = new ClassCohesion("a/A");
+        cohesion.addField(0, "x");
+
+        assertEquals(-1, cohesion.addMethod(0, "<init>", "()V"));
+        assertEquals(-1, cohesion.addMethod(ACC_STATIC, "of", "()La/A;"));
+        assertEquals(-1, cohesion.addMethod(ACC_ABSTRACT, "run", "()V"));
+        assertEquals(0, cohesion.addMethod(0, "get", "()I"));
+        assertFalse(cohesion.isDefined());
+        assertThrows(IllegalStateException.class, () -> cohesion.addField(0, "y"));
+    }
+
+    @Test
+    void classesOfAJar() throws IOException {
+        StringWriter report = new StringWriter();
+        JarMetrics metrics = new JarMetrics(Fixtures.jar(dir.resolve("a.jar"), Split.class, Joined.class).toString());
+        metrics.setCohesion(true, report);
+        CohesionMetrics cohesion = metrics.analyze().getCohesion();
+
+        assertEquals(2, cohesion.getClasses());
+        assertEquals(1, cohesion.getSplittableClasses());
+        assertEquals("org/itmo/lab1/util/ClassCohesionTest$Split", cohesion.getLeastCohesive().get(0).getClassName());
+
+        Map<String, JSONObject> lines = new HashMap<>();
+        for (String line : report.toString().split("\n")) {
+            JSONObject json = new JSONObject(line);
+            lines.put(json.getString("class"), json);
+        }
+        JSONObject split = lines.get("org/itmo/lab1/util/ClassCohesionTest$Split");
+        assertEquals(4, split.getInt("methods"));
+        assertEquals(2, split.getInt("LCOM4"));
+        assertEquals(2 / 6.0, split.getDouble("TCC"), 1e-12);
+        JSONObject joined = lines.get("org/itmo/lab1/util/ClassCohesionTest$Joined");
+        assertEquals(2, joined.getInt("methods"));
+        assertEquals(1, joined.getInt("LCOM4"));
+        assertEquals(1, joined.getDouble("TCC"), 1e-12);
+    }
+}
@@ -0,0 +1,86 @@
+package org.itmo.lab1.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentIndexTest {
+    @Test
+    void findsAddedClass() {
+        ContentIndex index = new ContentIndex();
+        byte[] bytes = "class file".getBytes(StandardCharsets.UTF_8);
+        long hash = ContentIndex.hash(bytes);
+        int checksum = ContentIndex.checksum(bytes);
+        int id = index.add(hash, checksum, "a/A", bytes.length, 7, new Metrics(1, 2, 3, 4), 5, 1, true);
+
+        assertEquals(id, index.find(hash, checksum, "a/A", bytes.length));
+        assertEquals(7, index.getLocation(id));
+        assertEquals(2, index.getMetrics(id).getB());
+        assertEquals(4, index.getMetrics(id).getFieldCount());
+        assertEquals(5, index.getMethods(id));
+        assertEquals(1, index.getSkippedMethods(id));
+        assertTrue(index.isFull(id));
+    }
+
+    @Test
+    void hashMatchNeedsSameChecksumNameAndLength() {
+        ContentIndex index = new ContentIndex();
+        index.add(42, 7, "a/A", 100, 0, new Metrics(), 0, 0, true);
+
+        assertEquals(-1, index.find(42, 7, "a/B", 100));
+        assertEquals(-1, index.find(42, 7, "a/A", 101));
+        assertEquals(-1, index.find(43, 7, "a/A", 100));
+        assertEquals(-1, index.find(42, 8, "a/A", 100));
+    }
+
+    @Test
+    void checksumIsIndependentOfTheHash() {
+        //Same length, one flipped bit: both the hash and the checksum change
+        byte[] first = "class file".getBytes(StandardCharsets.UTF_8);
+        byte[] second = first.clone();
+        second[3] ^= 1;
+
+        assertNotEquals(ContentIndex.hash(first), ContentIndex.hash(second));
+        assertNotEquals(ContentIndex.checksum(first), ContentIndex.checksum(second));
+        assertEquals(ContentIndex.checksum(first), ContentIndex.checksum(first.clone()));
+    }
+
+    @Test
+    void keepsClassesWithTheSameHashApart() {
+        ContentIndex index = new ContentIndex();
+        int first = index.add(42, 7, "a/A", 100, 0, new Metrics(), 0, 0, true);
+        int second = index.add(42, 7, "a/B", 100, 1, new Metrics(), 0, 0, true);
+
+        assertNotEquals(first, second);
+        assertEquals(first, index.find(42, 7, "a/A", 100));
+        assertEquals(second, index.find(42, 7, "a/B", 100));
+    }
+
+    @Test
+    void growsPastItsInitialCapacity() {
+        ContentIndex index = new ContentIndex();
+        for (int i = 0; i < 10_000; i++)
+            index.add(ContentIndex.hash(("class " + i).getBytes(StandardCharsets.UTF_8)), i, "C" + i, i, i,
+                    new Metrics(i, 0, 0, 0), 0, 0, false);
+
+        for (int i = 0; i < 10_000; i++) {
+            int id = index.find(ContentIndex.hash(("class " + i).getBytes(StandardCharsets.UTF_8)), i, "C" + i, i);
+            assertEquals(i, index.getLocation(id));
+            assertEquals(i, index.getMetrics(id).getA());
+        }
+    }
+
+    @Test
+    void updateReplacesMetrics() {
+        ContentIndex index = new ContentIndex();
+        int id = index.add(1, 1, "a/A", 10, 0, new Metrics(1, 1, 1, 0), 2, 0, false);
+        index.update(id, new Metrics(5, 6, 7, 0), 3, 1, true);
+
+        assertEquals(5, index.getMetrics(id).getA());
+        assertEquals(3, index.getMethods(id));
+        assertEquals(1, index.getSkippedMethods(id));
+        assertTrue(index.isFull(id));
+    }
+}
@@ -0,0 +1,83 @@
+package org.itmo.lab1.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HierarchyIndexTest {
+    private final Map<String, Node> classMap = new LinkedHashMap<>();
+
+    private void add(String name, String superName, String... interfaces) {
+        classMap.put(name, new Node(name, superName, new HashSet<>(Arrays.asList(interfaces)), List.of()));
+    }
+
+    private static Set<String> subtypes(HierarchyIndex index, String type) {
+        List<String> subtypes = index.subtypes(type);
+        Set<String> result = new TreeSet<>(subtypes);
+        assertEquals(result.size(), subtypes.size(), "Repeated subtypes of " + type + ": " + subtypes);
+        return result;
+    }
+
+    @Test
+    void subclassesAreTransitive() {
+        add("java/lang/Object", "");
+        add("a/A", "java/lang/Object");
+        add("a/B", "a/A");
+        add("a/C", "a/B");
+        add("a/D", "java/lang/Object");
+        HierarchyIndex index = HierarchyIndex.of(classMap);
+
+        assertEquals(Set.of("a/B", "a/C"), subtypes(index, "a/A"));
+        assertEquals(Set.of("a/C"), subtypes(index, "a/B"));
+        assertEquals(Set.of(), subtypes(index, "a/C"));
+        assertTrue(index.isSubtype("a/C", "a/A"));
+        assertFalse(index.isSubtype("a/D", "a/A"));
+    }
+
+    @Test
+    void implementationsIncludeSubclassesAndSubinterfaces() {
+        add("java/lang/Object", "");
+        add("a/I", "java/lang/Object");
+        add("a/J", "java/lang/Object", "a/I");
+        add("a/A", "java/lang/Object", "a/I");
+        add("a/B", "a/A", "a/J");
+        add("a/C", "java/lang/Object", "a/J");
+        HierarchyIndex index = HierarchyIndex.of(classMap);
+
+        assertEquals(Set.of("a/J", "a/A", "a/B", "a/C"), subtypes(index, "a/I"));
+        assertEquals(Set.of("a/B", "a/C"), subtypes(index, "a/J"));
+        assertTrue(index.isSubtype("a/C", "a/I"));
+    }
+
+    @Test
+    void missingInterfaceIsARoot() {
+        add("app/A", "java/lang/Object", "lib/Service");
+        add("app/B", "app/A");
+        HierarchyIndex index = HierarchyIndex.of(classMap);
+
+        assertEquals(Set.of("app/A", "app/B"), subtypes(index, "lib/Service"));
+    }
+
+    @Test
+    void missingSuperclassIsARoot() {
+        add("app/A", "lib/Base");
+        add("app/B", "lib/Base");
+        add("app/C", "app/B");
+        add("app/Main", "java/lang/Object");
+        HierarchyIndex index = HierarchyIndex.of(classMap);
+
+        assertEquals(Set.of("app/A", "app/B", "app/C"), subtypes(index, "lib/Base"));
+        assertTrue(index.isSubtype("app/C", "lib/Base"));
+    }
+
+    @Test
+    void unknownTypeHasNoSubtypes() {
+        add("app/A", "java/lang/Object");
+        HierarchyIndex index = HierarchyIndex.of(classMap);
+
+        assertEquals(List.of(), index.subtypes("app/Missing"));
+        assertFalse(index.isSubtype("app/A", "app/Missing"));
+    }
+}
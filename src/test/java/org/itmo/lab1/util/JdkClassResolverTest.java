@@ -0,0 +1,50 @@
+package org.itmo.lab1.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JdkClassResolverTest {
+    private final JdkClassResolver resolver = JdkClassResolver.getInstance();
+
+    @Test
+    void readsTheHeaderOfAJdkClass() {
+        Node node = resolver.resolve("java/util/ArrayList");
+
+        assertNotNull(node);
+        assertTrue(node.isExternal());
+        assertEquals("java/util/AbstractList", node.getSuperclassName());
+        assertTrue(node.getInterfaces().contains("java/util/List"), node.getInterfaces().toString());
+        assertTrue(node.getMethods().contains("add(Ljava/lang/Object;)"), node.getMethods().toString());
+        assertFalse(node.getMethods().stream().anyMatch(method -> method.startsWith("<init>")));
+    }
+
+    @Test
+    void objectHasNoSuperclass() {
+        Node node = resolver.resolve("java/lang/Object");
+
+        assertNotNull(node);
+        assertEquals("", node.getSuperclassName());
+    }
+
+    @Test
+    void classesOutsideTheJdkAreNotResolved() {
+        assertNull(resolver.resolve("org/itmo/lab1/Missing"));
+        assertNull(resolver.resolve("java/util/Missing"));
+        assertNull(resolver.resolve(""));
+        assertNull(resolver.resolve(null));
+    }
+
+    @Test
+    void everyCallCreatesAFreshNode() {
+        Node first = resolver.resolve("java/util/HashMap");
+        first.addSuperClass(new Node("a/A", "", Set.of(), List.of()));
+        Node second = resolver.resolve("java/util/HashMap");
+
+        assertNotSame(first, second);
+        assertTrue(second.getSuperClasses().isEmpty());
+    }
+}
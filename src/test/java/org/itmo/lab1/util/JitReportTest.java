@@ -0,0 +1,110 @@
+package org.itmo.lab1.util;
+
+import org.itmo.lab1.Fixtures;
+import org.itmo.lab1.JarMetrics;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JitReportTest {
+    private static final String PARSER = "org/itmo/lab1/util/JitReportTest$Parser";
+    //Constructors are 5 bytes: aload_0, invokespecial, return
+    private static final JitReport.Limits LIMITS = new JitReport.Limits(4, 10, 20);
+
+    @TempDir
+    Path dir;
+
+    static class Parser {
+        int parse(String text) {
+            int result = 0;
+            for (int i = 0; i < text.length(); i++) {
+                switch (text.charAt(i)) {
+                    case '0' -> result = result * 10;
+                    case '1' -> result = result * 10 + 1;
+                    case '-' -> result = -result;
+                    default -> throw new IllegalArgumentException(text);
+                }
+            }
+            return result;
+        }
+    }
+
+    private JitReport analyze(StringWriter report, ClassBudget budget) throws IOException {
+        JarMetrics metrics = new JarMetrics(Fixtures.jar(dir.resolve("a.jar"), Parser.class).toString());
+        metrics.setJitReport(LIMITS, report);
+        metrics.setClassBudget(budget);
+        return metrics.analyze().getJit();
+    }
+
+    @Test
+    void methodsAreFlaggedByTheHighestLimit() throws IOException {
+        StringWriter report = new StringWriter();
+        JitReport.Totals totals = analyze(report, null).getTotals();
+
+        assertEquals(2, totals.getMethods());
+        assertEquals(2, totals.getOverMaxInlineSize());
+        assertEquals(1, totals.getOverFreqInlineSize());
+        assertEquals(1, totals.getHuge());
+
+        List<JSONObject> lines = new ArrayList<>();
+        for (String line : report.toString().split("\n"))
+            lines.add(new JSONObject(line));
+        assertEquals(3, lines.size());
+        assertEquals("<init>()", lines.get(0).getString("method"));
+        assertEquals(5, lines.get(0).getInt("size"));
+        assertEquals("MaxInlineSize", lines.get(0).getString("exceeds"));
+        assertEquals("parse(Ljava/lang/String;)", lines.get(1).getString("method"));
+        assertEquals("HugeMethodLimit", lines.get(1).getString("exceeds"));
+        //The class line comes last
+        assertEquals(PARSER, lines.get(2).getString("class"));
+        assertEquals(1, lines.get(2).getInt("huge"));
+        assertEquals(totals.getBytes(), lines.get(2).getLong("bytes"));
+    }
+
+    @Test
+    void largestMethodsComeFirst() throws IOException {
+        JitReport jit = analyze(new StringWriter(), null);
+        List<JitReport.Method> largest = jit.getLargest();
+
+        assertEquals("parse(Ljava/lang/String;)", largest.get(0).getSignature());
+        assertTrue(largest.get(0).getSize() > largest.get(1).getSize());
+        assertEquals(jit.getTotals().getMethods(), jit.getPackages().get("org/itmo/lab1/util").getMethods());
+    }
+
+    @Test
+    void oversizedMethodsAreStillReported() throws IOException {
+        ClassBudget budget = new ClassBudget();
+        budget.setMaxMethodSize(10);
+
+        assertEquals(1, analyze(new StringWriter(), budget).getTotals().getHuge());
+    }
+
+    @Test
+    void discardedClassLeavesNoTrace() {
+        StringWriter report = new StringWriter();
+        JitReport jit = new JitReport(LIMITS, report);
+        jit.visitClass(0, "a/A", "java/lang/Object", new String[0]);
+        jit.visitMethod(0, "run", "()V");
+        jit.visitCodeSize(100, 2, 1);
+        jit.discardClass();
+
+        assertEquals(0, jit.getTotals().getMethods());
+        assertEquals(List.of(), jit.getLargest());
+        assertEquals("", report.toString());
+    }
+
+    @Test
+    void limitsMustGrow() {
+        assertEquals(325, JitReport.Limits.parse("35, 325, 8000").getFreqInlineSize());
+        assertThrows(IllegalArgumentException.class, () -> JitReport.Limits.parse("35,325"));
+        assertThrows(IllegalArgumentException.class, () -> new JitReport.Limits(400, 325, 8000));
+    }
+}
@@ -0,0 +1,51 @@
+package org.itmo.lab1.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.objectweb.asm.Opcodes.*;
+
+class MethodFilterTest {
+    private static MethodFilter generated() {
+        MethodFilter filter = new MethodFilter();
+        filter.skipGenerated();
+        return filter;
+    }
+
+    @Test
+    void generatedNamesOfJavacAndKotlinc() {
+        MethodFilter filter = generated();
+
+        for (String name : new String[]{"lambda$run$0", "run$lambda$0", "run$lambda-1", "open$default", "access$000"})
+            assertTrue(filter.skipsMethod(ACC_PUBLIC, name), name);
+        for (String name : new String[]{"run", "lambda", "getDefault", "access", "runLambda"})
+            assertFalse(filter.skipsMethod(ACC_PUBLIC, name), name);
+        assertTrue(filter.skipsClass("a/Service$DefaultImpls"));
+        assertFalse(filter.skipsClass("a/Service"));
+    }
+
+    @Test
+    void accessFlagsAreSkippedSeparately() {
+        MethodFilter filter = new MethodFilter();
+        filter.setSkipBridge(true);
+
+        assertTrue(filter.skipsMethod(ACC_PUBLIC | ACC_BRIDGE | ACC_SYNTHETIC, "compareTo"));
+        assertFalse(filter.skipsMethod(ACC_PRIVATE | ACC_SYNTHETIC, "compareTo"));
+
+        filter.setSkipSynthetic(true);
+        filter.setSkipBridge(false);
+        assertTrue(filter.skipsMethod(ACC_PRIVATE | ACC_SYNTHETIC, "compareTo"));
+        assertFalse(filter.skipsMethod(ACC_PUBLIC, "compareTo"));
+    }
+
+    @Test
+    void emptyFilterIsDisabled() {
+        MethodFilter filter = new MethodFilter();
+        assertFalse(filter.isEnabled());
+
+        filter.setMethodPattern("get.*");
+        assertTrue(filter.isEnabled());
+        filter.setMethodPattern(null);
+        assertFalse(filter.isEnabled());
+    }
+}
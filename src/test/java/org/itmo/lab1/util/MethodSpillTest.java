@@ -0,0 +1,57 @@
+package org.itmo.lab1.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MethodSpillTest {
+    private static long spillFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().startsWith("jar-metrics-methods")).count();
+        }
+    }
+
+    @Test
+    void findsTheMethodsOfEveryClass() throws IOException {
+        try (MethodSpill spill = new MethodSpill()) {
+            spill.write(0, List.of("run()", "size()"));
+            spill.write(2000, List.of("get(I)"));
+            spill.finish();
+
+            assertEquals(2, spill.count(0));
+            assertTrue(spill.contains(0, MethodSpill.hash("size()")));
+            assertFalse(spill.contains(0, MethodSpill.hash("get(I)")));
+            assertTrue(spill.contains(2000, MethodSpill.hash("get(I)")));
+            assertEquals(0, spill.count(1));
+            assertEquals(0, spill.count(5000));
+        }
+    }
+
+    @Test
+    void closeDeletesTheFile() throws IOException {
+        long before = spillFiles();
+        MethodSpill spill = new MethodSpill();
+        assertEquals(before + 1, spillFiles());
+        spill.write(0, List.of("run()"));
+        spill.finish();
+        spill.close();
+
+        assertEquals(before, spillFiles());
+    }
+
+    @Test
+    void closeWithoutFinishDeletesTheFile() throws IOException {
+        long before = spillFiles();
+        MethodSpill spill = new MethodSpill();
+        spill.write(0, List.of("run()"));
+        spill.close();
+
+        assertEquals(before, spillFiles());
+    }
+}
@@ -0,0 +1,160 @@
+package org.itmo.lab1.util;
+
+import org.itmo.lab1.Fixtures;
+import org.itmo.lab1.JarMetrics;
+import org.itmo.lab1.MetricsResult;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.objectweb.asm.Opcodes.*;
+
+class MetricCollectorTest {
+    @TempDir
+    Path dir;
+
+    static class Counter {
+        private int count;
+
+        int next() {
+            return ++count;
+        }
+
+        void reset() {
+            count = 0;
+        }
+    }
+
+    /**
+     * Counts classes and methods, fails on any event it did not ask for.
+     */
+    public static class Structure implements MetricCollector<Structure> {
+        private int classes;
+        private int methods;
+        private final List<String> unexpected = new ArrayList<>();
+
+        public Structure() {
+        }
+
+        @Override
+        public String name() {
+            return "structure";
+        }
+
+        @Override
+        public int events() {
+            return CLASSES | METHODS;
+        }
+
+        @Override
+        public void visitClassEnd() {
+            classes++;
+        }
+
+        @Override
+        public void visitMethod(int access, String name, String descriptor) {
+            methods++;
+        }
+
+        @Override
+        public void visitInstruction(int opcode) {
+            unexpected.add("instruction");
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+            unexpected.add("field instruction");
+        }
+
+        @Override
+        public void merge(Structure other) {
+            classes += other.classes;
+            methods += other.methods;
+        }
+
+        @Override
+        public JSONObject toJson() {
+            return new JSONObject().put("classes", classes).put("methods", methods);
+        }
+    }
+
+    static class FieldWrites implements MetricCollector<FieldWrites> {
+        private int writes;
+
+        @Override
+        public String name() {
+            return "fieldWrites";
+        }
+
+        @Override
+        public int events() {
+            return FIELD_INSNS;
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+            if (opcode == PUTFIELD)
+                writes++;
+        }
+
+        @Override
+        public void merge(FieldWrites other) {
+            writes += other.writes;
+        }
+
+        @Override
+        public JSONObject toJson() {
+            return new JSONObject().put("writes", writes);
+        }
+    }
+
+    private JarMetrics metrics() throws IOException {
+        return new JarMetrics(Fixtures.jar(dir.resolve("a.jar"), Counter.class).toString());
+    }
+
+    @Test
+    void collectorsOnlyReceiveTheirEvents() throws IOException {
+        JarMetrics metrics = metrics();
+        metrics.addCollector(Structure::new);
+        metrics.addCollector(FieldWrites::new);
+        MetricsResult result = metrics.analyze();
+
+        Structure structure = (Structure) result.getCollectors().get("structure");
+        assertEquals(List.of(), structure.unexpected);
+        assertEquals(1, structure.classes);
+        //Constructor, next and reset
+        assertEquals(3, structure.methods);
+        //++count and count = 0
+        assertEquals(2, ((FieldWrites) result.getCollectors().get("fieldWrites")).writes);
+        assertEquals(List.of("structure", "fieldWrites"), List.copyOf(result.getCollectors().keySet()));
+        assertEquals(3, result.toJson().getJSONObject("collectors").getJSONObject("structure").getInt("methods"));
+    }
+
+    @Test
+    void everyAnalysisHasNewCollectors() throws IOException {
+        JarMetrics metrics = metrics();
+        metrics.addCollector(Structure::new);
+        Structure first = (Structure) metrics.analyze().getCollectors().get("structure");
+        Structure second = (Structure) metrics.analyze().getCollectors().get("structure");
+
+        assertNotSame(first, second);
+        assertEquals(1, second.classes);
+
+        first.merge(second);
+        assertEquals(2, first.classes);
+    }
+
+    @Test
+    void namesMustBeUnique() throws IOException {
+        JarMetrics metrics = metrics();
+        metrics.addCollector(Structure::new);
+
+        assertThrows(IllegalArgumentException.class, () -> metrics.addCollector(Structure::new));
+    }
+}
@@ -0,0 +1,112 @@
+package org.itmo.lab1.util;
+
+import org.itmo.lab1.Fixtures;
+import org.itmo.lab1.JarMetrics;
+import org.itmo.lab1.MetricsResult;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.util.Printer;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.objectweb.asm.Opcodes.*;
+
+class OpcodeProfileTest {
+    @TempDir
+    Path dir;
+
+    static class Worker {
+        private final Object lock = new Object();
+        private List<String> items = new ArrayList<>();
+
+        int run(Object value) {
+            synchronized (lock) {
+                items.add((String) value);
+                return items.size();
+            }
+        }
+    }
+
+    /**
+     * Opcode counts of the fixture as ASM's tree API sees them.
+     */
+    private static long[] expectedCounts(Class<?> fixture) {
+        ClassNode node = new ClassNode();
+        Fixtures.reader(fixture).accept(node, 0);
+        long[] counts = new long[256];
+        for (MethodNode method : node.methods)
+            for (AbstractInsnNode insn : method.instructions)
+                if (insn.getOpcode() >= 0)
+                    counts[insn.getOpcode()]++;
+        return counts;
+    }
+
+    private MetricsResult analyze(OpcodeProfile.Level level, StringWriter report) throws IOException {
+        JarMetrics metrics = new JarMetrics(Fixtures.jar(dir.resolve("a.jar"), Worker.class).toString());
+        metrics.setOpcodeProfile(level, report);
+        return metrics.analyze();
+    }
+
+    @Test
+    void jarHistogramCountsEveryInstruction() throws IOException {
+        OpcodeHistogram histogram = analyze(OpcodeProfile.Level.JAR, null).getOpcodes();
+        long[] expected = expectedCounts(Worker.class);
+
+        for (int opcode = 0; opcode < expected.length; opcode++)
+            assertEquals(expected[opcode], histogram.get(opcode), "opcode " + opcode);
+        assertEquals(1, histogram.get(MONITORENTER));
+        assertEquals(1, histogram.get(CHECKCAST));
+        assertEquals(2, histogram.get(INVOKEINTERFACE));
+        assertEquals((double) 2 / histogram.total(), histogram.getInvokeInterfaceShare(), 1e-12);
+    }
+
+    @Test
+    void methodReportSumsUpToTheJar() throws IOException {
+        StringWriter report = new StringWriter();
+        OpcodeHistogram histogram = analyze(OpcodeProfile.Level.METHOD, report).getOpcodes();
+
+        long total = 0;
+        List<String> methods = new ArrayList<>();
+        for (String line : report.toString().split("\n")) {
+            JSONObject json = new JSONObject(line);
+            assertEquals("org/itmo/lab1/util/OpcodeProfileTest$Worker", json.getString("class"));
+            methods.add(json.getString("method"));
+            JSONObject opcodes = json.getJSONObject("opcodes");
+            for (String name : opcodes.keySet())
+                total += opcodes.getLong(name);
+        }
+
+        assertEquals(List.of("<init>()", "run(Ljava/lang/Object;)"), methods);
+        assertEquals(histogram.total(), total);
+    }
+
+    @Test
+    void classReportHasALinePerClass() throws IOException {
+        StringWriter report = new StringWriter();
+        OpcodeHistogram histogram = analyze(OpcodeProfile.Level.CLASS, report).getOpcodes();
+        JSONObject json = new JSONObject(report.toString().trim());
+
+        assertFalse(json.has("method"));
+        assertEquals(histogram.get(MONITOREXIT), json.getJSONObject("opcodes").getLong("MONITOREXIT"));
+    }
+
+    @Test
+    void namesMatchAsm() {
+        for (int opcode = 0; opcode <= IFNONNULL; opcode++)
+            assertEquals(Printer.OPCODES[opcode], OpcodeHistogram.name(opcode));
+    }
+
+    @Test
+    void reportIsRequiredBelowTheJarLevel() {
+        assertThrows(IllegalArgumentException.class, () -> new OpcodeProfile(OpcodeProfile.Level.CLASS, null));
+    }
+}
@@ -0,0 +1,48 @@
+package org.itmo.lab1.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackageFilterTest {
+    @Test
+    void doubleStarCrossesPackages() {
+        PackageFilter filter = new PackageFilter();
+        filter.include("com/ourco/**");
+
+        assertTrue(filter.includes("com/ourco/App"));
+        assertTrue(filter.includes("com/ourco/web/Controller"));
+        assertFalse(filter.includes("com/other/App"));
+        assertFalse(filter.includes("com/ourcorp/App"));
+    }
+
+    @Test
+    void singleStarStaysInThePackage() {
+        PackageFilter filter = new PackageFilter();
+        filter.include("com/ourco/*");
+
+        assertTrue(filter.includes("com/ourco/App"));
+        assertFalse(filter.includes("com/ourco/web/Controller"));
+    }
+
+    @Test
+    void excludesWinOverIncludes() {
+        PackageFilter filter = new PackageFilter();
+        filter.include("com.ourco.**");
+        filter.exclude("com.ourco.generated.**");
+
+        assertTrue(filter.includes("com/ourco/App"));
+        assertFalse(filter.includes("com/ourco/generated/Stub"));
+    }
+
+    @Test
+    void onlyExcludesIncludeTheRest() {
+        PackageFilter filter = new PackageFilter();
+        filter.exclude("io/netty/**");
+
+        assertTrue(filter.isEnabled());
+        assertTrue(filter.includes("com/ourco/App"));
+        assertFalse(filter.includes("io/netty/Channel"));
+        assertFalse(new PackageFilter().isEnabled());
+    }
+}
@@ -0,0 +1,59 @@
+package org.itmo.lab1.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackageRollupTest {
+    @Test
+    void packagesCoverTheirSubpackages() {
+        PackageRollup rollup = new PackageRollup();
+        rollup.of("com/ourco/App").addClass(2, 1, 2, 3, 4);
+        rollup.of("com/ourco/web/Controller").addClass(4, 10, 20, 30, 5);
+        rollup.of("com/ourco/web/rest/Resource").addClass(0, 100, 200, 300, 6);
+        rollup.of("org/other/Lib").addClass(1, 1000, 0, 0, 1);
+        rollup.of("Main").addClass(0, 0, 0, 0, 1);
+        rollup.reduce();
+
+        PackageRollup.Accumulator ourco = rollup.get("com/ourco");
+        assertEquals(3, ourco.getClasses());
+        assertEquals(111, ourco.getA());
+        assertEquals(333, ourco.getC());
+        assertEquals(15, ourco.getMethods());
+        assertEquals(2, ourco.getFieldsAverage(), 1e-9);
+        assertEquals(2, rollup.get("com/ourco/web").getClasses());
+        assertEquals(5, rollup.get("").getClasses());
+        assertEquals(1111, rollup.get("").getA());
+        //Intermediate packages without classes of their own are in the tree too
+        assertEquals(List.of("com", "com/ourco", "com/ourco/web", "com/ourco/web/rest", "org", "org/other"),
+                List.copyOf(rollup.packageNames()));
+        assertNull(rollup.get("com/missing"));
+    }
+
+    @Test
+    void depthsAndOverridesAreMerged() {
+        PackageRollup rollup = new PackageRollup();
+        rollup.of("a/A").addDepth(2);
+        rollup.of("a/b/B").addDepth(4);
+        rollup.of("a/b/B").addOverrides(3);
+        rollup.of("c/C").addOverrides(1);
+        rollup.reduce();
+
+        assertEquals(4, rollup.get("a").getMaxInheritanceDepth());
+        assertEquals(3, rollup.get("a").getAverageInheritanceDepth(), 1e-9);
+        assertEquals(3, rollup.get("a").getOverridenMethods());
+        assertEquals(4, rollup.get("").getOverridenMethods());
+        assertTrue(Double.isNaN(rollup.get("c").getAverageInheritanceDepth()));
+        assertFalse(rollup.get("c").toJson().has("averageInheritanceDepth"));
+    }
+
+    @Test
+    void totalsNeedTheReduction() {
+        PackageRollup rollup = new PackageRollup();
+        rollup.of("a/A").addClass(0, 1, 1, 1, 1);
+
+        assertThrows(IllegalStateException.class, () -> rollup.get("a"));
+    }
+}
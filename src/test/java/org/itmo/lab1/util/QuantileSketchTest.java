@@ -0,0 +1,94 @@
+package org.itmo.lab1.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantileSketchTest {
+    private static final int N = 100_000;
+    private static final double[] QUANTILES = {0.01, 0.05, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99};
+
+    /**
+     * 0 .. n-1 in random order, so the value is its own rank.
+     */
+    private static List<Integer> permutation(int n, long seed) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            values.add(i);
+        Collections.shuffle(values, new Random(seed));
+        return values;
+    }
+
+    private static double maxRankError(QuantileSketch sketch, int n) {
+        double error = 0;
+        for (double q : QUANTILES)
+            error = Math.max(error, Math.abs(sketch.quantile(q) / n - q));
+        return error;
+    }
+
+    @Test
+    void rankErrorIsWithinTheBound() {
+        for (long seed = 0; seed < 5; seed++) {
+            QuantileSketch sketch = new QuantileSketch(200);
+            for (int value : permutation(N, seed))
+                sketch.add(value);
+
+            assertEquals(N, sketch.getCount());
+            double error = maxRankError(sketch, N);
+            assertTrue(error <= 1.7 / 200, "Rank error " + error);
+        }
+    }
+
+    @Test
+    void mergedSketchesAreWithinTheBound() {
+        QuantileSketch first = new QuantileSketch(200);
+        QuantileSketch second = new QuantileSketch(200);
+        List<Integer> values = permutation(N, 7);
+        for (int i = 0; i < N; i++)
+            (i % 3 == 0 ? first : second).add(values.get(i));
+        first.merge(second);
+
+        assertEquals(N, first.getCount());
+        double error = maxRankError(first, N);
+        assertTrue(error <= 1.7 / 200, "Rank error " + error);
+    }
+
+    @Test
+    void smallInputsAreExact() {
+        QuantileSketch sketch = new QuantileSketch(200);
+        for (int value : permutation(100, 1))
+            sketch.add(value);
+
+        assertEquals(0, sketch.quantile(0));
+        assertEquals(49, sketch.quantile(0.5));
+        assertEquals(98, sketch.quantile(0.99));
+        assertEquals(99, sketch.quantile(1));
+    }
+
+    @Test
+    void jsonRoundTripKeepsTheQuantiles() {
+        QuantileSketch sketch = new QuantileSketch(64);
+        for (int value : permutation(10_000, 3))
+            sketch.add(value);
+        QuantileSketch restored = QuantileSketch.fromJson(sketch.toJson());
+
+        assertEquals(sketch.getCount(), restored.getCount());
+        for (double q : QUANTILES)
+            assertEquals(sketch.quantile(q), restored.quantile(q));
+    }
+
+    @Test
+    void emptySketchHasNoQuantiles() {
+        QuantileSketch sketch = new QuantileSketch();
+
+        assertTrue(Double.isNaN(sketch.quantile(0.5)));
+        assertThrows(IllegalArgumentException.class, () -> sketch.quantile(1.5));
+        assertThrows(IllegalArgumentException.class, () -> sketch.merge(new QuantileSketch(100)));
+        assertThrows(IllegalArgumentException.class, () -> new QuantileSketch(4));
+    }
+}
@@ -0,0 +1,129 @@
+package org.itmo.lab1.util;
+
+import org.itmo.lab1.Fixtures;
+import org.itmo.lab1.JarMetrics;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReceiverTypesTest {
+    private static final String PREFIX = "org/itmo/lab1/util/ReceiverTypesTest$";
+
+    @TempDir
+    Path dir;
+
+    interface Figure {
+        double area();
+    }
+
+    abstract static class Polygon implements Figure {
+    }
+
+    static class Square extends Polygon {
+        @Override
+        public double area() {
+            return 1;
+        }
+    }
+
+    static class Triangle extends Polygon {
+        @Override
+        public double area() {
+            return 0.5;
+        }
+    }
+
+    static class Hexagon extends Polygon {
+        @Override
+        public double area() {
+            return 2.6;
+        }
+    }
+
+    static class Circle implements Figure {
+        @Override
+        public double area() {
+            return Math.PI;
+        }
+    }
+
+    static class Renderer {
+        double figure(Figure figure) {
+            return figure.area();
+        }
+
+        double polygon(Polygon polygon) {
+            return polygon.area();
+        }
+
+        double square(Square square) {
+            return square.area();
+        }
+
+        void task(Runnable task) {
+            task.run();
+        }
+    }
+
+    private ReceiverTypes analyze(StringWriter report) throws IOException {
+        JarMetrics metrics = new JarMetrics(Fixtures.jar(dir.resolve("a.jar"), Renderer.class, Figure.class,
+                Polygon.class, Square.class, Triangle.class, Hexagon.class, Circle.class).toString());
+        metrics.setReceiverTypes(ReceiverTypes.DEFAULT_LIMIT, report);
+        return metrics.analyze().getReceiverTypes();
+    }
+
+    @Test
+    void concreteSubtypesAreReceivers() throws IOException {
+        ReceiverTypes receivers = analyze(null);
+
+        assertEquals(4, receivers.getVirtualSites());
+        //Figure has four concrete classes, Polygon three, Square one and Runnable none in the jar
+        assertEquals(2, receivers.getPolymorphicSites());
+        assertEquals(2, receivers.getMegamorphicSites());
+
+        List<ReceiverTypes.Site> largest = receivers.getLargest();
+        assertEquals(2, largest.size());
+        assertEquals(PREFIX + "Renderer.figure(L" + PREFIX + "Figure;)", largest.get(0).getCaller());
+        assertEquals(PREFIX + "Figure.area()D", largest.get(0).getCallee());
+        assertEquals(4, largest.get(0).getReceivers());
+        assertEquals(3, largest.get(1).getReceivers());
+    }
+
+    @Test
+    void typesOverTheLimitAreListed() throws IOException {
+        List<ReceiverTypes.Type> types = analyze(null).getMegamorphicTypes();
+
+        assertEquals(2, types.size());
+        assertEquals(PREFIX + "Figure", types.get(0).getName());
+        assertEquals(4, types.get(0).getReceivers());
+        assertEquals(1, types.get(0).getSites());
+        assertEquals(PREFIX + "Polygon", types.get(1).getName());
+    }
+
+    @Test
+    void reportHasALinePerSiteOverTheLimit() throws IOException {
+        StringWriter report = new StringWriter();
+        analyze(report);
+        String[] lines = report.toString().split("\n");
+
+        assertEquals(2, lines.length);
+        for (String line : lines)
+            assertTrue(new JSONObject(line).getInt("receivers") > ReceiverTypes.DEFAULT_LIMIT, line);
+    }
+
+    @Test
+    void sitesAreResolvedOnce() {
+        ReceiverTypes receivers = new ReceiverTypes();
+        receivers.resolve(HierarchyIndex.of(Map.of()));
+
+        assertThrows(IllegalStateException.class, () -> receivers.resolve(HierarchyIndex.of(Map.of())));
+    }
+}
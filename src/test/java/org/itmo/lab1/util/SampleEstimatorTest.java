@@ -0,0 +1,103 @@
+package org.itmo.lab1.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SampleEstimatorTest {
+    private static final int SEEDS = 200;
+
+    /**
+     * Skewed population: log-normal class sizes in packages of very different sizes,
+     * metrics roughly proportional to the size with noise.
+     */
+    private static final class Population {
+        private final Map<String, Long> sizes = new HashMap<>();
+        private final Map<String, Metrics> metrics = new HashMap<>();
+        private long totalA, totalB, totalC;
+
+        private Population(long seed) {
+            Random random = new Random(seed);
+            int[] packageSizes = {1, 2, 3, 5, 8, 20, 40, 60, 100, 150, 250, 400};
+            for (int p = 0; p < packageSizes.length; p++) {
+                for (int i = 0; i < packageSizes[p]; i++) {
+                    String name = "p" + p + "/C" + i + ".class";
+                    long size = Math.round(Math.exp(7 + 1.2 * random.nextGaussian()));
+                    double noise = Math.exp(0.5 * random.nextGaussian());
+                    Metrics classMetrics = new Metrics((int) (size / 40 * noise), (int) (size / 15 * noise),
+                            (int) (size / 60 * noise), 0);
+                    sizes.put(name, size);
+                    metrics.put(name, classMetrics);
+                    totalA += classMetrics.getA();
+                    totalB += classMetrics.getB();
+                    totalC += classMetrics.getC();
+                }
+            }
+        }
+    }
+
+    private static SampleEstimator estimate(Population population, double rate, long seed) {
+        SampleEstimator estimator = new SampleEstimator();
+        for (String name : estimator.chooseSample(population.sizes, rate, new Random(seed)))
+            estimator.addSample(name, population.sizes.get(name), population.metrics.get(name));
+        return estimator;
+    }
+
+    private static boolean covers(SampleEstimator.Estimate estimate, long total) {
+        return estimate.getLow() <= total && total <= estimate.getHigh();
+    }
+
+    @Test
+    void intervalsCoverTheTotals() {
+        Population population = new Population(1);
+        int coveredA = 0, coveredB = 0, coveredC = 0;
+        for (long seed = 0; seed < SEEDS; seed++) {
+            SampleEstimator estimator = estimate(population, 0.1, seed);
+            if (covers(estimator.estimateA(), population.totalA))
+                coveredA++;
+            if (covers(estimator.estimateB(), population.totalB))
+                coveredB++;
+            if (covers(estimator.estimateC(), population.totalC))
+                coveredC++;
+        }
+
+        //Nominally 95%, the interval is approximate
+        assertTrue(coveredA >= 0.88 * SEEDS, "A covered " + coveredA + " of " + SEEDS);
+        assertTrue(coveredB >= 0.88 * SEEDS, "B covered " + coveredB + " of " + SEEDS);
+        assertTrue(coveredC >= 0.88 * SEEDS, "C covered " + coveredC + " of " + SEEDS);
+    }
+
+    @Test
+    void estimatesAreUnbiasedOnAverage() {
+        Population population = new Population(2);
+        double sum = 0;
+        for (long seed = 0; seed < SEEDS; seed++)
+            sum += estimate(population, 0.1, seed).estimateA().getValue();
+
+        assertEquals(population.totalA, sum / SEEDS, 0.05 * population.totalA);
+    }
+
+    @Test
+    void everyStratumIsSampledAtLeastTwice() {
+        Population population = new Population(3);
+        Set<String> sample = new SampleEstimator().chooseSample(population.sizes, 0.01, new Random(0));
+
+        //Packages too small for two samples share a stratum, so even a 1% sample has two classes per stratum
+        Map<String, Integer> perPackage = new HashMap<>();
+        for (String name : sample)
+            perPackage.merge(name.substring(0, name.indexOf('/')), 1, Integer::sum);
+        for (String pkg : List.of("p10", "p11"))
+            assertTrue(perPackage.getOrDefault(pkg, 0) >= 2, pkg + " sampled " + perPackage.get(pkg));
+    }
+
+    @Test
+    void fullSampleIsExact() {
+        Population population = new Population(4);
+        SampleEstimator.Estimate estimate = estimate(population, 1, 0).estimateA();
+
+        assertEquals(population.totalA, estimate.getValue(), 1e-6 * population.totalA);
+        assertTrue(covers(estimate, population.totalA));
+    }
+}
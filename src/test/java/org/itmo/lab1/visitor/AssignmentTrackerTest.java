@@ -0,0 +1,129 @@
+package org.itmo.lab1.visitor;
+
+import org.itmo.lab1.Fixtures;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AssignmentTrackerTest {
+    static class Constant {
+        int run() {
+            int x = 5;
+            return x * 2;
+        }
+    }
+
+    static class Alias {
+        int run(int a) {
+            int b = a;
+            return b + 1;
+        }
+    }
+
+    static class Reassigned {
+        int run(int a) {
+            int x = 0;
+            x = a * 2;
+            return x;
+        }
+    }
+
+    static class Computed {
+        int run(int a) {
+            int x = a * 2;
+            return x;
+        }
+    }
+
+    static class Increment {
+        int run(int a) {
+            int sum = a * 2;
+            sum++;
+            sum += a;
+            return sum;
+        }
+    }
+
+    static class Caught {
+        int run(String value) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+
+    static class Synchronized {
+        void run(Object lock) {
+            synchronized (lock) {
+                lock.notify();
+            }
+        }
+    }
+
+    static class ForEach {
+        int run(int[] values) {
+            int sum = 0;
+            for (int value : values)
+                sum += value;
+            return sum;
+        }
+    }
+
+    private static int assignments(Class<?> fixture, boolean accurate) {
+        ClassAnalyzer analyzer = new ClassAnalyzer();
+        analyzer.setAccurateAssignments(accurate);
+        Fixtures.reader(fixture).accept(analyzer, 0);
+        return analyzer.getMetrics().getA();
+    }
+
+    private static int assignments(Class<?> fixture) {
+        return assignments(fixture, true);
+    }
+
+    @Test
+    void constantDeclarationDoesNotCount() {
+        assertEquals(1, assignments(Constant.class, false));
+        assertEquals(0, assignments(Constant.class));
+    }
+
+    @Test
+    void aliasDoesNotCount() {
+        assertEquals(1, assignments(Alias.class, false));
+        assertEquals(0, assignments(Alias.class));
+    }
+
+    @Test
+    void everyStoreCountsOnceReassigned() {
+        assertEquals(2, assignments(Reassigned.class));
+    }
+
+    @Test
+    void computedValueCounts() {
+        assertEquals(1, assignments(Computed.class));
+    }
+
+    @Test
+    void incrementsCount() {
+        assertEquals(3, assignments(Increment.class));
+    }
+
+    @Test
+    void caughtExceptionDoesNotCount() {
+        assertEquals(0, assignments(Caught.class));
+    }
+
+    @Test
+    void lockTemporariesDoNotCount() {
+        assertEquals(0, assignments(Synchronized.class));
+    }
+
+    @Test
+    void forEachArrayCopyDoesNotCount() {
+        //Six stores: sum twice, the copy of the array, the length, the index and the element
+        assertEquals(6, assignments(ForEach.class, false));
+        //The copy is an alias, the increment of the index counts instead
+        assertEquals(6, assignments(ForEach.class));
+    }
+}